@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.builder;
+
+import garbler.structure.CumulativeSampler;
+import garbler.structure.Sampler;
+
+/**
+ * Entry of a StatsCruncher's ending cache. Alongside the reduced influence of
+ * the ending it keeps a sampler over the full recommendations for a sequence
+ * which is nothing but the ending, which is what every word starts with. The
+ * sampler depends on the threshold used to trim the recommendations, so it is
+ * only handed back for the threshold it was built with.
+ *
+ * Entries of the seed cache hold the full recommendations for a whole seed
+ * instead, with a sampler over them in the same way.
+ *
+ * An entry pushed out of a cache which only one thread uses may be recycled
+ * to hold another ending, keeping its arrays and those of its sampler.
+ *
+ * @author Rogue <Alice Q.>
+ */
+final class CachedEnding {
+
+    // THE REDUCED INFLUENCE OF THE ENDING, OR THE RECOMMENDATIONS FOR A SEED, INDEXED BY SLOT
+    float[] weights;
+
+    // REPLACED AS A WHOLE SO THAT THE THRESHOLD AND SAMPLER ARE ALWAYS READ TOGETHER
+    private volatile TrimmedSampler trimmed;
+
+    // THE SAMPLER HELD BEFORE THE ENTRY WAS RECYCLED, WHICH THE NEXT ONE IS BUILT IN
+    private TrimmedSampler spare;
+    private boolean recycled;
+
+    /**
+     * @param weights the reduced influence of the ending, indexed by slot
+     */
+    CachedEnding(float[] weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * @param slot the slot to get
+     * @return the weight held at the slot, or 0.0f if there is none
+     */
+    float getAt(int slot) {
+        return (slot >= 0 && slot < weights.length ? weights[slot] : 0.0f);
+    }
+
+    /**
+     * Empties an entry which has been pushed out of its cache so that it can
+     * hold another ending. Its sampler is dropped, but kept aside to be built
+     * again by the next call to buildSampler. Nothing else may be reading the
+     * entry.
+     *
+     * @param slots the number of slots the weights must have room for
+     */
+    void recycle(int slots) {
+        if (weights.length < slots) {
+            weights = new float[slots];
+        } else {
+            java.util.Arrays.fill(weights, 0.0f);
+        }
+        TrimmedSampler current = trimmed;
+        if (current != null) {
+            spare = current;
+            trimmed = null;
+        }
+        recycled = true;
+    }
+
+    /**
+     * @return true if the entry has ever been recycled, in which case it
+     * belongs to a cache which only one thread uses
+     */
+    boolean isRecycled() {
+        return recycled;
+    }
+
+    /**
+     * @param threshold the threshold the recommendations were trimmed by
+     * @return the sampler built with the threshold, or null if there is none
+     */
+    Sampler getSampler(float threshold) {
+        TrimmedSampler current = trimmed;
+        return (current != null && current.threshold == threshold ? current.sampler : null);
+    }
+
+    /**
+     * Builds a sampler over a set of weights, just as the CumulativeSampler
+     * constructor taking a threshold would, and keeps it for the threshold.
+     * A recycled entry builds it in the arrays of its previous sampler.
+     *
+     * @param values the weights to sample, indexed by slot
+     * @param order the slots to sample, in the order to total them in
+     * @param threshold the threshold to trim the weights by
+     * @return the new sampler
+     */
+    Sampler buildSampler(float[] values, int[] order, float threshold) {
+        TrimmedSampler built = spare;
+        if (built == null) {
+            built = new TrimmedSampler(threshold, new CumulativeSampler(values, order, threshold));
+        } else {
+            built.sampler.rebuild(values, order, threshold);
+            built.threshold = threshold;
+            spare = null;
+        }
+        trimmed = built;
+        return built.sampler;
+    }
+
+    private static final class TrimmedSampler {
+
+        // ONLY CHANGED BY A RECYCLED ENTRY BEFORE IT IS PUBLISHED AGAIN
+        private float threshold;
+        private final CumulativeSampler sampler;
+
+        private TrimmedSampler(float threshold, CumulativeSampler sampler) {
+            this.threshold = threshold;
+            this.sampler = sampler;
+        }
+    }
+}
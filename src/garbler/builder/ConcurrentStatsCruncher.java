@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.builder;
+
+import garbler.library.StatsLibrary;
+import garbler.library.StatsModel;
+import garbler.structure.StripedLruCache;
+import garbler.structure.StripedSeedTrieCache;
+
+/**
+ * StatsCruncher which may be shared by any number of threads, each building
+ * words with its own WordBuilder. Endings and seeds computed by one thread are
+ * cached for all of them in a StripedLruCache and a StripedSeedTrieCache, so
+ * no lock is shared by every lookup and the primary character distribution is
+ * only held once.
+ *
+ * The statistics must not be modified, and the configuration methods and
+ * recalculateMetrics must not be called, while words are being built. The
+ * ending cache is striped for its default size, so growing it later divides
+ * the new size between the same few stripes.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class ConcurrentStatsCruncher extends StatsCruncher {
+
+    /**
+     * Basic constructor
+     *
+     * @param library the StatsLibrary to use
+     */
+    public ConcurrentStatsCruncher(StatsLibrary library) {
+        this((StatsModel) library);
+    }
+
+    /**
+     * Constructor for generating words from any StatsModel, such as a
+     * MappedStatsModel shared between processes
+     *
+     * @param model the StatsModel to use
+     */
+    public ConcurrentStatsCruncher(StatsModel model) {
+        super(model, new StripedLruCache<CachedEnding>(32, 32), new StripedSeedTrieCache<CachedEnding>(0, WordBuilder.SEED_LENGTH));
+    }
+}
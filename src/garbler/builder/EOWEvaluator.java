@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.builder;
+
+import garbler.library.StatsModel;
+import garbler.structure.Alphabet;
+import java.util.Arrays;
+
+/**
+ * Stateful End-Of-Word factor for a word which is built one character at a
+ * time. The factor weighs the probability mass of each character being found
+ * at its distance from the end, so every appended character moves all the
+ * others one further away and the factor can't simply be aged. Instead, each
+ * character adds its aged mass for every length the word may reach while it's
+ * still in the window, and the partial factors are kept in a ring. Appending
+ * costs one addition per position of the window and reading the factor is a
+ * single lookup, however long the word grows.
+ *
+ * A window limits the factor to the last few characters, as WordBuilder does
+ * with its seed. Without one the window covers every distance from the end
+ * which has ever been seen, which gives the same factor as
+ * StatsCruncher.getEOWFactor(String) for the whole word.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public final class EOWEvaluator {
+
+    // WHERE TO FETCH THE AGED MASSES FROM ON EACH RESET, ONE OF WHICH IS NULL
+    private final StatsCruncher cruncher;
+    private final GenerationModel model;
+
+    // THE LONGEST WINDOW TO USE, OR 0 FOR NO LIMIT
+    private final int maxWindow;
+
+    // THE MASSES IN USE AND THE WINDOW THEY ALLOW
+    private Table table;
+    private int window;
+
+    // PARTIAL FACTOR FOR EACH OF THE NEXT window LENGTHS, INDEXED BY LENGTH MODULO window
+    private float[] pending = new float[0];
+    private int length;
+
+    /**
+     * Evaluator for the whole word using the statistics and configuration of a
+     * StatsCruncher
+     *
+     * @param cruncher the cruncher to take the statistics and configuration
+     * from
+     */
+    public EOWEvaluator(StatsCruncher cruncher) {
+        this(cruncher, null, 0);
+    }
+
+    /**
+     * Evaluator for the last few characters of the word using the statistics
+     * and configuration of a StatsCruncher
+     *
+     * @param cruncher the cruncher to take the statistics and configuration
+     * from
+     * @param window the number of trailing characters to interpret
+     * @throws IllegalArgumentException if window is less than one
+     */
+    public EOWEvaluator(StatsCruncher cruncher, int window) {
+        this(cruncher, null, checkWindow(window));
+    }
+
+    /**
+     * Evaluator for a compiled model, which only ever interprets its last
+     * WordBuilder.SEED_LENGTH characters
+     *
+     * @param model the model to take the statistics and configuration from
+     */
+    public EOWEvaluator(GenerationModel model) {
+        this(null, model, 0);
+    }
+
+    private EOWEvaluator(StatsCruncher cruncher, GenerationModel model, int maxWindow) {
+        this.cruncher = cruncher;
+        this.model = model;
+        this.maxWindow = maxWindow;
+        reset();
+    }
+
+    // - reset
+    // - append
+    // - getFactor
+    // - length
+    /**
+     * Starts a new word, picking up any change made to the cruncher's
+     * configuration or metrics since the last one
+     */
+    public void reset() {
+        table = (cruncher != null ? cruncher.getEndMassTable() : model.getEndMassTable());
+        window = (maxWindow == 0 ? table.depth : Math.min(maxWindow, table.depth));
+        if (pending.length < window) {
+            pending = new float[window];
+        }
+        Arrays.fill(pending, 0.0f);
+        length = 0;
+    }
+
+    /**
+     * Adds a character to the end of the word
+     *
+     * @param c the character to add
+     */
+    public void append(char c) {
+        if (window == 0) {
+            length++;
+            return;
+        }
+
+        // THE SLOT FOR THE LENGTH window PAST THIS ONE HELD THE CURRENT LENGTH, WHICH IS DONE WITH
+        int first = length % window;
+        pending[first] = 0.0f;
+
+        // ADD THE CHARACTER TO EVERY LENGTH IT WILL BE PART OF, AT ITS DISTANCE FROM EACH END
+        int slot = table.alphabet.indexOf(c);
+        if (slot >= 0 && slot < table.slots) {
+            int ring = first;
+            for (int distance = 0; distance < window; distance++) {
+                ring = (ring + 1 == window ? 0 : ring + 1);
+                pending[ring] += table.masses[distance * table.slots + slot];
+            }
+        }
+        length++;
+    }
+
+    /**
+     * @return a float value representing a factor between 0.0-1.0 of the word
+     * so far being a word ending
+     */
+    public float getFactor() {
+        if (window == 0 || length == 0) {
+            return 0.0f;
+        }
+        float result = pending[length % window] / table.threshold;
+        return (result > 1.0f ? 1.0f : result);
+    }
+
+    /**
+     * @return the number of characters appended since the last reset
+     */
+    public int length() {
+        return length;
+    }
+
+    private static int checkWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window less than one");
+        }
+        return window;
+    }
+
+    /**
+     * Immutable table of the probability mass of each character being found
+     * at each distance from the end of a word, already weighed by the aging
+     * algorithm
+     */
+    static final class Table {
+
+        // THE LONGEST DISTANCE FROM THE END TO LOOK FOR MASSES AT
+        private static final int MAX_DEPTH = 256;
+
+        private final Alphabet alphabet;
+        private final float[] masses;
+        private final int slots;
+        private final int depth;
+        private final float threshold;
+
+        /**
+         * @param alphabet the Alphabet indexing the masses
+         * @param masses the aged masses, indexed by distance * slots + slot
+         * @param slots the number of slots per distance
+         * @param depth the number of distances
+         * @param threshold the End-Of-Word factor threshold
+         */
+        Table(Alphabet alphabet, float[] masses, int slots, int depth, float threshold) {
+            this.alphabet = alphabet;
+            this.masses = masses;
+            this.slots = slots;
+            this.depth = depth;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Weighs the masses of a model, up to the first distance from the end
+         * at which no character has ever been found
+         *
+         * @param model the statistics to weigh
+         * @param agingFactor the character aging factor
+         * @param threshold the End-Of-Word factor threshold
+         * @return a new Table
+         */
+        static Table weigh(StatsModel model, float agingFactor, float threshold) {
+            Alphabet alphabet = model.getAlphabetIndex();
+            int slots = alphabet.size();
+            float[] masses = new float[slots * 8];
+            int depth = 0;
+            float weight = agingFactor;
+            while (depth < MAX_DEPTH && slots > 0) {
+                if (masses.length < (depth + 1) * slots) {
+                    masses = Arrays.copyOf(masses, masses.length * 2);
+                }
+                boolean found = false;
+                for (int slot = 0; slot < slots; slot++) {
+                    float mass = model.getEndProbabilityMass(alphabet.charAt(slot), depth);
+                    masses[depth * slots + slot] = weight * mass;
+                    found |= (mass != 0.0f);
+                }
+                if (!found) {
+                    break;
+                }
+                depth++;
+                weight *= 1.0f - agingFactor;
+            }
+            return new Table(alphabet, masses, slots, depth, threshold);
+        }
+    }
+}
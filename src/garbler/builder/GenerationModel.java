@@ -0,0 +1,494 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.builder;
+
+import garbler.library.StatsModel;
+import garbler.structure.AliasSampler;
+import garbler.structure.Alphabet;
+import garbler.structure.ContextKey;
+import garbler.structure.CumulativeSampler;
+import garbler.structure.DenseDecimalCharMap;
+import garbler.structure.Sampler;
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of a StatsModel and the parameters of the StatsCruncher
+ * which compiled it. Every correlation is weighed by the aging algorithm ahead
+ * of time, so a recommendation is a sum of a few precomputed rows rather than
+ * an influence map which has to be built and reduced. The reduced maps of every
+ * observed ending are tabled as well, an ending being observed when each pair
+ * of neighbouring characters in it has been seen side by side.
+ *
+ * Only the last WordBuilder.SEED_LENGTH characters of a sequence are ever
+ * interpreted. As nothing changes after compiling, a single model can be shared
+ * by any number of threads. Every distribution is totalled and sampled just as
+ * the StatsCruncher does, so a model builds the same words as the cruncher it
+ * was compiled from for the same seed.
+ *
+ * The correlations take WordBuilder.SEED_LENGTH floats for every pair of
+ * characters, so an alphabet of more than a few thousand characters can't be
+ * compiled and should be built from through the cruncher instead.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public final class GenerationModel {
+
+    // THE MOST FLOATS TO SPEND ON TABLED ENDINGS, ANY ENDING PAST IT IS SUMMED WHEN NEEDED
+    private static final int MAX_ENDING_FLOATS = 1 << 22;
+
+    // THE MOST FLOATS TO SPEND ON AGED CORRELATIONS, WHICH CAN'T BE LEFT OUT
+    private static final long MAX_CONTRIBUTION_FLOATS = 1L << 27;
+
+    // CHARACTERS, BY SLOT, AS OF COMPILING. THE ALPHABET MAY GROW LATER SO SLOTS ARE CHECKED
+    private final Alphabet alphabet;
+    private final char[] characters;
+    private final int slots;
+
+    // THE SLOTS IN THE ORDER OF THEIR CHARACTERS, WHICH DISTRIBUTIONS ARE TOTALLED AND SAMPLED IN
+    private final int[] order;
+
+    // THE PARAMETERS THE MODEL WAS COMPILED WITH
+    private final int endingLength;
+    private final int seedLength;
+    private final float sameCharacterWeightAdjust;
+    private final float eowFactorThreshold;
+
+    // AGED CORRELATIONS BY [POSITION][FROM][TO] AND AGED END PROBABILITY MASSES BY [POSITION][SLOT]
+    private final float[] contributions;
+    private final float[] endMasses;
+    private final EOWEvaluator.Table endMassTable;
+
+    // FIRST CHARACTER DISTRIBUTION, SUMMING TO 1.0f, AND A SAMPLER OVER IT
+    private final float[] primary;
+    private final Sampler primarySampler;
+
+    // OPEN-ADDRESSED TABLE OF PACKED ENDINGS TO ROWS OF REDUCED ENDING WEIGHTS. A ROW OF 0 IS EMPTY.
+    // LIKE THE CRUNCHER'S CACHED ENDINGS THE ROWS AREN'T NORMALIZED, SINCE THEY ARE ADDED TO THE REST
+    // OF THE SEED BEFORE THE DISTRIBUTION IS TOTALLED
+    private final long[] endingKeys;
+    private final int[] endingRows;
+    private final float[] endings;
+    private final int endingCount;
+
+    /**
+     * Compiles a model. This is normally done through StatsCruncher.compile()
+     *
+     * @param model the statistics to compile
+     * @param primaryDistribution the first character distribution
+     * @param endingLength the number of characters treated as the ending
+     * @param agingFactor the character aging factor
+     * @param sameCharacterWeightAdjust the repeating-character adjustment
+     * @param eowFactorThreshold the End-Of-Word factor threshold
+     * @throws IllegalStateException if the model has too many characters to
+     * table every correlation
+     */
+    GenerationModel(StatsModel model, DenseDecimalCharMap primaryDistribution, int endingLength,
+            float agingFactor, float sameCharacterWeightAdjust, float eowFactorThreshold) {
+        this.alphabet = model.getAlphabetIndex();
+        this.characters = alphabet.toCharArray();
+        this.slots = characters.length;
+        this.order = alphabet.getSortedSlots(slots);
+        this.endingLength = endingLength;
+        this.seedLength = WordBuilder.SEED_LENGTH;
+        this.sameCharacterWeightAdjust = sameCharacterWeightAdjust;
+        this.eowFactorThreshold = eowFactorThreshold;
+
+        // WEIGH EVERY CORRELATION AND END MASS BY ITS POSITION
+        long size = (long) seedLength * slots * slots;
+        if (size > MAX_CONTRIBUTION_FLOATS) {
+            throw new IllegalStateException("Too many characters to compile (" + slots + ")");
+        }
+        contributions = new float[(int) size];
+        endMasses = new float[seedLength * slots];
+        float weight = agingFactor;
+        for (int position = 0; position < seedLength; position++) {
+            for (int from = 0; from < slots; from++) {
+                int row = (position * slots + from) * slots;
+                for (int to = 0; to < slots; to++) {
+                    contributions[row + to] = weight * model.getCorrelation(from, to, position);
+                }
+                endMasses[position * slots + from] = weight * model.getEndProbabilityMass(characters[from], position);
+            }
+            weight *= 1.0f - agingFactor;
+        }
+
+        endMassTable = new EOWEvaluator.Table(alphabet, endMasses, slots, seedLength, eowFactorThreshold);
+
+        primary = new float[slots];
+        for (int slot = 0; slot < slots && slot < primaryDistribution.slots(); slot++) {
+            primary[slot] = primaryDistribution.getAt(slot);
+        }
+        primarySampler = new AliasSampler(primary, order);
+
+        // FIND EVERY OBSERVED ENDING, LONGEST FIRST SO THAT THE ONES MOST OFTEN ASKED FOR FIT THE BUDGET
+        int tableLength = Math.min(endingLength, Math.min(seedLength, ContextKey.MAX_PACKED_LENGTH));
+        int budget = (slots == 0 ? 0 : MAX_ENDING_FLOATS / slots);
+        long[] found = new long[16];
+        int count = 0;
+        StringBuilder ending = new StringBuilder();
+        for (int length = tableLength; length > 0 && count < budget; length--) {
+            int[] path = new int[length];
+            int depth = 0;
+            while (depth >= 0 && count < budget) {
+                if (path[depth] >= slots) {
+                    // EXHAUSTED THIS CHARACTER, BACK UP
+                    path[depth] = 0;
+                    if (--depth >= 0) {
+                        path[depth]++;
+                    }
+                } else if (depth > 0 && model.getCorrelation(path[depth - 1], path[depth], 0) == 0) {
+                    path[depth]++;
+                } else if (depth < length - 1) {
+                    depth++;
+                } else {
+                    ending.setLength(0);
+                    for (int slot : path) {
+                        ending.append(characters[slot]);
+                    }
+                    if (!ContextKey.isPackable(ending, 0, length)) {
+                        path[depth]++;
+                        continue;
+                    }
+                    if (count == found.length) {
+                        long[] temp = new long[count * 2];
+                        System.arraycopy(found, 0, temp, 0, count);
+                        found = temp;
+                    }
+                    found[count++] = ContextKey.of(ending, 0, length);
+                    path[depth]++;
+                }
+            }
+        }
+
+        // TABLE THEM
+        int capacity = 16;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        endingKeys = new long[capacity];
+        endingRows = new int[capacity];
+        endings = new float[count * slots];
+        endingCount = count;
+        for (int row = 0; row < count; row++) {
+            String text = ContextKey.unpack(found[row]);
+            for (int to = 0; to < slots; to++) {
+                endings[row * slots + to] = sumEnding(text, 0, text.length(), to);
+            }
+            int i = slotOf(found[row]);
+            while (endingRows[i] != 0) {
+                i = (i + 1) & (capacity - 1);
+            }
+            endingKeys[i] = found[row];
+            endingRows[i] = row + 1;
+        }
+    }
+
+    // GENERAL
+    // - slots
+    // - charAt
+    // - getSortedSlots
+    // - getEndingLength
+    // - getEndingCount
+    // - getPrimaryDistribution
+    // - getPrimarySampler
+    // - getEndMassTable
+    /**
+     * @return the number of characters which may be recommended
+     */
+    public int slots() {
+        return slots;
+    }
+
+    /**
+     * @param slot the slot to look up
+     * @return the character at the slot
+     */
+    public char charAt(int slot) {
+        return characters[slot];
+    }
+
+    /**
+     * @return every slot in the order of its character, being the order
+     * getCumulativeDistribution totals the slots in and the order to sample
+     * them in. The array is shared and must not be modified.
+     */
+    public int[] getSortedSlots() {
+        return order;
+    }
+
+    /**
+     * @return the number of characters treated as the ending
+     */
+    public int getEndingLength() {
+        return endingLength;
+    }
+
+    /**
+     * @return the number of endings whose reduced weights were tabled
+     */
+    public int getEndingCount() {
+        return endingCount;
+    }
+
+    /**
+     * @return a copy of the first character distribution, indexed by slot
+     */
+    public float[] getPrimaryDistribution() {
+        return primary.clone();
+    }
+
+    /**
+     * @return the aged end probability masses, for EOWEvaluator
+     */
+    EOWEvaluator.Table getEndMassTable() {
+        return endMassTable;
+    }
+
+    /**
+     * @return a Sampler over the first character distribution, indexed by
+     * slot
+     */
+    Sampler getPrimarySampler() {
+        return primarySampler;
+    }
+
+    // GENERATION
+    // - getEOWFactor
+    // - getRecommendations
+    // - getDistribution
+    // - getCumulativeDistribution
+    /**
+     * Equivalent of StatsCruncher.getEOWFactor(CharSequence, int, int) read
+     * from the compiled tables
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @return a float value representing a factor between 0.0-1.0 of the
+     * range being a word ending
+     */
+    public float getEOWFactor(CharSequence charSequence, int start, int end) {
+        float result = 0.0f;
+        for (int position = Math.min(end - start, seedLength) - 1; position >= 0; position--) {
+            int slot = slotOf(charSequence.charAt(end - 1 - position));
+            if (slot >= 0) {
+                result += endMasses[position * slots + slot];
+            }
+        }
+
+        // APPLY THRESHOLD
+        result /= eowFactorThreshold;
+        return (result > 1.0f ? 1.0f : result);
+    }
+
+    /**
+     * Equivalent of StatsCruncher.generateDenseRecommendations(CharSequence,
+     * int, int) read from the compiled tables
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param weights an array of at least slots() floats to fill with the
+     * weight of each candidate character
+     * @return weights
+     */
+    public float[] getRecommendations(CharSequence charSequence, int start, int end, float[] weights) {
+        start = Math.max(start, end - seedLength);
+        int endingStart = Math.max(start, end - endingLength);
+        addWord(charSequence, start, endingStart, end, weights);
+
+        // MERGE IN THE ENDING, TABLED IF IT WAS OBSERVED
+        int row = findEnding(charSequence, endingStart, end);
+        for (int to = 0; to < slots; to++) {
+            weights[to] += (row >= 0 ? endings[row * slots + to] : sumEnding(charSequence, endingStart, end, to));
+        }
+
+        // APPLY REPEATING-CHARACTER CHAIN ADJUST
+        int lastSlot = slotOf(charSequence.charAt(end - 1));
+        if (lastSlot >= 0) {
+            weights[lastSlot] *= sameCharacterWeightAdjust;
+        }
+        return weights;
+    }
+
+    /**
+     * Fills in the recommendations for a range, then trims and re-balances them
+     * in place
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param threshold the lower threshold of acceptable values, or 1.0f or
+     * more to skip trimming
+     * @param weights an array of at least slots() floats to fill with the
+     * probability of each candidate character
+     * @return weights
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    public float[] getDistribution(CharSequence charSequence, int start, int end, float threshold, float[] weights) {
+        getRecommendations(charSequence, start, end, weights);
+        if (threshold < 1.0f) {
+            DenseDecimalCharMap.trimValues(weights, order, threshold);
+        }
+        DenseDecimalCharMap.rebalanceValues(weights, order);
+        return weights;
+    }
+
+    /**
+     * Fused equivalent of getDistribution(CharSequence, int, int, float,
+     * float[]) which leaves the running totals of the distribution for
+     * CumulativeSampler.sample rather than the distribution itself. Once the
+     * word has been added, the ending is merged in, the repeating-character
+     * chain adjust applied and the total taken in a single pass, then the
+     * trimming and accumulating are done in another. The totals are not
+     * re-balanced, since sampling scales its pick by the total anyway. Both
+     * passes walk the slots in the order of getSortedSlots(), which is the
+     * order to hand CumulativeSampler.sample.
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param threshold the lower threshold of acceptable values, or 1.0f or
+     * more to skip trimming
+     * @param weights an array of at least slots() floats to fill with the
+     * running total of the distribution
+     * @return weights
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    public float[] getCumulativeDistribution(CharSequence charSequence, int start, int end, float threshold, float[] weights) {
+        start = Math.max(start, end - seedLength);
+        int endingStart = Math.max(start, end - endingLength);
+        addWord(charSequence, start, endingStart, end, weights);
+
+        // MERGE IN THE ENDING AND ADJUST, TOTALLING AS WE GO
+        int row = findEnding(charSequence, endingStart, end);
+        int lastSlot = slotOf(charSequence.charAt(end - 1));
+        float sum = 0.0f;
+        for (int to : order) {
+            float weight = weights[to] + (row >= 0 ? endings[row * slots + to] : sumEnding(charSequence, endingStart, end, to));
+            if (to == lastSlot) {
+                weight *= sameCharacterWeightAdjust;
+            }
+            weights[to] = weight;
+            sum += weight;
+        }
+
+        // TRIM AND ACCUMULATE
+        CumulativeSampler.accumulate(weights, order, CumulativeSampler.floor(sum, threshold));
+        return weights;
+    }
+
+    // INTERNAL
+    // - addWord
+    // - slotOf
+    // - findEnding
+    // - sumEnding
+    /**
+     * Fills an array with the influence of the characters of a range which
+     * come before its ending
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param endingStart the index of the first character of the ending
+     * @param end the index just past the last character to interpret
+     * @param weights an array of at least slots() floats to fill
+     */
+    private void addWord(CharSequence charSequence, int start, int endingStart, int end, float[] weights) {
+        Arrays.fill(weights, 0, slots, 0.0f);
+
+        // THE WORD, OLDEST CHARACTER FIRST
+        for (int i = start; i < endingStart; i++) {
+            int from = slotOf(charSequence.charAt(i));
+            if (from < 0) {
+                continue;
+            }
+            int row = ((end - i - 1) * slots + from) * slots;
+            for (int to = 0; to < slots; to++) {
+                weights[to] += contributions[row + to];
+            }
+        }
+    }
+
+    /**
+     * @param c the character to look up
+     * @return the slot of the character, or -1 if it wasn't known when the
+     * model was compiled
+     */
+    private int slotOf(char c) {
+        int slot = alphabet.indexOf(c);
+        return (slot < slots ? slot : -1);
+    }
+
+    /**
+     * @param key a packed ending
+     * @return the first slot of the ending table to probe for the key
+     */
+    private int slotOf(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 40) & (endingKeys.length - 1);
+    }
+
+    /**
+     * @param charSequence the sequence holding the ending
+     * @param start the index of the first character of the ending
+     * @param end the index just past the last character of the ending
+     * @return the row of the ending, or -1 if it wasn't tabled
+     */
+    private int findEnding(CharSequence charSequence, int start, int end) {
+        if (endingCount == 0 || !ContextKey.isPackable(charSequence, start, end)) {
+            return -1;
+        }
+        long key = ContextKey.of(charSequence, start, end);
+        int mask = endingKeys.length - 1;
+        for (int i = slotOf(key); endingRows[i] != 0; i = (i + 1) & mask) {
+            if (endingKeys[i] == key) {
+                return endingRows[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sums the aged influence of an ending on a single character, newest
+     * character first just as OccurrenceList.getWeightedSum adds up the
+     * distances for StatsCruncher.reduceInfluenceMap. An ending is never long
+     * enough for the weighted sum to split it into several running sums.
+     *
+     * @param charSequence the sequence holding the ending
+     * @param start the index of the first character of the ending
+     * @param end the index just past the last character of the ending
+     * @param to the slot of the following character
+     * @return the reduced weight of the character
+     */
+    private float sumEnding(CharSequence charSequence, int start, int end, int to) {
+        float sum = 0.0f;
+        for (int i = end - 1; i >= start; i--) {
+            int from = slotOf(charSequence.charAt(i));
+            if (from >= 0) {
+                sum += contributions[((end - i - 1) * slots + from) * slots + to];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.builder;
+
+import garbler.library.StatsModel;
+import garbler.structure.Alphabet;
+import java.util.Arrays;
+
+/**
+ * Rolling influence of the word being built, for a StatsCruncher. Each
+ * character influences the next one through its correlation at its distance
+ * from the end, so every appended character moves all the others one further
+ * away and the influences can't simply be aged. Instead, each character adds
+ * its aged correlations to the weights for every length the word may reach
+ * while it's still in the window and outside the ending, and the partial
+ * weights are kept in a ring. The weights for the current length are then
+ * complete and only need the ending merged in, rather than the whole seed
+ * being mapped and reduced again for every character.
+ *
+ * The aged correlations of each character at each distance are worked out
+ * from the statistics once and kept as rows, so appending a character is a
+ * few plain array additions. They're kept until the cruncher's metrics or
+ * aging factor change. The state is only valid for one word at a time, so it
+ * belongs to a single WordBuilder.
+ *
+ * @author Rogue <Alice Q.>
+ */
+final class InfluenceContext {
+
+    private final StatsCruncher cruncher;
+    private final int maxWindow;
+
+    // THE STATISTICS AND CONFIGURATION IN USE FOR THE CURRENT WORD
+    private StatsModel model;
+    private Alphabet alphabet;
+    private int slots;
+    private int endingLength;
+    private int window;
+    private float[] agedWeights = new float[0];
+
+    // AGED CORRELATIONS INDEXED BY distance * slots + from, EACH WORKED OUT ON FIRST USE
+    private float[][] rows = new float[0][];
+    private int version;
+
+    // PARTIAL WEIGHTS FOR EACH OF THE NEXT window LENGTHS, INDEXED BY LENGTH MODULO window
+    private float[][] pending = new float[0][];
+    private int length;
+
+    /**
+     * @param cruncher the cruncher to take the statistics and configuration
+     * from
+     * @param window the number of trailing characters to interpret
+     * @throws IllegalArgumentException if window is less than one
+     */
+    InfluenceContext(StatsCruncher cruncher, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window less than one");
+        }
+        this.cruncher = cruncher;
+        this.maxWindow = window;
+        reset();
+    }
+
+    // - reset
+    // - append
+    // - getRow
+    // - getWeights (2)
+    // - length
+    /**
+     * Starts a new word, picking up any change made to the cruncher's
+     * statistics or configuration since the last one
+     */
+    void reset() {
+        model = cruncher.getStatsModel();
+        alphabet = model.getAlphabetIndex();
+        endingLength = cruncher.getCachedWordSize();
+        window = maxWindow;
+
+        // RE-WEIGH ONLY IF THE CORRELATIONS OR THEIR AGING HAVE CHANGED
+        int latest = cruncher.getInfluenceVersion();
+        if (latest != version || slots != alphabet.size() || rows.length == 0) {
+            version = latest;
+            slots = alphabet.size();
+            rows = new float[window * slots][];
+
+            // THE WEIGHT OF A CORRELATION AT EACH DISTANCE, AS THE AGING ALGORITHM WOULD LEAVE IT
+            agedWeights = cruncher.getAgingWeights(window);
+        }
+
+        if (pending.length < window || pending[0].length < slots) {
+            pending = new float[window][slots];
+        }
+        for (int ring = 0; ring < window; ring++) {
+            Arrays.fill(pending[ring], 0, slots, 0.0f);
+        }
+        length = 0;
+    }
+
+    /**
+     * Adds a character to the end of the word
+     *
+     * @param c the character to add
+     */
+    void append(char c) {
+        // THE ROW FOR THE LENGTH window PAST THIS ONE HELD THE CURRENT LENGTH, WHICH IS DONE WITH
+        int first = length % window;
+        Arrays.fill(pending[first], 0, slots, 0.0f);
+
+        // ADD THE CHARACTER TO EVERY LENGTH IT WILL INFLUENCE FROM OUTSIDE THE ENDING
+        int from = alphabet.indexOf(c);
+        if (from >= 0 && from < slots) {
+            for (int distance = endingLength; distance < window; distance++) {
+                float[] row = getRow(distance, from);
+                float[] target = pending[(first + 1 + distance) % window];
+                for (int to = 0; to < slots; to++) {
+                    target[to] += row[to];
+                }
+            }
+        }
+        length++;
+    }
+
+    /**
+     * @param distance the distance of a character from the end
+     * @param from the slot of the character
+     * @return the aged correlations of the character at the distance
+     */
+    private float[] getRow(int distance, int from) {
+        float[] row = rows[distance * slots + from];
+        if (row == null) {
+            row = new float[slots];
+            model.addCorrelations(from, distance, agedWeights[distance], row);
+            rows[distance * slots + from] = row;
+        }
+        return row;
+    }
+
+    /**
+     * Copies the influence of every character outside the ending on the next
+     * character into an array
+     *
+     * @param weights an array of at least as many floats as the alphabet has
+     * slots
+     * @return weights
+     */
+    float[] getWeights(float[] weights) {
+        System.arraycopy(pending[length % window], 0, weights, 0, slots);
+        return weights;
+    }
+
+    /**
+     * Variant of getWeights(float[]) which hands back the context's own array
+     * rather than a copy, for reading straight away
+     *
+     * @return an array of at least as many floats as the alphabet has slots,
+     * which must not be modified
+     */
+    float[] getWeights() {
+        return pending[length % window];
+    }
+
+    /**
+     * @return the number of characters appended since the last reset
+     */
+    int length() {
+        return length;
+    }
+}
@@ -28,6 +28,14 @@ import garbler.structure.OccurrenceCharMap;
 import garbler.structure.BasicDecimalCharMap;
 import garbler.library.*;
 import garbler.structure.BasicIntegerCharMap;
+import garbler.structure.DenseDecimalCharMap;
+import garbler.structure.DenseOccurrenceCharMap;
+import garbler.structure.SegmentedLruCache;
+import garbler.structure.SeedTrieCache;
+import garbler.structure.CumulativeSampler;
+import garbler.structure.AliasSampler;
+import garbler.structure.Alphabet;
+import garbler.structure.Sampler;
 
 import java.util.Map.Entry;
 import java.util.*;
@@ -42,22 +50,39 @@ public class StatsCruncher {
 
     // LIBRARY OF STATISTICS TO USE FOR WORD GENERATION
     private StatsLibrary statLib;
+    private StatsModel model;
 
-    // CACHES OF GENERATIONS FOR COMMON TERMS
-    private TreeMap<String, CharMap<Float>> primaryEndingsCache;
-    private LinkedList<Entry<String, CharMap<Float>>> secondaryEndingsCache;
+    // CACHE OF GENERATIONS FOR COMMON TERMS. THE PRIMARY CACHE IS ITS PROTECTED SEGMENT AND THE SECONDARY ITS PROBATION
+    private SegmentedLruCache<CachedEnding> endingsCache;
     private int endingLength;
-    private int secondaryCacheSize;
-    private int primaryCacheSize;
+
+    // THE ENTRY LAST PUSHED OUT OF THE ENDING CACHE, REFILLED BY THE NEXT MISS. A CACHE SHARED BY SEVERAL THREADS
+    // NEVER HANDS ONE BACK
+    private CachedEnding spareEnding;
+
+    // CACHE OF RECOMMENDATIONS FOR WHOLE SEEDS, SHARED BY EVERY WORD, WHICH IS ONLY USED IF IT HAS ROOM
+    private SeedTrieCache<CachedEnding> seedCache;
+    private int seedCacheSize;
 
     // PRIMARY CHARACTER LIBRARY - EXPENSIVE TO COMPUTE, NEAR CONSTANT RESULTS
     private CharMap<Float> primaryCharacterDistribution;
+    private DenseDecimalCharMap densePrimaryCharacterDistribution;
+    private Sampler primarySampler;
 
     // USED FOR CHARACTER RECOMMENDATIONS
     private float characterAgingFactor;
+
+    // characterAgingFactor * (1 - characterAgingFactor)^distance, BY DISTANCE, GROWN AS LONGER LISTS ARE SEEN
+    private volatile float[] agingWeights;
     private float sameCharacterWeightAdjust;
     private float eowFactorThreshold;
 
+    // AGED END PROBABILITY MASSES FOR EOWEvaluators, REBUILT ON DEMAND AFTER ANY CHANGE
+    private volatile EOWEvaluator.Table endMassTable;
+
+    // BUMPED ON ANY CHANGE TO THE INFLUENCE OF ONE CHARACTER ON ANOTHER, SO InfluenceContexts KNOW TO RE-WEIGH
+    private volatile int influenceVersion;
+
     //CONSTRUCTORS
     /**
      * Default constructor which makes a new empty StatsLibrary
@@ -72,38 +97,76 @@ public class StatsCruncher {
      * @param library the StatsLibrary to use
      */
     public StatsCruncher(StatsLibrary library) {
-        statLib = library;
-        primaryEndingsCache = new TreeMap();
-        secondaryEndingsCache = new LinkedList();
+        this((StatsModel) library);
+    }
+
+    /**
+     * Constructor for generating words from any StatsModel, such as a
+     * MappedStatsModel shared between processes
+     *
+     * @param model the StatsModel to use
+     */
+    public StatsCruncher(StatsModel model) {
+        this(model, new SegmentedLruCache<CachedEnding>(32, 32), new SeedTrieCache<CachedEnding>(0, WordBuilder.SEED_LENGTH));
+    }
+
+    /**
+     * Constructor for subclasses which provide their own caches
+     *
+     * @param model the StatsModel to use
+     * @param cache the cache to hold reduced ending influence maps in
+     * @param seeds the cache to hold the recommendations for whole seeds in,
+     * keyed by seeds of up to WordBuilder.SEED_LENGTH characters
+     */
+    protected StatsCruncher(StatsModel model, SegmentedLruCache<CachedEnding> cache, SeedTrieCache<CachedEnding> seeds) {
+        this.model = model;
+        statLib = (model instanceof StatsLibrary ? (StatsLibrary) model : null);
+        endingsCache = cache;
+        seedCache = seeds;
         reset();
         recalculateMetrics();
     }
 
     // GENERAL
     // - getStatsLibrary
+    // - getStatsModel
     // - reset
     /**
      * Method for accessing the statistics used by the building program
      *
-     * @return a StatsLibrary of character and word statistics
+     * @return a StatsLibrary of character and word statistics, or null if
+     * this cruncher was built on a StatsModel which isn't a StatsLibrary
      */
     public StatsLibrary getStatsLibrary() {
         return statLib;
     }
 
+    /**
+     * Method for accessing the statistics used by the building program
+     *
+     * @return the StatsModel words are generated from
+     */
+    public StatsModel getStatsModel() {
+        return model;
+    }
+
     /**
      * Method to reset the configuration and factors back to their defaults.
      * Note that this does not clear the cache.
      */
     public final void reset() {
         endingLength = 2;
-        secondaryCacheSize = 32;
-        primaryCacheSize = 32;
+        endingsCache.setProtectedCapacity(32);
+        endingsCache.setProbationCapacity(32);
+        setSeedCacheSize(0);
 
         // USED FOR CHARACTER RECOMMENDATIONS
         characterAgingFactor = 0.5f;
+        agingWeights = weighAging(characterAgingFactor, 32);
         sameCharacterWeightAdjust = 0.85f;
         eowFactorThreshold = 1.0f;
+        endMassTable = null;
+        influenceVersion++;
     }
 
     /**
@@ -112,54 +175,78 @@ public class StatsCruncher {
      * upon initialization
      */
     public final void recalculateMetrics() {
-        primaryCharacterDistribution = BasicIntegerCharMap.getBalancedMap(statLib.getPrimaryCharacterCounts());
+        primaryCharacterDistribution = BasicIntegerCharMap.getBalancedMap(model.getPrimaryCharacterCounts());
+        densePrimaryCharacterDistribution = DenseDecimalCharMap.fromCharMap(primaryCharacterDistribution, model.getAlphabetIndex());
+        primarySampler = new AliasSampler(densePrimaryCharacterDistribution);
+        endMassTable = null;
+        influenceVersion++;
     }
 
     // CACHE METHODS
     // - getPrimaryCacheContents
     // - getSecondaryCacheContents
+    // - getSeedCacheContents
+    // - getSeedCacheHitRate
     // - clearCacheContents
     // - getFromCache
     // - setPrimaryCacheSize
     // - setSecondaryCacheSize
+    // - setSeedCacheSize
     // - setCachedWordSize
+    // - getCachedWordSize
     /**
-     * Method to fetch the contents of the primary cache, which is the first
-     * cache searched and maintains data permanently until cleared
+     * Method to fetch the contents of the primary cache, which holds the
+     * endings which have been requested more than once. Its entries are only
+     * pushed back to the secondary cache by more recently used ones.
      *
-     * @return a Collection of all the key entries in the primary cache
+     * @return a Collection of all the key entries in the primary cache, most
+     * recently used first
      */
     public Collection<String> getPrimaryCacheContents() {
-        return primaryEndingsCache.keySet();
+        return endingsCache.protectedKeys();
     }
 
     /**
-     * Method to fetch the contents of the secondary cache, which is the second
-     * cache searched and maintains data temporarily
+     * Method to fetch the contents of the secondary cache, which holds newly
+     * generated endings until they are either requested again or evicted
      *
-     * @return a Collection of all the key entries in the secondary cache
+     * @return a Collection of all the key entries in the secondary cache, most
+     * recently used first
      */
     public Collection<String> getSecondaryCacheContents() {
-        ArrayList<String> contents = new ArrayList(secondaryEndingsCache.size());
+        return endingsCache.probationKeys();
+    }
 
-        for (Entry<String, CharMap<Float>> entry : secondaryEndingsCache) {
-            contents.add(entry.getKey());
-        }
+    /**
+     * Method to fetch the contents of the seed cache, which holds the
+     * recommendations for seeds longer than an ending, up to the
+     * WordBuilder.SEED_LENGTH characters words are built from
+     *
+     * @return a Collection of all the seeds in the seed cache, most frequently
+     * used first
+     */
+    public Collection<String> getSeedCacheContents() {
+        return seedCache.keys();
+    }
 
-        return contents;
+    /**
+     * Method to fetch the share of seed lookups served by the seed cache since
+     * it was last cleared, which shows whether it is large enough
+     *
+     * @return the hit rate of the seed cache, between 0.0 and 1.0
+     */
+    public float getSeedCacheHitRate() {
+        return seedCache.getHitRate();
     }
 
     /**
-     * Clears both the primary and secondary caches
+     * Clears the primary, secondary and seed caches
      *
      * @return the number of items cleared from the cache
      */
     public int clearCacheContents() {
-        int size = primaryEndingsCache.size() + secondaryEndingsCache.size();
-        primaryEndingsCache.clear();
-        secondaryEndingsCache.clear();
-        return size;
-
+        seedCache.resetStatistics();
+        return endingsCache.clear() + seedCache.clear();
     }
 
     /**
@@ -171,65 +258,83 @@ public class StatsCruncher {
      * doesn't
      */
     public CharMap<Float> getFromCache(String key) {
-        // FIRST CHECK IF IT'S IN THE PRIMARY CACHE
-        CharMap primary = primaryEndingsCache.get(key);
-        if (primary != null) {
-            return primary;
-        }
-        // IF IT WASN'T, CHECK THE SECONDARY
-        Entry<String, CharMap<Float>> secondary = null;
-        for (Entry<String, CharMap<Float>> entry : secondaryEndingsCache) {
-            if (entry.getKey().equals(key)) {
-                // IT WAS IN THE SECONDARY SO MOVE IT TO THE PRIMARY
-                secondary = entry;
-                break;
-            }
+        DenseDecimalCharMap cached = getDenseFromCache(key);
+        return (cached == null ? null : cached.toCharMap());
+    }
+
+    /**
+     * Slot-indexed variant of getFromCache(String)
+     *
+     * @param key a sequence of characters to use as a key
+     * @return the item held at the key value if it exists, otherwise null if it
+     * doesn't
+     */
+    DenseDecimalCharMap getDenseFromCache(String key) {
+        return getDenseFromCache(key, 0, key.length());
+    }
+
+    /**
+     * Variant of getDenseFromCache(String) which looks up a range of
+     * characters without copying them
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return the item held at the key value if it exists, otherwise null if it
+     * doesn't
+     */
+    DenseDecimalCharMap getDenseFromCache(CharSequence charSequence, int start, int end) {
+        CachedEnding cached = endingsCache.get(charSequence, start, end);
+        if (cached == null) {
+            return null;
         }
-        if (secondary != null) {
-            // IF IT WAS IN THE SECONDARY, MOVE IT TO THE PRIMARY THEN RETURN IT
-            if (primaryEndingsCache.size() < primaryCacheSize) {
-                primaryEndingsCache.put(key, secondary.getValue());
-                secondaryEndingsCache.remove(secondary);
-            }
-            return secondary.getValue();
+        DenseDecimalCharMap results = new DenseDecimalCharMap(model.getAlphabetIndex());
+        for (int slot = 0; slot < cached.weights.length; slot++) {
+            results.putAt(slot, cached.weights[slot]);
         }
-        // IT WAS IN NEITHER SO RETURN NULL
-        return null;
+        return results;
     }
 
     /**
-     * Method for setting the size of the primary cache. Please note that unlike
-     * the secondary cache, this method does not shrink the cache once it has
-     * been filled
+     * Method for setting the size of the primary cache. If the cache is
+     * shrunk, its least recently used entries are moved back to the secondary
+     * cache.
      *
      * @param size the new size. Note that a size of zero effectively disables
      * this
      * @throws IllegalArgumentException if size is less than zero
      */
     public void setPrimaryCacheSize(int size) {
-        if (size < 0) {
-            throw new IllegalArgumentException("Size less than zero");
-        }
-        primaryCacheSize = size;
+        endingsCache.setProtectedCapacity(size);
     }
 
     /**
-     * Method for setting the size of the primary cache. Please note that unlike
-     * the primary cache, this method will delete entries from the secondary
-     * cache if you are shrinking it
+     * Method for setting the size of the secondary cache. If the cache is
+     * shrunk, its least recently used entries are deleted.
      *
      * @param size the new size. Note that a size of zero effectively disables
      * this
      * @throws IllegalArgumentException if size is less than zero
      */
     public void setSecondaryCacheSize(int size) {
-        if (size < 0) {
-            throw new IllegalArgumentException("Size less than zero");
-        }
-        secondaryCacheSize = size;
-        while (secondaryEndingsCache.size() >= secondaryCacheSize) {
-            secondaryEndingsCache.removeFirst();
-        }
+        endingsCache.setProbationCapacity(size);
+    }
+
+    /**
+     * Method for setting the size of the seed cache. If the cache is shrunk,
+     * its least frequently used entries are deleted. The default value is 0,
+     * leaving the cache off: every seed it admits creates its trie nodes,
+     * recommendations and sampler, and once full it keeps admitting new seeds
+     * as old ones cool, so it only pays for itself when the same seeds recur
+     * often, such as when building many words from a small library. A size
+     * of a few thousand suits that case.
+     *
+     * @param size the new size. Note that a size of zero disables this
+     * @throws IllegalArgumentException if size is less than zero
+     */
+    public void setSeedCacheSize(int size) {
+        seedCache.setCapacity(size);
+        seedCacheSize = size;
     }
 
     /**
@@ -237,7 +342,8 @@ public class StatsCruncher {
      * to move into the caching system. The default value is 2. A smaller value
      * will increase the number of cached entries but reduce their
      * effectiveness, while an increased value will decrease the number of
-     * cached entries but increase their effectiveness.
+     * cached entries but increase their effectiveness. Only seeds longer than
+     * an ending are held in the seed cache, so it is cleared.
      *
      * @param size the new size
      * @throws IllegalArgumentException if size is less than one
@@ -247,16 +353,39 @@ public class StatsCruncher {
             throw new IllegalArgumentException("Size less than zero");
         }
         endingLength = size;
+        seedCache.clear();
+    }
+
+    /**
+     * @return the number of trailing characters interpreted as an ending
+     */
+    int getCachedWordSize() {
+        return endingLength;
     }
 
     // BUILDING METHODS 
     // - setCharacterAgingFactor
+    // - getInfluenceVersion
+    // - getAgingWeights
+    // - weighAging
     // - setSameCharacterAdjustFactor
-    // - reduceInfluenceMap    
+    // - reduceInfluenceMap (2)
     // - reduceInfluenceMapAndCache
     // - generateAppendRecommendations
+    // - generateDenseRecommendations
+    // - generateRecommendations (2)
+    // - generateDistribution
+    // - generateCumulativeDistribution
+    // - getEndingSampler
+    // - getSeedSampler
+    // - getEnding
+    // - applySameCharacterAdjust (2)
     // - getPrimaryCharacterDistribution
+    // - getDensePrimaryCharacterDistribution
+    // - getPrimarySampler
     // - getEODFactor
+    // - getEndMassTable
+    // - compile
     /**
      * Method for setting the character aging factor when recommending new
      * characters. This factor changes how much additional influence characters
@@ -268,6 +397,8 @@ public class StatsCruncher {
      * exactly equal) value * (1-value)^n * I_n, where n indicates the distance
      * of the character
      *
+     * Cached endings were weighed with the old factor, so the cache is cleared.
+     *
      * @param value a percentage value representing the shift, as a float
      * between 0.0 and 1.0 inclusive
      * @throws IllegalArgumentException when a float is used not within the
@@ -278,6 +409,51 @@ public class StatsCruncher {
             throw new IllegalArgumentException("new value must be between 0 and 1");
         }
         characterAgingFactor = value;
+        agingWeights = weighAging(value, 32);
+        endingsCache.clear();
+        seedCache.clear();
+        endMassTable = null;
+        influenceVersion++;
+    }
+
+    /**
+     * @return a number which changes whenever the metrics or the character
+     * aging factor do
+     */
+    int getInfluenceVersion() {
+        return influenceVersion;
+    }
+
+    /**
+     * Retrieves the weight the aging algorithm gives an influence at each
+     * distance, so that reducing a list of influences is a dot product
+     *
+     * @param length the number of distances needed
+     * @return an array of at least length weights, indexed by distance, which
+     * must not be modified
+     */
+    float[] getAgingWeights(int length) {
+        float[] weights = agingWeights;
+        if (weights.length < length) {
+            weights = weighAging(characterAgingFactor, Math.max(length, 2 * weights.length));
+            agingWeights = weights;
+        }
+        return weights;
+    }
+
+    /**
+     * @param agingFactor the character aging factor
+     * @param length the number of distances to weigh
+     * @return agingFactor * (1 - agingFactor)^distance for each distance
+     */
+    private static float[] weighAging(float agingFactor, int length) {
+        float[] weights = new float[length];
+        float weight = agingFactor;
+        for (int distance = 0; distance < length; distance++) {
+            weights[distance] = weight;
+            weight *= 1.0f - agingFactor;
+        }
+        return weights;
     }
 
     /**
@@ -288,7 +464,8 @@ public class StatsCruncher {
      * than other character chains whereas a greater value will increase their
      * occurrence and a smaller value will decrease it
      *
-     * The default value for this is 0.85
+     * The default value for this is 0.85. Cached endings hold samplers
+     * adjusted with the old value, so the cache is cleared.
      *
      * @param value the new value to use
      * @throws IllegalArgumentException if the new value is less than 0.0
@@ -298,6 +475,8 @@ public class StatsCruncher {
             throw new IllegalArgumentException("new value must be 0.0 or greater");
         }
         sameCharacterWeightAdjust = value;
+        endingsCache.clear();
+        seedCache.clear();
     }
 
     /**
@@ -318,6 +497,7 @@ public class StatsCruncher {
             throw new IllegalArgumentException("new value must be 0.0 or greater");
         }
         eowFactorThreshold = value;
+        endMassTable = null;
     }
 
     /**
@@ -335,23 +515,14 @@ public class StatsCruncher {
     public CharMap<Float> reduceInfluenceMap(OccurrenceCharMap map) {
         CharMap<Float> results = new BasicDecimalCharMap(map.isCaseSensitive());
 
-        // FOR THE AGING ALGORITHM
-        float characterAgingInverse = 1.0f - characterAgingFactor;
-
         // NOW RUN THE ALGORITHM
         for (Entry<Character, OccurrenceList> entry : map.entrySet()) {
             char key = entry.getKey();
             OccurrenceList value = entry.getValue();
 
-            // GET THE WEIGHTED SUM
-            float weightedSum = 0.0f;
-            for (int i = value.size() - 1; i >= 0; i--) {
-                // WE MUST GO IN REVERSE TO APPLY AGING TO OLD VALUES
-                weightedSum *= characterAgingInverse;
-                weightedSum += characterAgingFactor * value.getCount(i);
-            }
+            // THE AGED SUM IS THE DOT PRODUCT WITH THE AGING WEIGHTS
+            float weightedSum = value.getWeightedSum(getAgingWeights(value.size()));
 
-            // IF IT MATCHES THE KEY, REDUCE IT
             // ADD IT TO THE NEW MAP
             results.put(key, weightedSum);
         }
@@ -359,6 +530,31 @@ public class StatsCruncher {
         return results;
     }
 
+    /**
+     * Slot-indexed variant of reduceInfluenceMap(OccurrenceCharMap), reducing
+     * into a flat float array instead of a TreeMap of boxed values
+     *
+     * @param map a DenseOccurrenceCharMap of character influences and their
+     * distances
+     * @return a crunched DenseDecimalCharMap of floating point weights
+     */
+    DenseDecimalCharMap reduceInfluenceMap(DenseOccurrenceCharMap map) {
+        DenseDecimalCharMap results = new DenseDecimalCharMap(map.getAlphabet());
+
+        // NOW RUN THE ALGORITHM
+        for (int slot = 0; slot < map.slots(); slot++) {
+            OccurrenceList value = map.getAt(slot);
+            if (value == null) {
+                continue;
+            }
+
+            // THE AGED SUM IS THE DOT PRODUCT WITH THE AGING WEIGHTS
+            results.putAt(slot, value.getWeightedSum(getAgingWeights(value.size())));
+        }
+
+        return results;
+    }
+
     /**
      * Main method for requesting a new character to append to a string which
      * applies the internal algorithms and values to the collected statistics
@@ -368,64 +564,320 @@ public class StatsCruncher {
      * total influence of each character
      */
     public CharMap<Float> generateAppendRecommendations(String charSequence) {
-        CharMap<Float> results = new CharMap<Float>() {
-            @Override
-            public Float mergeValues(Float oldValue, Float newValue) {
-                // MERGING TWO LISTS OF PERCENTAGES REQUIRES A REBALANCING OF ALL THE PERCERNTAGES, SO IT CAN'T BE DONE IN A SINGLE PASS AND THUS IS ILLEGAL
-                throw new ArithmeticException("Illegal percentages merge");
-            }
-        };
+        return generateDenseRecommendations(charSequence).toCharMap();
+    }
 
+    /**
+     * Slot-indexed variant of generateAppendRecommendations(String) used
+     * internally while building words
+     *
+     * @param charSequence a sequence of characters to interpret
+     * @return a DenseDecimalCharMap of weights for each candidate character
+     */
+    DenseDecimalCharMap generateDenseRecommendations(String charSequence) {
+        return generateDenseRecommendations(charSequence, 0, charSequence.length());
+    }
+
+    /**
+     * Variant of generateDenseRecommendations(String) which interprets a range
+     * of characters, such as the last few characters of a word being built,
+     * without copying them. The ending is looked up in the cache by range.
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @return a DenseDecimalCharMap of weights for each candidate character
+     */
+    DenseDecimalCharMap generateDenseRecommendations(CharSequence charSequence, int start, int end) {
         // SEPARATE THE SEQUENCE INTO ENDING AND WORD
-        int length = charSequence.length();
-        String word, ending;
-        if (length >= endingLength) {
-            word = charSequence.substring(0, length - endingLength);
-            ending = charSequence.substring(length - endingLength, length);
-        } else {
-            word = "";
-            ending = charSequence;
+        int endingStart = Math.max(start, end - endingLength);
+
+        // GET THE WEIGHTS FOR THE ENDING
+        float[] ending = getEnding(charSequence, endingStart, end).weights;
+
+        // GENERATE THE REST OF THE WORD AND MERGE IN THE ENDING. SINCE WE DID THE
+        // WEIGHING BEFOREHAND, WE JUST HAVE TO ADD THE RESULTS
+        DenseDecimalCharMap results = reduceInfluenceMap(model.generateDenseInfluenceMap(charSequence, start, end, endingLength));
+        for (int slot = 0; slot < ending.length; slot++) {
+            results.incrementAt(slot, ending[slot]);
         }
 
-        // GET THE MAP FOR THE ENDING FROM CACHE If it EXISTS
-        CharMap<Float> endingMap = getFromCache(ending);
-        if (endingMap == null) {
-            // IF IT DOESN'T EXIST, MAKE IT
-            endingMap = reduceInfluenceMap(statLib.generateInfluenceMap(ending));
-            // AND PUSH IT INTO THE SECONDARY CACHE
-            secondaryEndingsCache.push(new AbstractMap.SimpleImmutableEntry(ending, endingMap));
-            if (secondaryEndingsCache.size() >= secondaryCacheSize) {
-                secondaryEndingsCache.pop();
+        applySameCharacterAdjust(results, charSequence.charAt(end - 1));
+        return results;
+    }
+
+    /**
+     * Variant of generateDenseRecommendations(CharSequence, int, int) which
+     * reduces the correlations of the word straight into an array rather than
+     * building an influence map, giving the same weights without creating
+     * anything once the ending is cached
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param weights an array to fill with the weight of each candidate
+     * character, indexed by slot
+     * @return weights, or a new array if weights can't hold every slot
+     */
+    float[] generateRecommendations(CharSequence charSequence, int start, int end, float[] weights) {
+        Alphabet alphabet = model.getAlphabetIndex();
+        int slots = alphabet.size();
+        if (weights.length < slots) {
+            weights = new float[slots];
+        }
+        Arrays.fill(weights, 0, slots, 0.0f);
+        int endingStart = Math.max(start, end - endingLength);
+        CachedEnding ending = getEnding(charSequence, endingStart, end);
+
+        // WEIGH THE WORD BY DISTANCE, OLDEST CHARACTER FIRST, JUST AS reduceInfluenceMap WOULD, THEN MERGE IN THE ENDING
+        float[] aging = getAgingWeights(end - start);
+        for (int i = start; i < endingStart; i++) {
+            model.addCorrelations(alphabet.indexOf(charSequence.charAt(i)), end - i - 1, aging[end - i - 1], weights);
+        }
+        for (int to = 0; to < slots; to++) {
+            weights[to] += ending.getAt(to);
+        }
+
+        applySameCharacterAdjust(weights, alphabet.indexOf(charSequence.charAt(end - 1)));
+        return weights;
+    }
+
+    /**
+     * Variant of generateRecommendations(CharSequence, int, int, float[])
+     * which takes the influence of the word from a rolling context that has
+     * been kept up to date with it, so only the ending needs to be merged in
+     *
+     * @param context the rolling influence of every character of the range
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param weights an array to fill with the weight of each candidate
+     * character, indexed by slot
+     * @return weights, or a new array if weights can't hold every slot
+     */
+    float[] generateRecommendations(InfluenceContext context, CharSequence charSequence, int start, int end, float[] weights) {
+        Alphabet alphabet = model.getAlphabetIndex();
+        int slots = alphabet.size();
+        if (weights.length < slots) {
+            weights = new float[slots];
+        }
+        context.getWeights(weights);
+        CachedEnding ending = getEnding(charSequence, Math.max(start, end - endingLength), end);
+        for (int to = 0; to < slots; to++) {
+            weights[to] += ending.getAt(to);
+        }
+
+        applySameCharacterAdjust(weights, alphabet.indexOf(charSequence.charAt(end - 1)));
+        return weights;
+    }
+
+    /**
+     * Fills in the recommendations for a range, then trims and re-balances them
+     * in place
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param threshold the lower threshold of acceptable values, or 1.0f or
+     * more to skip trimming
+     * @param weights an array to fill with the probability of each candidate
+     * character, indexed by slot
+     * @return weights, or a new array if weights can't hold every slot
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    float[] generateDistribution(CharSequence charSequence, int start, int end, float threshold, float[] weights) {
+        weights = generateRecommendations(charSequence, start, end, weights);
+        int[] order = model.getAlphabetIndex().getSortedSlots(weights.length);
+        if (threshold < 1.0f) {
+            DenseDecimalCharMap.trimValues(weights, order, threshold);
+        }
+        DenseDecimalCharMap.rebalanceValues(weights, order);
+        return weights;
+    }
+
+    /**
+     * Fused kernel which does all the work of generateDistribution for a
+     * range whose word is held by a rolling context, leaving the running
+     * totals of the distribution for CumulativeSampler.sample. The word and
+     * ending are merged, the repeating-character chain adjust applied and the
+     * total taken in one pass over the array, then the trimming and
+     * accumulating are done in another. The totals are not re-balanced, since
+     * sampling scales its pick by the total anyway. Both passes walk the slots
+     * in the order of their characters.
+     *
+     * @param context the rolling influence of every character of the range
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param threshold the lower threshold of acceptable values, or 1.0f or
+     * more to skip trimming
+     * @param order the slots to recommend, as given by the model's
+     * Alphabet.getSortedSlots(), which is also the order to sample them in
+     * @param weights an array to fill with the running total of the
+     * distribution, indexed by slot
+     * @return weights, or a new array if weights can't hold every slot
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    float[] generateCumulativeDistribution(InfluenceContext context, CharSequence charSequence, int start, int end, float threshold, int[] order, float[] weights) {
+        Alphabet alphabet = model.getAlphabetIndex();
+        if (weights.length < order.length) {
+            weights = new float[order.length];
+        }
+        float[] word = context.getWeights();
+        CachedEnding ending = getEnding(charSequence, Math.max(start, end - endingLength), end);
+        int lastSlot = alphabet.indexOf(charSequence.charAt(end - 1));
+
+        // MERGE, ADJUST AND TOTAL
+        float sum = 0.0f;
+        for (int to : order) {
+            float weight = word[to] + ending.getAt(to);
+            if (to == lastSlot) {
+                weight *= sameCharacterWeightAdjust;
             }
+            weights[to] = weight;
+            sum += weight;
         }
 
-        // GENERATE THE REST OF THE WORD
-        CharMap<Float> wordMap = reduceInfluenceMap(statLib.generateInfluenceMap(charSequence, endingLength));
+        // TRIM AND ACCUMULATE
+        CumulativeSampler.accumulate(weights, order, CumulativeSampler.floor(sum, threshold));
+        return weights;
+    }
 
-        // NOW MERGE THE TWO MAPS - FIRST THE ENDINGS
-        for (Entry<Character, Float> entry : endingMap.entrySet()) {
-            results.put(entry.getKey(), entry.getValue());
+    /**
+     * Retrieves a sampler over the trimmed and re-balanced recommendations for
+     * a range which is no longer than the ending, building it and caching it
+     * with the ending if needed. Like the seed sampler it totals the
+     * recommendations in the order of their characters, so it draws exactly
+     * the same characters as sampling the running totals from
+     * generateCumulativeDistribution or a GenerationModel would.
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param threshold the lower threshold of acceptable recommendations, or
+     * 1.0f or more to keep them all
+     * @return a sampler over the recommendations, or null if the range is
+     * longer than the ending
+     */
+    Sampler getEndingSampler(CharSequence charSequence, int start, int end, float threshold) {
+        if (end - start > endingLength) {
+            return null;
+        }
+        CachedEnding ending = getEnding(charSequence, start, end);
+        Sampler sampler = ending.getSampler(threshold);
+        if (sampler == null) {
+            // THE WHOLE RANGE IS THE ENDING, SO THERE IS NOTHING TO ADD TO IT. NO OTHER THREAD CAN SEE A RECYCLED
+            // ENTRY, SO ITS OWN WEIGHTS ARE ADJUSTED WHILE ITS SAMPLER IS BUILT RATHER THAN COPIED
+            Alphabet alphabet = model.getAlphabetIndex();
+            float[] weights = (ending.isRecycled() ? ending.weights : ending.weights.clone());
+            int lastSlot = alphabet.indexOf(charSequence.charAt(end - 1));
+            float last = (lastSlot >= 0 ? weights[lastSlot] : 0.0f);
+            applySameCharacterAdjust(weights, lastSlot);
+            try {
+                sampler = ending.buildSampler(weights, alphabet.getSortedSlots(weights.length), threshold);
+            } finally {
+                if (lastSlot >= 0) {
+                    weights[lastSlot] = last;
+                }
+            }
         }
-        // THEN THE WORD
-        for (Entry<Character, Float> entry : wordMap.entrySet()) {
-            // SEE IF A VALUE ALREADY EXISTS
-            Float existing = results.get(entry.getKey());
-            // SINCE WE DID THE WEIGHING BEFOREHAND, WE JUST HAVE TO ADD THE RESULTS
-            if (existing == null) {
-                results.put(entry.getKey(), entry.getValue());
+        return sampler;
+    }
+
+    /**
+     * Retrieves a sampler over the trimmed and re-balanced recommendations for
+     * a whole seed from the seed cache, working them out with the help of a
+     * rolling context and caching them if needed. The sampler draws exactly
+     * the same characters as sampling the running totals from
+     * generateCumulativeDistribution would.
+     *
+     * @param context the rolling influence of every character of the seed
+     * @param charSequence the sequence holding the seed
+     * @param start the index of the first character of the seed
+     * @param end the index just past the last character of the seed
+     * @param threshold the lower threshold of acceptable recommendations, or
+     * 1.0f or more to keep them all
+     * @return a sampler over the recommendations, or null if the seed isn't
+     * cached and the seed cache has no room for it
+     */
+    Sampler getSeedSampler(InfluenceContext context, CharSequence charSequence, int start, int end, float threshold) {
+        if (seedCacheSize == 0) {
+            return null;
+        }
+        CachedEnding seed = seedCache.get(charSequence, start, end);
+        if (seed == null) {
+            if (!seedCache.canAdmit(charSequence, start, end)) {
+                return null;
+            }
+            float[] weights = generateRecommendations(context, charSequence, start, end, new float[model.getAlphabetIndex().size()]);
+            seed = new CachedEnding(weights);
+            seedCache.put(charSequence, start, end, seed);
+        }
+        Sampler sampler = seed.getSampler(threshold);
+        if (sampler == null) {
+            sampler = seed.buildSampler(seed.weights, model.getAlphabetIndex().getSortedSlots(seed.weights.length), threshold);
+        }
+        return sampler;
+    }
+
+    /**
+     * Retrieves an ending from the cache, reducing its influence and putting
+     * it into the secondary cache if it isn't there. The influence is added
+     * up straight into the entry, newest character first just as
+     * reduceInfluenceMap adds up the distances, and the entry the cache
+     * pushes out in return is kept to be refilled by the next miss, so that a
+     * cache which is only used by this thread creates nothing once it's full.
+     *
+     * @param charSequence the sequence holding the ending
+     * @param start the index of the first character of the ending
+     * @param end the index just past the last character of the ending
+     * @return the cache entry of the ending
+     */
+    private CachedEnding getEnding(CharSequence charSequence, int start, int end) {
+        CachedEnding ending = endingsCache.get(charSequence, start, end);
+        if (ending == null) {
+            Alphabet alphabet = model.getAlphabetIndex();
+            ending = spareEnding;
+            spareEnding = null;
+            if (ending == null) {
+                ending = new CachedEnding(new float[alphabet.size()]);
             } else {
-                results.put(entry.getKey(), existing + entry.getValue());
+                ending.recycle(alphabet.size());
             }
+            float[] aging = getAgingWeights(end - start);
+            for (int i = end - 1; i >= start; i--) {
+                model.addCorrelations(alphabet.indexOf(charSequence.charAt(i)), end - i - 1, aging[end - i - 1], ending.weights);
+            }
+            spareEnding = endingsCache.put(charSequence, start, end, ending);
         }
+        return ending;
+    }
 
-        // APPLY REPEATING-CHARACTER CHAIN ADJUST
-        char lastChar = charSequence.charAt(length - 1);
-        Float repeatEntry = results.get(lastChar);
-        if (repeatEntry != null) {
-            results.put(lastChar, repeatEntry * sameCharacterWeightAdjust);
+    /**
+     * Applies the repeating-character chain adjust to a set of recommendations
+     *
+     * @param results the recommendations to adjust
+     * @param last the last character of the interpreted sequence
+     */
+    private void applySameCharacterAdjust(DenseDecimalCharMap results, char last) {
+        int lastSlot = results.getAlphabet().indexOf(last);
+        if (lastSlot >= 0) {
+            results.putAt(lastSlot, results.getAt(lastSlot) * sameCharacterWeightAdjust);
         }
+    }
 
-        return results;
+    /**
+     * Applies the repeating-character chain adjust to a set of recommendations
+     * held in an array
+     *
+     * @param weights the recommendations to adjust, indexed by slot
+     * @param lastSlot the slot of the last character of the interpreted
+     * sequence, or -1 if it has none
+     */
+    private void applySameCharacterAdjust(float[] weights, int lastSlot) {
+        if (lastSlot >= 0) {
+            weights[lastSlot] *= sameCharacterWeightAdjust;
+        }
     }
 
     /**
@@ -438,6 +890,23 @@ public class StatsCruncher {
         return primaryCharacterDistribution;
     }
 
+    /**
+     * Slot-indexed variant of getPrimaryCharacterDitribution()
+     *
+     * @return A DenseDecimalCharMap of values whose sum totals 1.0f
+     */
+    DenseDecimalCharMap getDensePrimaryCharacterDistribution() {
+        return densePrimaryCharacterDistribution;
+    }
+
+    /**
+     * @return a Sampler over the primary character distribution, rebuilt by
+     * recalculateMetrics
+     */
+    Sampler getPrimarySampler() {
+        return primarySampler;
+    }
+
     /**
      * Retrieves the End-Of-Word factor being a number in the range 0.0-1.0f
      * showing the calculated odds of the character sequence being the end of a
@@ -453,16 +922,27 @@ public class StatsCruncher {
      * character sequence being a word ending
      */
     public float getEOWFactor(String charSequence) {
+        return getEOWFactor(charSequence, 0, charSequence.length());
+    }
+
+    /**
+     * Variant of getEOWFactor(String) which interprets a range of characters
+     * without copying them
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @return a float value representing a factor between 0.0-1.0 of the
+     * range being a word ending
+     */
+    float getEOWFactor(CharSequence charSequence, int start, int end) {
         // INITIALIZATION
-        int length = charSequence.length();
         float result = 0.0f;
-        float characterAgingInverse = 1.0f - characterAgingFactor;
+        float[] aging = getAgingWeights(end - start);
 
-        for (int i = 0; i < length; i++) {
-            // FOR EACH CHARACTER BEGINNING AT THE START, GET THE PMF AT SAID INDEX AND AGE IT
-            CharStats stat = statLib.getCharacterStats(charSequence.charAt(i));
-            result *= characterAgingInverse;
-            result += characterAgingFactor * stat.getDistancesFromEnd().getProbabilityMass(length - i - 1);
+        for (int i = start; i < end; i++) {
+            // FOR EACH CHARACTER BEGINNING AT THE START, WEIGH THE PMF AT SAID INDEX BY ITS AGE
+            result += aging[end - i - 1] * model.getEndProbabilityMass(charSequence.charAt(i), end - i - 1);
         }
 
         // APPLY THRESHOLD
@@ -474,4 +954,35 @@ public class StatsCruncher {
         // RETURN THE RESULT
         return result;
     }
+
+    /**
+     * Retrieves the aged end probability masses used by EOWEvaluator. Like the
+     * primary character distribution, they are only taken from the statistics
+     * again after recalculateMetrics is called.
+     *
+     * @return the current table, built if there is none
+     */
+    EOWEvaluator.Table getEndMassTable() {
+        EOWEvaluator.Table table = endMassTable;
+        if (table == null) {
+            table = EOWEvaluator.Table.weigh(model, characterAgingFactor, eowFactorThreshold);
+            endMassTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Freezes the statistics and the current configuration into an immutable
+     * GenerationModel which builds words through table lookups. Changes made
+     * to either afterwards are not seen by the model.
+     *
+     * @return a new GenerationModel
+     * @throws IllegalStateException if the statistics hold too many characters
+     * to table every correlation, in which case words should be built from
+     * the cruncher itself
+     */
+    public GenerationModel compile() {
+        return new GenerationModel(model, densePrimaryCharacterDistribution, endingLength,
+                characterAgingFactor, sameCharacterWeightAdjust, eowFactorThreshold);
+    }
 }
@@ -26,9 +26,17 @@ package garbler.builder;
 import java.util.Random;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.random.RandomGenerator;
+import java.util.stream.StreamSupport;
 import garbler.library.CharMap;
 import garbler.library.StatsLibrary;
-import garbler.structure.BasicDecimalCharMap;
+import garbler.structure.Alphabet;
+import garbler.structure.CumulativeSampler;
+import garbler.structure.DenseDecimalCharMap;
+import garbler.structure.Sampler;
 
 /**
  * Class which builds words using random chance and the statistics provided from
@@ -38,14 +46,29 @@ import garbler.structure.BasicDecimalCharMap;
  */
 public class WordBuilder {
 
+    // THE NUMBER OF TRAILING CHARACTERS USED AS A SEED FOR THE NEXT ONE
+    static final int SEED_LENGTH = 6;
+
     // CLASS WHICH HANDLES ALL THE FANCY NUMBER CRUNCHING
     private StatsCruncher libData;
 
     // STATS LIBRARY INSIDE THE CRUNCHER CLASS
     private StatsLibrary statLib;
 
-    // RNG
-    private Random random;
+    // COMPILED TABLES TO BUILD FROM INSTEAD OF THE CRUNCHER
+    private GenerationModel compiled;
+
+    // SCRATCH SPACE REUSED BY EVERY WORD, SO THAT ONLY THE CRUNCHER'S CACHE MISSES CREATE ANYTHING
+    private float[] weights = new float[0];
+    private final StringBuilder scratch = new StringBuilder();
+    private EOWEvaluator endOfWord;
+    private InfluenceContext influence;
+
+    // RNG, WHICH MAY BE ANY GENERATOR THE CALLER LIKES
+    private RandomGenerator random;
+
+    // SOURCE OF THE SEED FOR EACH BATCH, DERIVED FROM THE BUILDER'S SEED
+    private final SplittableRandom batchSeeds;
 
     /**
      * Basic constructor
@@ -54,9 +77,7 @@ public class WordBuilder {
      * words for building words
      */
     public WordBuilder(StatsCruncher data) {
-        libData = data;
-        random = new Random();
-        statLib = data.getStatsLibrary();
+        this(data, null, new Random(), new SplittableRandom());
     }
 
     /**
@@ -67,9 +88,74 @@ public class WordBuilder {
      * @param seed the seed to use for the random number generator
      */
     public WordBuilder(StatsCruncher data, long seed) {
+        this(data, null, new Random(seed), new SplittableRandom(seed));
+    }
+
+    /**
+     * Constructor taking the random number generator to use, such as a
+     * SplittableRandom or one from RandomGenerator.of("Xoshiro256PlusPlus").
+     * The seed of every batch is drawn from it up front, so one value is
+     * taken from it here.
+     *
+     * @param data a pre-initialized StatsCruncher object to use for generating
+     * words
+     * @param random the generator to draw from, which is not shared with any
+     * other builder
+     */
+    public WordBuilder(StatsCruncher data, RandomGenerator random) {
+        this(data, null, random, new SplittableRandom(random.nextLong()));
+    }
+
+    /**
+     * Constructor for building words from a compiled GenerationModel. The
+     * model may be shared with other builders.
+     *
+     * @param model a GenerationModel produced by StatsCruncher.compile()
+     */
+    public WordBuilder(GenerationModel model) {
+        this(null, model, new Random(), new SplittableRandom());
+    }
+
+    /**
+     * Constructor for building words from a compiled GenerationModel. The
+     * model may be shared with other builders.
+     *
+     * @param model a GenerationModel produced by StatsCruncher.compile()
+     * @param seed the seed to use for the random number generator
+     */
+    public WordBuilder(GenerationModel model, long seed) {
+        this(null, model, new Random(seed), new SplittableRandom(seed));
+    }
+
+    /**
+     * Constructor for building words from a compiled GenerationModel with the
+     * random number generator to use. One value is taken from the generator
+     * to seed batches.
+     *
+     * @param model a GenerationModel produced by StatsCruncher.compile()
+     * @param random the generator to draw from, which is not shared with any
+     * other builder
+     */
+    public WordBuilder(GenerationModel model, RandomGenerator random) {
+        this(null, model, random, new SplittableRandom(random.nextLong()));
+    }
+
+    /**
+     * Constructor for a builder working on part of a batch for another one,
+     * drawing from a generator set through setRandom
+     *
+     * @param source the builder whose statistics to build from
+     */
+    WordBuilder(WordBuilder source) {
+        this(source.libData, source.compiled, null, null);
+    }
+
+    private WordBuilder(StatsCruncher data, GenerationModel model, RandomGenerator random, SplittableRandom batchSeeds) {
         libData = data;
-        random = new Random(seed);
-        statLib = data.getStatsLibrary();
+        statLib = (data == null ? null : data.getStatsLibrary());
+        compiled = model;
+        this.random = random;
+        this.batchSeeds = batchSeeds;
     }
 
     /**
@@ -80,31 +166,252 @@ public class WordBuilder {
      * @return a generated word matching the data provided by the cruncher
      */
     public String generateWord(int maxLength, float threshold) {
-        String s = "";
+        scratch.setLength(0);
+        buildWord(scratch, maxLength, threshold);
+        return scratch.toString();
+    }
 
-        s += pickFromDistribution(libData.getPrimaryCharacterDitribution());
+    /**
+     * Variant of generateWord(int, float) which writes the word into a buffer
+     * rather than creating a String for it. Building from a GenerationModel
+     * this creates nothing at all, and neither does building from a
+     * StatsCruncher once its ending cache is full, unless its seed cache is
+     * on or it is shared between threads.
+     *
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     * @param buffer the array to write the word into, starting at index 0
+     * @return the length of the generated word
+     * @throws IllegalArgumentException if the buffer is shorter than maxLength
+     */
+    public int generateWord(int maxLength, float threshold, char[] buffer) {
+        if (buffer.length < maxLength) {
+            throw new IllegalArgumentException("Buffer shorter than the maximum length");
+        }
+        scratch.setLength(0);
+        buildWord(scratch, maxLength, threshold);
+        int length = scratch.length();
+        scratch.getChars(0, length, buffer, 0);
+        return length;
+    }
+
+    /**
+     * Variant of generateWord(int, float) which appends the word to a
+     * StringBuilder rather than creating a String for it
+     *
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     * @param buffer the StringBuilder to append the word to. Anything already
+     * in it is left alone and isn't used as part of the seed.
+     * @return buffer
+     */
+    public StringBuilder generateWord(int maxLength, float threshold, StringBuilder buffer) {
+        buildWord(buffer, maxLength, threshold);
+        return buffer;
+    }
+
+    // BATCHES
+    // - generateWords
+    // - wordStream
+    // - wordSpliterator
+    // - canBuildConcurrently
+    // - setRandom
+    /**
+     * Generates a batch of words into an array. Each batch draws a seed from
+     * the builder's own, so a builder constructed with a given seed produces
+     * the same batches whether or not they are built in parallel, and on any
+     * number of threads.
+     *
+     * @param count the number of words to generate
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     * @param parallel true to build the words on the common ForkJoinPool
+     * @return an array of count words
+     * @throws IllegalArgumentException if count is less than zero
+     */
+    public String[] generateWords(int count, int maxLength, float threshold, boolean parallel) {
+        Stream<String> words = wordStream(count, maxLength, threshold);
+        return (parallel ? words.parallel() : words).toArray(String[]::new);
+    }
+
+    /**
+     * Generates a batch of words as a sequential Stream, which may be made
+     * parallel without changing the words or their order
+     *
+     * @param count the number of words to generate
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     * @return an ordered Stream of count words
+     * @throws IllegalArgumentException if count is less than zero
+     */
+    public Stream<String> wordStream(long count, int maxLength, float threshold) {
+        return StreamSupport.stream(wordSpliterator(count, maxLength, threshold), false);
+    }
+
+    /**
+     * Generates a batch of words through a Spliterator. The batch is cut into
+     * fixed chunks of words, each drawing from its own SplittableRandom seeded
+     * from the batch's seed, so how the batch is split never changes the words.
+     * It is only split when canBuildConcurrently() is true, otherwise the
+     * words are built one after another on whichever thread asks for them.
+     *
+     * @param count the number of words to generate
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     * @return an ordered and sized Spliterator over count words
+     * @throws IllegalArgumentException if count is less than zero
+     */
+    public Spliterator<String> wordSpliterator(long count, int maxLength, float threshold) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count passed");
+        }
+        return new WordSpliterator(this, batchSeeds.nextLong(), count, maxLength, threshold);
+    }
+
+    /**
+     * @return true if words may be built on several threads at once, being
+     * when building from a GenerationModel or a ConcurrentStatsCruncher
+     */
+    public boolean canBuildConcurrently() {
+        return compiled != null || libData instanceof ConcurrentStatsCruncher;
+    }
+
+    /**
+     * Switches a builder working on part of a batch over to a new random
+     * number generator
+     *
+     * @param random the generator to draw from
+     */
+    void setRandom(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * Builds a word onto the end of a StringBuilder, using nothing but the
+     * builder's scratch space apart from what the cruncher creates while it
+     * fills its caches
+     *
+     * @param word the StringBuilder to append the word to
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     */
+    private void buildWord(StringBuilder word, int maxLength, float threshold) {
+        int wordStart = word.length();
+        Alphabet alphabet = (compiled == null ? libData.getStatsModel().getAlphabetIndex() : null);
+
+        // THE END-OF-WORD FACTOR IS KEPT UP TO DATE AS CHARACTERS ARE ADDED RATHER THAN RE-READ
+        if (endOfWord == null) {
+            endOfWord = (compiled == null ? new EOWEvaluator(libData, SEED_LENGTH) : new EOWEvaluator(compiled));
+        }
+        endOfWord.reset();
+
+        // SO IS THE INFLUENCE OF THE WORD ON THE NEXT CHARACTER, WHEN IT ISN'T TABLED
+        if (compiled == null) {
+            if (influence == null) {
+                influence = new InfluenceContext(libData, SEED_LENGTH);
+            }
+            influence.reset();
+        }
+
+        char next = (compiled == null
+                ? pickFromSampler(libData.getPrimarySampler(), alphabet)
+                : pickFromSampler(compiled.getPrimarySampler(), compiled));
+        append(word, next);
         for (int i = 1; i < maxLength; i++) {
-            // USE THE LAST UP-TO-6 CHARACTERS AS A SEED
-            String seed = (s.length() < 6 ? s : s.substring(s.length() - 6, s.length()));
+            // USE THE LAST UP-TO-6 CHARACTERS AS A SEED, WITHOUT COPYING THEM
+            int end = word.length();
+            int seedStart = Math.max(wordStart, end - SEED_LENGTH);
 
             // CHECK THE ODDS OF IT BEING AN ENDING
-            if (random.nextFloat() < libData.getEOWFactor(seed)){
-                return s;
+            if (random.nextFloat() < endOfWord.getFactor()) {
+                return;
             }
-            
-            // GER RECOMMENDATIONS FOR AND GENERATE THE NEXT CHARACTER
-            CharMap<Float> recommendations = libData.generateAppendRecommendations(seed);
-            if (threshold < 1.0f) {
-                BasicDecimalCharMap.trimMap(recommendations, threshold);
+
+            if (compiled != null) {
+                // READ THE DISTRIBUTION FOR AND GENERATE THE NEXT CHARACTER
+                if (weights.length < compiled.slots()) {
+                    weights = new float[compiled.slots()];
+                }
+                compiled.getCumulativeDistribution(word, seedStart, end, threshold, weights);
+                next = pickFromCumulative(compiled.getSortedSlots(), null);
+            } else {
+                // A SEED WHICH IS ONLY AN ENDING HAS ITS SAMPLER CACHED WITH THE ENDING, ANY OTHER IN THE SEED CACHE
+                Sampler sampler = libData.getEndingSampler(word, seedStart, end, threshold);
+                if (sampler == null) {
+                    sampler = libData.getSeedSampler(influence, word, seedStart, end, threshold);
+                }
+                if (sampler != null) {
+                    next = pickFromSampler(sampler, alphabet);
+                } else {
+                    // GET RECOMMENDATIONS FOR AND GENERATE THE NEXT CHARACTER
+                    int[] order = alphabet.getSortedSlots();
+                    weights = libData.generateCumulativeDistribution(influence, word, seedStart, end, threshold, order, weights);
+                    next = pickFromCumulative(order, alphabet);
+                }
             }
-            BasicDecimalCharMap.rebalanceMap(recommendations);
-            Character nextChar = pickFromDistribution(recommendations);
+            append(word, next);
+        }
+    }
 
-            // ADD IT TO THE WORD
-            s += nextChar;
+    /**
+     * Adds a character to the word being built and to the state kept about it
+     *
+     * @param word the word being built
+     * @param c the character to add
+     */
+    private void append(StringBuilder word, char c) {
+        word.append(c);
+        endOfWord.append(c);
+        if (compiled == null) {
+            influence.append(c);
         }
+    }
 
-        return s;
+    /**
+     * Picks a random character from the running totals of the distribution
+     * last read into the weights array
+     *
+     * @param order the slots of the distribution, in the order they were
+     * totalled in
+     * @param alphabet the Alphabet indexing the slots, or null for the slots of
+     * the compiled model
+     * @return a randomly selected character, or 0 if the distribution is
+     * empty
+     */
+    private char pickFromCumulative(int[] order, Alphabet alphabet) {
+        int slot = CumulativeSampler.sample(weights, order, random.nextFloat());
+        if (slot < 0) {
+            return 0;
+        }
+        return (alphabet == null ? compiled.charAt(slot) : alphabet.charAt(slot));
+    }
+
+    /**
+     * Picks a random character using a sampler over a slot-indexed
+     * distribution
+     *
+     * @param sampler the sampler to draw from
+     * @param alphabet the Alphabet indexing the sampler's slots
+     * @return a randomly selected character, or 0 if the distribution is
+     * empty
+     */
+    private char pickFromSampler(Sampler sampler, Alphabet alphabet) {
+        int slot = sampler.sample(random.nextFloat());
+        return (slot < 0 ? 0 : alphabet.charAt(slot));
+    }
+
+    /**
+     * Variant of pickFromSampler(Sampler, Alphabet) for samplers indexed by
+     * the slots of a compiled model
+     *
+     * @param sampler the sampler to draw from
+     * @param model the model indexing the sampler's slots
+     * @return a randomly selected character, or 0 if the distribution is
+     * empty
+     */
+    private char pickFromSampler(Sampler sampler, GenerationModel model) {
+        int slot = sampler.sample(random.nextFloat());
+        return (slot < 0 ? 0 : model.charAt(slot));
     }
 
     /**
@@ -121,17 +428,34 @@ public class WordBuilder {
         float pick = random.nextFloat();
         // ITERATE THROUGH THE VALUES UNTIL A MATCH IS MADE
         float sum = 0.0f;
+        Character last = 0;
         for (Entry<Character, Float> entry : distribution.entrySet()) {
+            if (!(entry.getValue() > 0.0f)) {
+                continue;   // NOT PART OF THE DISTRIBUTION
+            }
             // ADD THE VALUE TO THE SUM
             sum += entry.getValue();
+            last = entry.getKey();
 
             // CHECK IF IT'S WITHIN RANGE
             if (pick <= sum) {
-                return entry.getKey();
+                return last;
             }
         }
 
-        // REACHED THE END, RETURN NULL
-        return 0;
+        // ROUNDING LEFT THE SUM SHORT OF THE PICK, SO IT BELONGS TO THE LAST CHARACTER
+        return last;
+    }
+
+    /**
+     * Slot-indexed variant of pickFromDistribution(Map) which binary searches
+     * a running total of the probabilities instead of walking a TreeMap
+     *
+     * @param distribution a map of characters and their respective
+     * probabilities
+     * @return a randomly selected character from the distribution
+     */
+    public char pickFromDistribution(DenseDecimalCharMap distribution) {
+        return pickFromSampler(new CumulativeSampler(distribution), distribution.getAlphabet());
     }
 }
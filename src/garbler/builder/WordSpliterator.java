@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.builder;
+
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a batch of generated words. The batch is cut into chunks of
+ * CHUNK_SIZE words, and every chunk draws from its own SplittableRandom whose
+ * seed depends on nothing but the batch seed and the chunk's position. Splits
+ * only ever fall between chunks, so the words, and their order, are the same
+ * however the batch is divided between threads.
+ *
+ * @author Rogue <Alice Q.>
+ */
+final class WordSpliterator implements Spliterator<String> {
+
+    // WORDS PER CHUNK, BEING THE SMALLEST PIECE A BATCH IS SPLIT INTO
+    static final int CHUNK_SIZE = 256;
+
+    // ODD CONSTANT SPACING THE SEEDS OF NEIGHBOURING CHUNKS
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // WHAT TO BUILD
+    private final WordBuilder source;
+    private final long seed;
+    private final int maxLength;
+    private final float threshold;
+
+    // THE WORDS STILL TO BUILD, BY INDEX INTO THE BATCH
+    private long index;
+    private final long end;
+
+    // BUILDER FOR THE CHUNK IN PROGRESS, CREATED ON FIRST USE
+    private WordBuilder worker;
+
+    /**
+     * @param source the builder whose statistics to build from
+     * @param seed the seed of the batch
+     * @param count the number of words in the batch
+     * @param maxLength the maximum length of a word
+     * @param threshold the lower threshold of acceptable recommendations
+     */
+    WordSpliterator(WordBuilder source, long seed, long count, int maxLength, float threshold) {
+        this(source, seed, maxLength, threshold, 0, count, null);
+    }
+
+    private WordSpliterator(WordBuilder source, long seed, int maxLength, float threshold, long index, long end, WordBuilder worker) {
+        this.source = source;
+        this.seed = seed;
+        this.maxLength = maxLength;
+        this.threshold = threshold;
+        this.index = index;
+        this.end = end;
+        this.worker = worker;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (index >= end) {
+            return false;
+        }
+        action.accept(next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super String> action) {
+        while (index < end) {
+            action.accept(next());
+        }
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (!source.canBuildConcurrently()) {
+            return null;
+        }
+
+        // HAND THE FIRST HALF OF THE CHUNKS, ALONG WITH ANY CHUNK IN PROGRESS, TO THE PREFIX
+        long chunkStart = (index + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+        long chunks = (end - chunkStart + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        long middle = chunkStart + chunks / 2 * CHUNK_SIZE;
+        if (middle <= index || middle >= end) {
+            return null;
+        }
+        Spliterator<String> prefix = new WordSpliterator(source, seed, maxLength, threshold, index, middle, worker);
+        index = middle;
+        worker = null;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+
+    /**
+     * Builds the next word, switching to the generator of its chunk first if
+     * it's the chunk's first word
+     *
+     * @return the word at index
+     */
+    private String next() {
+        if (worker == null) {
+            worker = new WordBuilder(source);
+        }
+        if (index % CHUNK_SIZE == 0) {
+            worker.setRandom(new SplittableRandom(mix(seed + (index / CHUNK_SIZE) * GOLDEN_GAMMA)));
+        }
+        index++;
+        return worker.generateWord(maxLength, threshold);
+    }
+
+    /**
+     * Scrambles the bits of a value so that neighbouring chunks get unrelated
+     * seeds, using the same finalizer as SplittableRandom
+     *
+     * @param z the value to scramble
+     * @return the scrambled value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
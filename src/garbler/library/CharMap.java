@@ -150,8 +150,8 @@ public abstract class CharMap<E> extends java.util.TreeMap<Character, E> impleme
                 // WE'RE GOOD, JUST ADD THE NEW ONE
                 super.put(entry.getKey(), entry.getValue());
             } else if (existing != entry.getValue()) {  // ONLY NEED TO MERGE IF THEY'RE NOT THE SAME THING
-                // UHOH, CONFLICT. ASK THE USER WHAT TO DO
-                mergeValues(existing, entry.getValue());
+                // UHOH, CONFLICT. ASK THE USER WHAT TO DO, KEEPING THE RESULT FOR IMMUTABLE VALUES
+                super.put(getKey(entry.getKey()), mergeValues(existing, entry.getValue()));
             }
         }
         return this;
@@ -47,6 +47,9 @@ public class CharStats {
     // MAP OF ALL THE TIMES THIS CHARACTER OCCURS IN THE SAME WORD AS OTHER CHARACTERS, AND THEIR DISTANCES. NOTE THAT THIS ONLY TRACKS DISTANCE FROM
     private OccurrenceCharMap correlations;
 
+    // THE FURTHEST AWAY ANOTHER CHARACTER MAY BE AND STILL BE CORRELATED
+    private int maxDistance;
+
     // CONSTRUCTORS
     /**
      * Usage of this constructor is not recommended, please use CharStats(char).
@@ -62,18 +65,48 @@ public class CharStats {
      * @param c The character this entry is for
      */
     public CharStats(char c) {
+        this(c, new OccurrenceList(), new OccurrenceList(), new OccurrenceCharMap());
+    }
+
+    /**
+     * Constructor for subclasses which provide their own structures, or keep
+     * their statistics elsewhere entirely and pass null
+     *
+     * @param c The character this entry is for
+     * @param startDistances the list tracking distances from the start
+     * @param endDistances the list tracking distances from the end
+     * @param correlations the map tracking correlations to other characters
+     */
+    CharStats(char c, OccurrenceList startDistances, OccurrenceList endDistances, OccurrenceCharMap correlations) {
+        this(c, 0, startDistances, endDistances, correlations);
+    }
+
+    /**
+     * Constructor used when restoring previously tracked statistics
+     *
+     * @param c The character this entry is for
+     * @param occurrences the number of times the character has been
+     * encountered
+     * @param startDistances the list tracking distances from the start
+     * @param endDistances the list tracking distances from the end
+     * @param correlations the map tracking correlations to other characters
+     */
+    CharStats(char c, int occurrences, OccurrenceList startDistances, OccurrenceList endDistances, OccurrenceCharMap correlations) {
         name = c;
 
-        occurrences = 0;
+        this.occurrences = occurrences;
 
-        startDistances = new OccurrenceList();
-        endDistances = new OccurrenceList();
-        correlations = new OccurrenceCharMap();
+        this.startDistances = startDistances;
+        this.endDistances = endDistances;
+        this.correlations = correlations;
+        this.maxDistance = Integer.MAX_VALUE;
     }
 
     // GET-SETS
     // - setCaseSensitive
     // - isCaseSensitive
+    // - setMaxCorrelationDistance
+    // - getMaxCorrelationDistance
     // - getCharValue
     // - getAlphabet
     /**
@@ -98,6 +131,33 @@ public class CharStats {
         return correlations.isCaseSensitive();
     }
 
+    /**
+     * Method to set the furthest away another character may be in a word and
+     * still have its correlation with this one tracked. This bounds both the
+     * work of adding a word and the length of every correlation list. Any
+     * correlations already tracked beyond the new limit are discarded.
+     *
+     * @param distance the maximum distance, which must be at least 1
+     * @throws IllegalArgumentException when distance is less than 1
+     */
+    public void setMaxCorrelationDistance(int distance) {
+        if (distance < 1) {
+            throw new IllegalArgumentException("Maximum distance must be at least 1");
+        }
+        maxDistance = distance;
+        for (OccurrenceList list : correlations.values()) {
+            truncate(list);
+        }
+    }
+
+    /**
+     * @return the furthest away another character may be and still have its
+     * correlation tracked, which is Integer.MAX_VALUE when unbounded
+     */
+    public int getMaxCorrelationDistance() {
+        return maxDistance;
+    }
+
     /**
      * Method to get the character value associated with this instance
      *
@@ -124,7 +184,16 @@ public class CharStats {
      * Adds a single encounter to the internal counter
      */
     public void addOccurrence() {
-        occurrences++;
+        addOccurrence(1);
+    }
+
+    /**
+     * Adds several encounters to the internal counter
+     *
+     * @param count the number of encounters to add
+     */
+    public void addOccurrence(int count) {
+        occurrences += count;
     }
 
     /**
@@ -134,7 +203,18 @@ public class CharStats {
      * @throws ArrayIndexOutOfBoundsException When distance is less than 0
      */
     public void addPositionFromStart(int distance) {
-        startDistances.increment(distance);
+        addPositionFromStart(distance, 1);
+    }
+
+    /**
+     * Adds several position occurrences from the start of a word
+     *
+     * @param distance The distance from the start of the word
+     * @param count the number of occurrences to add
+     * @throws ArrayIndexOutOfBoundsException When distance is less than 0
+     */
+    public void addPositionFromStart(int distance, int count) {
+        startDistances.increment(distance, count);
     }
 
     /**
@@ -144,7 +224,18 @@ public class CharStats {
      * @throws ArrayIndexOutOfBoundsException When distance is less than 0
      */
     public void addPositonFromEnd(int distance) {
-        endDistances.increment(distance);
+        addPositonFromEnd(distance, 1);
+    }
+
+    /**
+     * Adds several position occurrences from the end of a word
+     *
+     * @param distance The distance from the end of the word
+     * @param count the number of occurrences to add
+     * @throws ArrayIndexOutOfBoundsException When distance is less than 0
+     */
+    public void addPositonFromEnd(int distance, int count) {
+        endDistances.increment(distance, count);
     }
 
     /**
@@ -157,6 +248,24 @@ public class CharStats {
      * @throws ArrayIndexOutOfBoundsException When distanceTo is less than 1
      */
     public void addCharacterCorrelation(char c, int distanceTo) {
+        addCharacterCorrelation(c, distanceTo, 1);
+    }
+
+    /**
+     * Adds several character occurrences between this character and another,
+     * making the list if necessary
+     *
+     * @param c The character occurrence to add
+     * @param distanceTo The distance to the passed character. Note that this
+     * must be greater than 0.
+     * @param count the number of occurrences to add, which are ignored if the
+     * distance is beyond the maximum correlation distance
+     * @throws ArrayIndexOutOfBoundsException When distanceTo is less than 1
+     */
+    public void addCharacterCorrelation(char c, int distanceTo, int count) {
+        if (distanceTo > maxDistance) {
+            return;
+        }
         OccurrenceList list = correlations.get(c);
 
         if (list == null) {
@@ -164,7 +273,7 @@ public class CharStats {
             correlations.put(c, list);
         }
 
-        list.increment(distanceTo - 1);
+        list.increment(distanceTo - 1, count);
     }
 
     /**
@@ -195,8 +304,9 @@ public class CharStats {
         endDistances.increment(word.length() - fromIndex - 1);
         occurrences++;
 
-        // ADD EVERY CHARACTER AFTER THIS ONE
-        for (int i = fromIndex + 1; i < word.length(); i++) {
+        // ADD EVERY CHARACTER AFTER THIS ONE, UP TO THE MAXIMUM DISTANCE
+        int last = lastCorrelated(word.length(), fromIndex);
+        for (int i = fromIndex + 1; i <= last; i++) {
             addCharacterCorrelation(word.charAt(i), i - fromIndex);
         }
 
@@ -214,6 +324,46 @@ public class CharStats {
      * valid word range
      */
     public void addWord(String word, int fromIndex) {
+        addWord((CharSequence) word, fromIndex);
+    }
+
+    /**
+     * Variant of addWord(String, int) which accepts any sequence of characters
+     *
+     * @param word The word to add to tracking
+     * @param fromIndex The index to count from
+     * @throws ArrayIndexOutOfBoundsException when fromIndex is outside the
+     * valid word range
+     */
+    void addWord(CharSequence word, int fromIndex) {
+        addWord(word, fromIndex, 1);
+    }
+
+    /**
+     * Weighted variant of addWord(String, int) which adds a word as if it had
+     * been encountered several times, walking it only once
+     *
+     * @param word The word to add to tracking
+     * @param fromIndex The index to count from
+     * @param count the number of times the word was encountered
+     * @throws ArrayIndexOutOfBoundsException when fromIndex is outside the
+     * valid word range
+     */
+    public void addWord(String word, int fromIndex, int count) {
+        addWord((CharSequence) word, fromIndex, count);
+    }
+
+    /**
+     * Variant of addWord(String, int, int) which accepts any sequence of
+     * characters
+     *
+     * @param word The word to add to tracking
+     * @param fromIndex The index to count from
+     * @param count the number of times the word was encountered
+     * @throws ArrayIndexOutOfBoundsException when fromIndex is outside the
+     * valid word range
+     */
+    void addWord(CharSequence word, int fromIndex, int count) {
         if (word.charAt(fromIndex) != name) {
             return;
         }
@@ -222,14 +372,40 @@ public class CharStats {
         }
 
         // IT PASSED THE TEST SO ADD EVERYTHING
-        startDistances.increment(fromIndex);
-        endDistances.increment(word.length() - fromIndex - 1);
-        occurrences++;
+        startDistances.increment(fromIndex, count);
+        endDistances.increment(word.length() - fromIndex - 1, count);
+        occurrences += count;
+
+        // ADD EVERY CHARACTER AFTER THIS ONE, UP TO THE MAXIMUM DISTANCE
+        int last = lastCorrelated(word.length(), fromIndex);
+        for (int i = fromIndex + 1; i <= last; i++) {
+            addCharacterCorrelation(word.charAt(i), i - fromIndex, count);
+        }
+    }
 
-        // ADD EVERY CHARACTER AFTER THIS ONE
-        for (int i = fromIndex + 1; i < word.length(); i++) {
-            addCharacterCorrelation(word.charAt(i), i - fromIndex);
+    /**
+     * @param length the length of a word
+     * @param fromIndex the index of this character within the word
+     * @return the index of the last character within the maximum correlation
+     * distance
+     */
+    private int lastCorrelated(int length, int fromIndex) {
+        return (length - fromIndex - 1 > maxDistance ? fromIndex + maxDistance : length - 1);
+    }
+
+    /**
+     * Drops every count in a correlation list beyond the maximum distance
+     *
+     * @param list the list to truncate
+     */
+    private void truncate(OccurrenceList list) {
+        if (list.size() <= maxDistance) {
+            return;
         }
+        for (int i = maxDistance; i < list.size(); i++) {
+            list.reset(i);
+        }
+        list.resize(maxDistance);
     }
 
     // STAT FETCHING
@@ -370,19 +546,29 @@ public class CharStats {
      */
     public CharStats addAll(CharStats stats) {
         // SET SENSITIVITY
-        if (stats.correlations.isCaseSensitive()) {
+        if (stats.isCaseSensitive()) {
             this.correlations.setCaseSensitive(true);
         }
 
-        // MAP OF CORRELATIONS
-        correlations.addAll(stats.correlations);
+        // MAP OF CORRELATIONS, GOING THROUGH THE ACCESSORS SINCE THE SOURCE MAY BE PACKED
+        for (Entry<Character, OccurrenceList> entry : stats.getAllCorrelations().entrySet()) {
+            OccurrenceList existing = correlations.get(entry.getKey());
+            if (existing == null) {
+                // COPY THE LIST SO THE TWO DON'T SHARE IT AFTERWARDS
+                existing = new OccurrenceList(entry.getValue().values());
+                correlations.put(entry.getKey(), existing);
+            } else if (existing != entry.getValue()) {
+                correlations.mergeValues(existing, entry.getValue());
+            }
+            truncate(existing);
+        }
 
         // DISTANCE FROM START AND END
-        startDistances.addAll(stats.startDistances);
-        endDistances.addAll(stats.endDistances);
+        startDistances.addAll(stats.getDistancesFromStart());
+        endDistances.addAll(stats.getDistancesFromEnd());
 
         // TOTAL COUNT
-        occurrences += stats.occurrences;
+        occurrences += stats.getCount();
 
         return this;
     }
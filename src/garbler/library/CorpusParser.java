@@ -0,0 +1,306 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Class which streams text from files, directory trees, Readers and
+ * InputStreams into a StatsLibrary. Text is read through fixed-size buffers
+ * and split into words on the fly by a WordTokenizer, so neither the corpus
+ * nor any line of it is ever held in memory as a whole. The amount of data processed is tracked
+ * across calls and may be read from another thread while parsing is underway.
+ *
+ * @author Rogue <Alice Q>
+ */
+public class CorpusParser {
+
+    // SIZE OF THE BUFFERS USED FOR READING
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // WHERE TO SEND THE WORDS AND HOW TO FIND THEM
+    private final StatsLibrary library;
+    private final WordTokenizer words;
+    private Charset charset;
+
+    // REUSED BETWEEN CALLS
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+
+    // PROGRESS
+    private volatile long bytesRead;
+    private volatile long charactersRead;
+    private volatile long wordsParsed;
+    private volatile int filesRead;
+
+    /**
+     * Basic constructor for a parser separating words on whitespace
+     *
+     * @param library the library to add the parsed words to
+     */
+    public CorpusParser(StatsLibrary library) {
+        this(library, "");
+    }
+
+    /**
+     * Basic constructor
+     *
+     * @param library the library to add the parsed words to
+     * @param delim a string of delimiters to use in addition to whitespace, in
+     * the same format accepted by StatsLibrary.parseLineSimple
+     */
+    public CorpusParser(StatsLibrary library, String delim) {
+        this.library = library;
+        this.words = new WordTokenizer(new Delimiters(delim), false);
+        this.charset = Charset.forName("UTF-8");
+        bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        chars = CharBuffer.allocate(BUFFER_SIZE);
+    }
+
+    // GET-SETS
+    // - setCharset
+    // - getBytesRead
+    // - getCharactersRead
+    // - getWordsParsed
+    // - getFilesRead
+    /**
+     * Method to set the character set used to decode files and InputStreams.
+     * The default is UTF-8.
+     *
+     * @param charset the new character set
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * @return the number of bytes read from files and InputStreams so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of characters processed so far from any source
+     */
+    public long getCharactersRead() {
+        return charactersRead;
+    }
+
+    /**
+     * @return the number of words added to the library so far
+     */
+    public long getWordsParsed() {
+        return wordsParsed;
+    }
+
+    /**
+     * @return the number of files read so far
+     */
+    public int getFilesRead() {
+        return filesRead;
+    }
+
+    // PARSING
+    // - parse (3)
+    /**
+     * Parses a single file, or every regular file within a directory tree
+     *
+     * @param path the file or directory to parse
+     * @throws IOException if any file can't be read
+     */
+    public void parse(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            parseFile(path);
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    parseFile(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Parses every character from a stream of bytes until it is exhausted.
+     * The stream is not closed.
+     *
+     * @param in the stream to parse
+     * @throws IOException if the stream can't be read
+     */
+    public void parse(InputStream in) throws IOException {
+        parseChannel(Channels.newChannel(in));
+    }
+
+    /**
+     * Parses every character from a Reader until it is exhausted. The Reader
+     * is not closed.
+     *
+     * @param in the Reader to parse
+     * @throws IOException if the Reader can't be read
+     */
+    public void parse(Reader in) throws IOException {
+        words.setFoldCase(!library.isCaseSensitive());
+        chars.clear();
+        while (in.read(chars) >= 0) {
+            chars.flip();
+            consume(chars);
+            chars.clear();
+        }
+        flushWord();
+    }
+
+    /**
+     * Parses a range of bytes from a single regular file. The range should
+     * begin and end on a word boundary, and the character set must not be one
+     * whose characters can straddle the boundary (any ASCII-compatible set
+     * split after a whitespace byte is safe).
+     *
+     * @param file the file to parse
+     * @param start the offset of the first byte to parse
+     * @param end the offset just past the last byte to parse
+     * @throws IOException if the file can't be read
+     */
+    void parse(Path file, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(start);
+            parseChannel(channel, end - start);
+        }
+    }
+
+    /**
+     * Parses a single regular file
+     *
+     * @param file the file to parse
+     * @throws IOException if the file can't be read
+     */
+    private void parseFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            parseChannel(channel);
+        }
+        filesRead++;
+    }
+
+    /**
+     * Decodes and parses every byte from a channel until it is exhausted
+     *
+     * @param channel the channel to parse
+     * @throws IOException if the channel can't be read
+     */
+    private void parseChannel(ReadableByteChannel channel) throws IOException {
+        parseChannel(channel, Long.MAX_VALUE);
+    }
+
+    /**
+     * Decodes and parses bytes from a channel until it is exhausted or a
+     * number of bytes have been read
+     *
+     * @param channel the channel to parse
+     * @param length the maximum number of bytes to read
+     * @throws IOException if the channel can't be read
+     */
+    private void parseChannel(ReadableByteChannel channel, long length) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        words.setFoldCase(!library.isCaseSensitive());
+        bytes.clear();
+        chars.clear();
+
+        long remaining = length;
+        boolean eof = false;
+        while (!eof) {
+            // NEVER READ PAST THE END OF THE RANGE
+            if (remaining < bytes.remaining()) {
+                bytes.limit(bytes.position() + (int) remaining);
+            }
+            int read = (remaining > 0 ? channel.read(bytes) : -1);
+            if (read < 0) {
+                eof = true;
+            } else {
+                bytesRead += read;
+                remaining -= read;
+            }
+
+            // DECODE AS MUCH AS POSSIBLE, LEAVING PARTIAL CHARACTERS FOR THE NEXT READ
+            bytes.flip();
+            decoder.decode(bytes, chars, eof);
+            bytes.compact();
+            if (eof) {
+                decoder.flush(chars);
+            }
+
+            chars.flip();
+            consume(chars);
+            chars.clear();
+        }
+        flushWord();
+    }
+
+    /**
+     * Splits a buffer of characters into words, carrying any word which runs
+     * off the end of the buffer over to the next one
+     *
+     * @param buffer the characters to consume
+     */
+    private void consume(CharBuffer buffer) {
+        words.reset(buffer);
+        while (words.next()) {
+            library.parseWord(words);
+            wordsParsed++;
+        }
+        charactersRead += buffer.remaining();
+    }
+
+    /**
+     * Adds the word left unfinished at the end of the text to the library, if
+     * there is one
+     */
+    private void flushWord() {
+        if (words.finish()) {
+            library.parseWord(words);
+            wordsParsed++;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled set of characters which separate words. This is built from the
+ * same delimiter strings accepted by StatsLibrary.parseLineSimple, which are
+ * read as the inside of the regular expression character class [delim\s].
+ * Ranges such as a-z, a leading ^ to negate the class, escapes and classes
+ * such as \d or \p{Punct} all mean what they would in that class, and
+ * whitespace is included unless the class is negated.
+ *
+ * @author Rogue <Alice Q>
+ */
+public class Delimiters {
+
+    // THE CHARACTERS MATCHED BY \s
+    private static final String WHITESPACE = " \t\n\u000B\f\r";
+
+    // CHARACTERS WHICH MEAN SOMETHING INSIDE A CHARACTER CLASS
+    private static final String SPECIAL = "\\[]^-&";
+
+    // ONE BIT PER CHARACTER
+    private final BitSet set;
+
+    /**
+     * Basic constructor for a set containing only whitespace
+     */
+    public Delimiters() {
+        this("");
+    }
+
+    /**
+     * Basic constructor
+     *
+     * @param delim the inside of a character class of delimiters to use in
+     * addition to whitespace
+     * @throws java.util.regex.PatternSyntaxException if delim isn't valid
+     * inside a character class
+     */
+    public Delimiters(String delim) {
+        set = new BitSet(128);
+        if (isLiteral(delim)) {
+            for (int i = 0; i < WHITESPACE.length(); i++) {
+                set.set(WHITESPACE.charAt(i));
+            }
+            for (int i = 0; i < delim.length(); i++) {
+                set.set(delim.charAt(i));
+            }
+            return;
+        }
+
+        // ANYTHING ELSE IS LEFT TO THE REGULAR EXPRESSION ENGINE, ONE CHARACTER AT A TIME
+        Matcher matcher = Pattern.compile("[" + delim + "\\s]").matcher("");
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            if (matcher.reset(String.valueOf((char) c)).matches()) {
+                set.set(c);
+            }
+        }
+    }
+
+    /**
+     * @param delim a string of delimiters
+     * @return true if no character of the string means anything special
+     * inside a character class
+     */
+    private static boolean isLiteral(String delim) {
+        for (int i = 0; i < delim.length(); i++) {
+            if (SPECIAL.indexOf(delim.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param c the character to test
+     * @return true if the character separates words
+     */
+    public boolean isDelimiter(char c) {
+        return set.get(c);
+    }
+}
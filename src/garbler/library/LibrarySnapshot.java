@@ -0,0 +1,300 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import garbler.structure.OccurrenceCharMap;
+import garbler.structure.OccurrenceList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map.Entry;
+
+/**
+ * Reader and writer for the binary snapshot format of a StatsLibrary. Every
+ * count is written as an unsigned variable-length integer, so a snapshot is
+ * usually a fraction of the size of the library in memory. The layout is:
+ *
+ * <pre>
+ * int     MAGIC
+ * varint  VERSION
+ * byte    flags (1 = case sensitive, 2 = packed, 4 = bounded)
+ * varint  maximum correlation distance, only when bounded (since version 2)
+ * list    word lengths
+ * varint  number of first characters, then (char, count) for each
+ * varint  number of CharStats, then for each
+ *         char, occurrences, start list, end list,
+ *         varint number of correlations, then (char, list) for each
+ * int     MAGIC
+ * </pre>
+ *
+ * where a list is its length followed by each of its values.
+ *
+ * @author Rogue <Alice Q>
+ */
+class LibrarySnapshot {
+
+    // "GRBL", WRITTEN AT BOTH ENDS TO CATCH FOREIGN AND TRUNCATED FILES
+    static final int MAGIC = 0x4752424C;
+    static final int VERSION = 2;
+
+    // FLAGS
+    private static final int CASE_SENSITIVE = 1;
+    private static final int PACKED = 2;
+    private static final int BOUNDED = 4;
+
+    // SIZE OF THE BUFFER USED FOR CHANNEL ACCESS
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // WRITING
+    /**
+     * Writes every piece of state held by a library to a file, replacing it if
+     * it already exists
+     *
+     * @param library the library to write
+     * @param path the file to write to
+     * @throws IOException if the file can't be written
+     */
+    static void write(StatsLibrary library, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+
+            // HEADER
+            out.writeInt(MAGIC);
+            out.writeVarint(VERSION);
+            boolean bounded = library.getMaxCorrelationDistance() != Integer.MAX_VALUE;
+            out.writeByte((library.isCaseSensitive() ? CASE_SENSITIVE : 0) | (library.isPacked() ? PACKED : 0)
+                    | (bounded ? BOUNDED : 0));
+            if (bounded) {
+                out.writeVarint(library.getMaxCorrelationDistance());
+            }
+
+            // WORD STATISTICS
+            out.writeList(library.getWordLengths().values());
+            out.writeVarint(library.firstCharCounts.size());
+            for (Entry<Character, Integer> entry : library.firstCharCounts.entrySet()) {
+                out.writeVarint(entry.getKey());
+                out.writeVarint(entry.getValue());
+            }
+
+            // CHARACTER STATISTICS
+            out.writeVarint(library.charSequenceStats.size());
+            for (CharStats stats : library.charSequenceStats.values()) {
+                out.writeVarint(stats.getCharValue());
+                out.writeVarint(stats.getCount());
+                out.writeList(stats.getDistancesFromStart().values());
+                out.writeList(stats.getDistancesFromEnd().values());
+
+                java.util.Map<Character, OccurrenceList> correlations = stats.getAllCorrelations();
+                out.writeVarint(correlations.size());
+                for (Entry<Character, OccurrenceList> entry : correlations.entrySet()) {
+                    out.writeVarint(entry.getKey());
+                    out.writeList(entry.getValue().values());
+                }
+            }
+
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+    }
+
+    // READING
+    /**
+     * Reads a library back from a file written by write(StatsLibrary, Path)
+     *
+     * @param path the file to read from
+     * @return a new StatsLibrary holding the same state as the one written
+     * @throws IOException if the file can't be read or isn't a valid snapshot
+     */
+    static StatsLibrary read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+
+            // HEADER
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a StatsLibrary snapshot");
+            }
+            int version = in.readVarint();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int flags = in.readByte();
+            boolean caseSensitive = (flags & CASE_SENSITIVE) != 0;
+            StatsLibrary library = new StatsLibrary(caseSensitive, (flags & PACKED) != 0);
+            library.setMaxCorrelationDistance((flags & BOUNDED) != 0 ? in.readVarint() : Integer.MAX_VALUE);
+
+            // WORD STATISTICS
+            int[] lengths = in.readList();
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] != 0) {
+                    library.getWordLengths().increment(i, lengths[i]);
+                }
+            }
+            for (int i = in.readVarint(); i > 0; i--) {
+                char c = (char) in.readVarint();
+                library.firstCharCounts.put(c, in.readVarint());
+            }
+
+            // CHARACTER STATISTICS
+            for (int i = in.readVarint(); i > 0; i--) {
+                char c = (char) in.readVarint();
+                int occurrences = in.readVarint();
+                OccurrenceList starts = new OccurrenceList(in.readList());
+                OccurrenceList ends = new OccurrenceList(in.readList());
+
+                OccurrenceCharMap correlations = new OccurrenceCharMap(caseSensitive);
+                for (int j = in.readVarint(); j > 0; j--) {
+                    char key = (char) in.readVarint();
+                    correlations.put(key, new OccurrenceList(in.readList()));
+                }
+
+                library.restoreCharacterStats(new CharStats(c, occurrences, starts, ends, correlations));
+            }
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Snapshot is corrupt or truncated");
+            }
+            return library;
+        }
+    }
+
+    /**
+     * Buffered writer on top of a FileChannel
+     */
+    private static class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        void writeByte(int value) throws IOException {
+            reserve(1);
+            buffer.put((byte) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            reserve(4);
+            buffer.putInt(value);
+        }
+
+        void writeVarint(int value) throws IOException {
+            reserve(5);
+            // SEVEN BITS AT A TIME, HIGH BIT SET ON EVERY BYTE BUT THE LAST
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeList(int[] values) throws IOException {
+            writeVarint(values.length);
+            for (int i : values) {
+                writeVarint(i);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Buffered reader on top of a FileChannel
+     */
+    private static class Input {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.buffer.flip();
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return buffer.get() & 0xFF;
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable-length integer");
+        }
+
+        int[] readList() throws IOException {
+            int length = readVarint();
+            if (length < 0 || length > channel.size()) {
+                throw new IOException("Malformed list length " + length);
+            }
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = readVarint();
+            }
+            return values;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of snapshot");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import garbler.structure.Alphabet;
+import garbler.structure.BasicIntegerCharMap;
+import garbler.structure.DenseOccurrenceCharMap;
+import garbler.structure.OccurrenceList;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Frozen, generation-only model which is read straight out of a memory-mapped
+ * file. Nothing but the Alphabet is copied onto the heap, so any number of
+ * processes mapping the same file share a single copy of it through the page
+ * cache, and opening a model costs no more than the map call itself.
+ *
+ * The file is a sequence of little-endian ints laid out as:
+ *
+ * <pre>
+ * MAGIC, VERSION, flags (1 = case sensitive), alphabet size N, depth D
+ * [N]       characters
+ * [N]       first character counts
+ * [N]       totals of the distances from the end
+ * [N][D]    distances from the end
+ * [N][N][D] correlations, with the same 1-offset distances as OccurrenceList
+ * </pre>
+ *
+ * @author Rogue <Alice Q>
+ */
+public class MappedStatsModel implements StatsModel {
+
+    // "GRBM"
+    static final int MAGIC = 0x4752424D;
+    static final int VERSION = 1;
+
+    // NUMBER OF INTS IN THE HEADER
+    private static final int HEADER = 5;
+
+    // FLAGS
+    private static final int CASE_SENSITIVE = 1;
+
+    // THE MAPPED FILE
+    private final IntBuffer data;
+
+    // SHAPE OF THE MODEL
+    private final Alphabet alphabet;
+    private final int size;
+    private final int depth;
+
+    // OFFSETS OF EACH SECTION, IN INTS
+    private final int firstCharOffset;
+    private final int endTotalOffset;
+    private final int endOffset;
+    private final int correlationOffset;
+
+    /**
+     * Wraps an already mapped model
+     *
+     * @param buffer the mapped file
+     * @throws IOException if the buffer doesn't hold a valid model
+     */
+    private MappedStatsModel(MappedByteBuffer buffer) throws IOException {
+        data = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        if (data.limit() < HEADER || data.get(0) != MAGIC) {
+            throw new IOException("Not a mapped StatsLibrary model");
+        } else if (data.get(1) != VERSION) {
+            throw new IOException("Unsupported model version " + data.get(1));
+        }
+
+        size = data.get(3);
+        depth = data.get(4);
+        firstCharOffset = HEADER + size;
+        endTotalOffset = firstCharOffset + size;
+        endOffset = endTotalOffset + size;
+        correlationOffset = endOffset + size * depth;
+        if (size < 0 || depth < 1 || HEADER + 3L * size + (long) size * depth + (long) size * size * depth != data.limit()) {
+            throw new IOException("Model is corrupt or truncated");
+        }
+
+        // THE ALPHABET IS THE ONLY THING REBUILT ON THE HEAP
+        alphabet = new Alphabet(true);
+        for (int i = 0; i < size; i++) {
+            alphabet.add((char) data.get(HEADER + i));
+        }
+        alphabet.setCaseSensitive((data.get(2) & CASE_SENSITIVE) != 0);
+    }
+
+    // OPENING AND WRITING
+    // - open
+    // - write (2)
+    /**
+     * Maps a model file previously written by write(StatsLibrary, Path)
+     *
+     * @param path the file to map
+     * @return a read-only model backed by the file
+     * @throws IOException if the file can't be mapped or isn't a valid model
+     */
+    public static MappedStatsModel open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model is too large to map");
+            }
+
+            // THE MAPPING REMAINS VALID AFTER THE CHANNEL IS CLOSED
+            return new MappedStatsModel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Freezes the generation statistics of a library into a file which can
+     * later be mapped with open(Path), replacing the file if it already
+     * exists. Distances are kept up to the library's maximum correlation
+     * distance, or StatsLibrary.PACKED_CORRELATION_DISTANCE if that is
+     * smaller, which is as far as generation ever reads.
+     *
+     * @param library the library to freeze
+     * @param path the file to write to
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if the model would be too large to map
+     */
+    public static void write(StatsLibrary library, Path path) throws IOException {
+        write(library, path, Math.min(library.getMaxCorrelationDistance(), StatsLibrary.PACKED_CORRELATION_DISTANCE));
+    }
+
+    /**
+     * Variant of write(StatsLibrary, Path) which keeps an explicit number of
+     * distances for every correlation and distance from the end. Totals of the
+     * distances from the end are always taken over the whole list.
+     *
+     * @param library the library to freeze
+     * @param path the file to write to
+     * @param depth the number of distances to keep, which must be at least 1
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if depth is less than 1 or the model
+     * would be too large to map
+     */
+    public static void write(StatsLibrary library, Path path, int depth) throws IOException {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        Alphabet source = library.getAlphabetIndex();
+        int size = source.size();
+
+        // A SINGLE MAPPING AND INT OFFSETS BOTH STOP AT 2GB
+        long length = 4L * (HEADER + 3L * size + (long) size * depth + (long) size * size * depth);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Model too large to map (" + length + " bytes for "
+                    + size + " characters at depth " + depth + ")");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            IntBuffer out = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+            // HEADER AND CHARACTERS
+            out.put(MAGIC).put(VERSION).put(library.isCaseSensitive() ? CASE_SENSITIVE : 0).put(size).put(depth);
+            for (int i = 0; i < size; i++) {
+                out.put(source.charAt(i));
+            }
+
+            // FIRST CHARACTER COUNTS
+            CharMap<Integer> firstChars = library.getPrimaryCharacterCounts();
+            for (int i = 0; i < size; i++) {
+                Integer count = firstChars.get(source.charAt(i));
+                out.put(count == null ? 0 : count);
+            }
+
+            // DISTANCES FROM THE END, TOTALS FIRST
+            OccurrenceList[] ends = new OccurrenceList[size];
+            for (int i = 0; i < size; i++) {
+                CharStats stats = library.getCharacterStats(source.charAt(i));
+                ends[i] = (stats == null ? new OccurrenceList() : stats.getDistancesFromEnd());
+                out.put(ends[i].getSum());
+            }
+            for (int i = 0; i < size; i++) {
+                putRow(out, ends[i], depth);
+            }
+
+            // CORRELATIONS
+            for (int from = 0; from < size; from++) {
+                CharStats stats = library.getCharacterStats(source.charAt(from));
+                for (int to = 0; to < size; to++) {
+                    putRow(out, (stats == null ? null : stats.getCorrelationWith(source.charAt(to))), depth);
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Writes a list as a row of fixed length, padding it with zeros
+     *
+     * @param out the buffer to write to
+     * @param list the list to write, or null for a row of zeros
+     * @param depth the length of the row
+     */
+    private static void putRow(IntBuffer out, OccurrenceList list, int depth) {
+        for (int i = 0; i < depth; i++) {
+            out.put(list == null ? 0 : list.getCount(i));
+        }
+    }
+
+    // MODEL ACCESS
+    /**
+     * @return the number of distances tracked for every character
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public Alphabet getAlphabetIndex() {
+        return alphabet;
+    }
+
+    @Override
+    public boolean isCaseSensitive() {
+        return alphabet.isCaseSensitive();
+    }
+
+    @Override
+    public CharMap<Integer> getPrimaryCharacterCounts() {
+        BasicIntegerCharMap counts = new BasicIntegerCharMap(alphabet.isCaseSensitive());
+        for (int i = 0; i < size; i++) {
+            int count = data.get(firstCharOffset + i);
+            if (count != 0) {
+                counts.put(alphabet.charAt(i), count);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int getCorrelation(int from, int to, int index) {
+        if (from < 0 || to < 0 || index < 0 || from >= size || to >= size || index >= depth) {
+            return 0;
+        }
+        return data.get(correlationOffset + (from * size + to) * depth + index);
+    }
+
+    @Override
+    public void addCorrelations(int from, int index, float weight, float[] weights) {
+        if (from < 0 || index < 0 || from >= size || index >= depth) {
+            return;
+        }
+        int offset = correlationOffset + from * size * depth + index;
+        for (int to = 0; to < size && to < weights.length; to++) {
+            int count = data.get(offset + to * depth);
+            if (count > 0) {
+                weights[to] += weight * count;
+            }
+        }
+    }
+
+    @Override
+    public float getEndProbabilityMass(char c, int distance) {
+        int slot = alphabet.indexOf(c);
+        if (slot < 0 || distance < 0 || distance >= depth) {
+            return 0.0f;
+        }
+        int total = data.get(endTotalOffset + slot);
+        return (total == 0 ? 0.0f : (float) data.get(endOffset + slot * depth + distance) / total);
+    }
+
+    @Override
+    public DenseOccurrenceCharMap generateDenseInfluenceMap(CharSequence charSequence, int offset) {
+        return generateDenseInfluenceMap(charSequence, 0, charSequence.length(), offset);
+    }
+
+    @Override
+    public DenseOccurrenceCharMap generateDenseInfluenceMap(CharSequence charSequence, int start, int end, int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset passed");
+        }
+
+        DenseOccurrenceCharMap results = new DenseOccurrenceCharMap(alphabet);
+
+        // GO THROUGH EACH CHARACTER IN THE RANGE
+        for (int i = end - 1 - offset; i >= start; i--) {
+            int position = end - i - 1;
+            int from = alphabet.indexOf(charSequence.charAt(i));
+            if (from < 0 || position >= depth) {
+                continue;   // THERE ARE NO STATS SO IT DOESN'T MATTER
+            }
+
+            // WALK THE ROW OF EVERY FOLLOWING CHARACTER AT THIS DISTANCE
+            int base = correlationOffset + from * size * depth + position;
+            for (int to = 0; to < size; to++) {
+                int count = data.get(base + to * depth);
+                if (count > 0) {
+                    results.incrementAt(to, position, count);
+                }
+            }
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import garbler.structure.Alphabet;
+import garbler.structure.CorrelationTensor;
+import garbler.structure.OccurrenceCharMap;
+import garbler.structure.OccurrenceList;
+import java.util.Map.Entry;
+
+/**
+ * CharStats which holds no data of its own and instead reads and writes the
+ * row of a CorrelationTensor belonging to its character. Every OccurrenceList
+ * handed out by this class is a copy, so modifying it does not modify the
+ * tensor.
+ *
+ * @author Rogue <Alice Q>
+ */
+class PackedCharStats extends CharStats {
+
+    // THE TENSOR HOLDING THE ACTUAL DATA
+    private final CorrelationTensor tensor;
+    private final Alphabet alphabet;
+    private final int slot;
+
+    /**
+     * Basic constructor
+     *
+     * @param c The character this entry is for
+     * @param tensor the tensor holding the statistics
+     */
+    PackedCharStats(char c, CorrelationTensor tensor) {
+        super(c, null, null, null);
+        this.tensor = tensor;
+        this.alphabet = tensor.getAlphabet();
+        this.slot = alphabet.add(c);
+    }
+
+    // GET-SETS
+    @Override
+    public void setCaseSensitive(boolean active) {
+        alphabet.setCaseSensitive(active);
+    }
+
+    @Override
+    public boolean isCaseSensitive() {
+        return alphabet.isCaseSensitive();
+    }
+
+    @Override
+    public void setMaxCorrelationDistance(int distance) {
+        tensor.setMaxDistance(distance);
+    }
+
+    @Override
+    public int getMaxCorrelationDistance() {
+        return tensor.getMaxDistance();
+    }
+
+    @Override
+    public java.util.Collection<Character> getAlphabet() {
+        java.util.ArrayList<Character> characters = new java.util.ArrayList();
+        for (int to = 0; to < alphabet.size(); to++) {
+            if (tensor.hasCorrelations(slot, to)) {
+                characters.add(alphabet.charAt(to));
+            }
+        }
+        return characters;
+    }
+
+    // STAT TRACKING
+    @Override
+    public void addOccurrence(int count) {
+        tensor.addOccurrence(slot, count);
+    }
+
+    @Override
+    public void addPositionFromStart(int distance, int count) {
+        tensor.addPositionFromStart(slot, distance, count);
+    }
+
+    @Override
+    public void addPositonFromEnd(int distance, int count) {
+        tensor.addPositionFromEnd(slot, distance, count);
+    }
+
+    @Override
+    public void addCharacterCorrelation(char c, int distanceTo, int count) {
+        tensor.addCharacterCorrelation(slot, alphabet.add(c), distanceTo, count);
+    }
+
+    @Override
+    public int addWord(String word) {
+        int firstIndexOf = word.indexOf(getCharValue());
+        if (firstIndexOf >= 0) {
+            tensor.addWord(word, firstIndexOf);
+        }
+        return firstIndexOf;
+    }
+
+    @Override
+    void addWord(CharSequence word, int fromIndex, int count) {
+        if (word.charAt(fromIndex) != getCharValue()) {
+            return;
+        }
+        tensor.addWord(word, fromIndex, count);
+    }
+
+    // STAT FETCHING
+    @Override
+    public int getCount() {
+        return tensor.getCount(slot);
+    }
+
+    @Override
+    public OccurrenceList getDistancesFromStart() {
+        return tensor.getDistancesFromStart(slot);
+    }
+
+    @Override
+    public OccurrenceList getDistancesFromEnd() {
+        return tensor.getDistancesFromEnd(slot);
+    }
+
+    @Override
+    public OccurrenceList getCorrelationWith(char c) {
+        int to = alphabet.indexOf(c);
+        if (!tensor.hasCorrelations(slot, to)) {
+            return null;
+        }
+        return tensor.getCorrelationList(slot, to);
+    }
+
+    @Override
+    public java.util.Map<Character, OccurrenceList> getAllCorrelations() {
+        OccurrenceCharMap all = new OccurrenceCharMap(alphabet.isCaseSensitive());
+        for (int to = 0; to < alphabet.size(); to++) {
+            if (tensor.hasCorrelations(slot, to)) {
+                all.put(alphabet.charAt(to), tensor.getCorrelationList(slot, to));
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public OccurrenceCharMap getCorrelationsAtIndex(int distance) {
+        OccurrenceCharMap valid = new OccurrenceCharMap(alphabet.isCaseSensitive());
+        for (int to = 0; to < alphabet.size(); to++) {
+            if (tensor.getCorrelation(slot, to, distance) > 0) {
+                valid.put(alphabet.charAt(to), tensor.getCorrelationList(slot, to));
+            }
+        }
+        return valid;
+    }
+
+    // STRUCTURE MODIFIERS
+    @Override
+    public void reset(char c) {
+        tensor.reset(slot, alphabet.indexOf(c));
+    }
+
+    @Override
+    public void reset() {
+        tensor.reset(slot);
+    }
+
+    @Override
+    public void prepare(char c) {
+        tensor.ensureCapacity(alphabet.add(c), 0);
+    }
+
+    @Override
+    public void collapse() {
+        for (int to = 0; to < alphabet.size(); to++) {
+            char c = alphabet.charAt(to);
+            if (Character.isUpperCase(c) && tensor.hasCorrelations(slot, to)) {
+                int lower = alphabet.add(Character.toLowerCase(c));
+                addList(lower, tensor.getCorrelationList(slot, to));
+                tensor.reset(slot, to);
+            }
+        }
+    }
+
+    @Override
+    public CharStats addAll(CharStats stats) {
+        // MAP OF CORRELATIONS
+        for (Entry<Character, OccurrenceList> entry : stats.getAllCorrelations().entrySet()) {
+            addList(alphabet.add(entry.getKey()), entry.getValue());
+        }
+
+        // DISTANCE FROM START AND END
+        int[] starts = stats.getDistancesFromStart().values();
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] != 0) {
+                tensor.addPositionFromStart(slot, i, starts[i]);
+            }
+        }
+        int[] ends = stats.getDistancesFromEnd().values();
+        for (int i = 0; i < ends.length; i++) {
+            if (ends[i] != 0) {
+                tensor.addPositionFromEnd(slot, i, ends[i]);
+            }
+        }
+
+        // TOTAL COUNT
+        tensor.addOccurrence(slot, stats.getCount());
+
+        return this;
+    }
+
+    /**
+     * Adds every value of a list to the correlations with another character
+     *
+     * @param to the slot of the other character
+     * @param list the list of correlations to add
+     */
+    private void addList(int to, OccurrenceList list) {
+        for (int i = 0; i < list.size(); i++) {
+            int count = list.getCount(i);
+            if (count != 0) {
+                tensor.addCharacterCorrelation(slot, to, i + 1, count);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getAlphabet().toString();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class which trains a StatsLibrary on several cores at once. The corpus is
+ * split into shards, each shard is parsed into a private StatsLibrary by a
+ * fork-join worker, and the results are merged pairwise back up the task tree
+ * into one final library. Since no library is ever shared between workers, no
+ * locking is needed while parsing. Each worker counts unique words before
+ * adding them, so repeated words within a shard are only walked once. The
+ * merged library generates the same words as one trained line by line,
+ * whatever order the shards finish in.
+ *
+ * @author Rogue <Alice Q>
+ */
+public class ParallelTrainer {
+
+    // DEFAULT SHARD SIZES
+    private static final int DEFAULT_SHARD_LINES = 4096;
+    private static final long DEFAULT_SHARD_BYTES = 1L << 22;
+
+    // HOW TO BUILD EACH LIBRARY
+    private final boolean caseSensitive;
+    private final boolean packed;
+    private final String delim;
+    private int maxCorrelationDistance;   // 0 KEEPS THE LIBRARY'S OWN DEFAULT
+
+    // HOW TO SPLIT THE WORK
+    private final ForkJoinPool pool;
+    private int shardLines;
+    private long shardBytes;
+
+    /**
+     * Basic constructor which runs on a new pool using every available core
+     *
+     * @param caseSensitive whether the trained library should be case
+     * sensitive
+     * @param packed whether the trained library should use packed storage
+     * @param delim a string of delimiters to use in addition to whitespace, in
+     * the same format accepted by StatsLibrary.parseLineSimple
+     */
+    public ParallelTrainer(boolean caseSensitive, boolean packed, String delim) {
+        this(caseSensitive, packed, delim, new ForkJoinPool());
+    }
+
+    /**
+     * Basic constructor
+     *
+     * @param caseSensitive whether the trained library should be case
+     * sensitive
+     * @param packed whether the trained library should use packed storage
+     * @param delim a string of delimiters to use in addition to whitespace, in
+     * the same format accepted by StatsLibrary.parseLineSimple
+     * @param pool the pool to run the training on
+     */
+    public ParallelTrainer(boolean caseSensitive, boolean packed, String delim, ForkJoinPool pool) {
+        this.caseSensitive = caseSensitive;
+        this.packed = packed;
+        this.delim = delim;
+        this.pool = pool;
+        shardLines = DEFAULT_SHARD_LINES;
+        shardBytes = DEFAULT_SHARD_BYTES;
+        maxCorrelationDistance = 0;
+    }
+
+    // GET-SETS
+    // - setShardLines
+    // - setShardBytes
+    // - setMaxCorrelationDistance
+    /**
+     * Method to set how many lines each worker parses on its own when
+     * training on a list of lines
+     *
+     * @param lines the number of lines per shard
+     * @throws IllegalArgumentException if lines is not positive
+     */
+    public void setShardLines(int lines) {
+        if (lines <= 0) {
+            throw new IllegalArgumentException("Shard size must be positive");
+        }
+        shardLines = lines;
+    }
+
+    /**
+     * Method to set roughly how many bytes each worker parses on its own when
+     * training on files. Shards are extended to the next whitespace byte so
+     * that no word is cut in half.
+     *
+     * @param bytes the number of bytes per shard
+     * @throws IllegalArgumentException if bytes is not positive
+     */
+    public void setShardBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Shard size must be positive");
+        }
+        shardBytes = bytes;
+    }
+
+    /**
+     * Method to set the maximum correlation distance of the trained library,
+     * as with StatsLibrary.setMaxCorrelationDistance
+     *
+     * @param distance the maximum distance, which must be at least 1
+     * @throws IllegalArgumentException when distance is less than 1
+     */
+    public void setMaxCorrelationDistance(int distance) {
+        if (distance < 1) {
+            throw new IllegalArgumentException("Maximum distance must be at least 1");
+        }
+        maxCorrelationDistance = distance;
+    }
+
+    // TRAINING
+    // - train (2)
+    /**
+     * Trains a new library on a list of lines, each parsed the same way as
+     * StatsLibrary.parseLineSimple
+     *
+     * @param lines the lines to train on
+     * @return a library holding the statistics of every line
+     */
+    public StatsLibrary train(List<? extends CharSequence> lines) {
+        return pool.invoke(new LineTask(lines, 0, lines.size()));
+    }
+
+    /**
+     * Trains a new library on a single UTF-8 file, or every regular file
+     * within a directory tree. Large files are split into several shards.
+     *
+     * @param path the file or directory to train on
+     * @return a library holding the statistics of every file
+     * @throws IOException if any file can't be read
+     */
+    public StatsLibrary train(Path path) throws IOException {
+        List<Shard> shards = new ArrayList();
+        for (Path file : listFiles(path)) {
+            split(file, shards);
+        }
+        try {
+            return pool.invoke(new ShardTask(shards, 0, shards.size()));
+        } catch (RuntimeException ex) {
+            // THE POOL MAY HAVE WRAPPED THE TASK'S OWN WRAPPER AGAIN
+            for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return an empty library matching the trainer's settings
+     */
+    private StatsLibrary newLibrary() {
+        StatsLibrary library = new StatsLibrary(caseSensitive, packed);
+        if (maxCorrelationDistance > 0) {
+            library.setMaxCorrelationDistance(maxCorrelationDistance);
+        }
+        return library;
+    }
+
+    /**
+     * Lists a single file, or every regular file within a directory tree
+     *
+     * @param path the file or directory to list
+     * @return a list of every file to read
+     * @throws IOException if the directory can't be walked
+     */
+    private static List<Path> listFiles(Path path) throws IOException {
+        final List<Path> files = new ArrayList();
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return files;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Splits a file into shards of about shardBytes each, moving every cut
+     * forward to just past the next ASCII whitespace byte. Such a byte can
+     * never be part of a multi-byte UTF-8 character, so each shard decodes
+     * cleanly on its own.
+     *
+     * @param file the file to split
+     * @param shards the list to add the new shards to
+     * @throws IOException if the file can't be read
+     */
+    private void split(Path file, List<Shard> shards) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            long start = 0;
+            while (start < size) {
+                long end = start + shardBytes;
+                if (end >= size) {
+                    end = size;
+                } else {
+                    end = nextBoundary(channel, buffer, end, size);
+                }
+                shards.add(new Shard(file, start, end));
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Finds the first position past a whitespace byte at or after an offset
+     *
+     * @param channel the file to search
+     * @param buffer a scratch buffer
+     * @param offset the offset to start searching at
+     * @param size the size of the file
+     * @return the offset just past the whitespace, or the size of the file if
+     * there is none
+     * @throws IOException if the file can't be read
+     */
+    private static long nextBoundary(FileChannel channel, ByteBuffer buffer, long offset, long size) throws IOException {
+        long position = offset;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * A range of bytes within a file
+     */
+    private static class Shard {
+
+        final Path file;
+        final long start;
+        final long end;
+
+        Shard(Path file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Task which parses a range of lines, splitting it in half until it is
+     * small enough for a single worker
+     */
+    private class LineTask extends RecursiveTask<StatsLibrary> {
+
+        private final List<? extends CharSequence> lines;
+        private final int from;
+        private final int to;
+
+        LineTask(List<? extends CharSequence> lines, int from, int to) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected StatsLibrary compute() {
+            if (to - from <= shardLines) {
+                StatsLibrary library = newLibrary();
+                library.setCountingUniqueWords(true);
+                for (int i = from; i < to; i++) {
+                    library.parseLineSimple(lines.get(i).toString(), delim);
+                }
+                library.setCountingUniqueWords(false);
+                return library;
+            }
+            int middle = (from + to) >>> 1;
+            LineTask left = new LineTask(lines, from, middle);
+            LineTask right = new LineTask(lines, middle, to);
+            right.fork();
+            StatsLibrary result = left.compute();
+            return result.addAll(right.join());
+        }
+    }
+
+    /**
+     * Task which parses a range of shards, splitting it in half until there is
+     * only one left
+     */
+    private class ShardTask extends RecursiveTask<StatsLibrary> {
+
+        private final List<Shard> shards;
+        private final int from;
+        private final int to;
+
+        ShardTask(List<Shard> shards, int from, int to) {
+            this.shards = shards;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected StatsLibrary compute() {
+            if (to - from <= 1) {
+                StatsLibrary library = newLibrary();
+                library.setCountingUniqueWords(true);
+                if (from < to) {
+                    Shard shard = shards.get(from);
+                    try {
+                        new CorpusParser(library, delim).parse(shard.file, shard.start, shard.end);
+                    } catch (IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                library.setCountingUniqueWords(false);
+                return library;
+            }
+            int middle = (from + to) >>> 1;
+            ShardTask left = new ShardTask(shards, from, middle);
+            ShardTask right = new ShardTask(shards, middle, to);
+            right.fork();
+            StatsLibrary result = left.compute();
+            return result.addAll(right.join());
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import garbler.structure.Alphabet;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Class which spreads the character statistics of a StatsLibrary over several
+ * worker threads without ever merging them. Every character is owned by
+ * exactly one worker, and only that worker ever adds to its CharStats, so the
+ * statistics themselves need no locking and no second copy is made. Words
+ * are still split and counted on the thread which parses them; only the
+ * (word, index) pairs are handed over, batched per worker.
+ *
+ * Characters are given to the least loaded worker the first time they are
+ * seen. The most common characters turn up early in any text, so they end up
+ * on different workers rather than piling onto one.
+ *
+ * While attached, every parse method of the library feeds the workers. The
+ * library must not be read until flush or close has returned, and must only
+ * be parsed into from one thread at a time.
+ *
+ * @author Rogue <Alice Q>
+ */
+public class PartitionedIngester implements AutoCloseable {
+
+    // HOW MANY PAIRS ARE HANDED OVER AT ONCE, AND HOW MANY BATCHES MAY WAIT
+    private static final int BATCH_SIZE = 2048;
+    private static final int QUEUE_SIZE = 4;
+
+    // WHERE THE STATISTICS GO
+    private final StatsLibrary library;
+    private final Alphabet alphabet;
+
+    // THE WORKERS AND THE BATCHES BEING FILLED FOR THEM
+    private final Worker[] workers;
+    private final Batch[] pending;
+
+    // OWNERSHIP AND TARGETS BY SLOT, ONLY TOUCHED BY THE PARSING THREAD
+    private int[] owners;
+    private CharStats[] targets;
+    private final long[] load;
+
+    // SET BY THE FIRST WORKER TO FAIL
+    private volatile Throwable failure;
+
+    /**
+     * Basic constructor which attaches to a library and starts the workers
+     *
+     * @param library the library to ingest into
+     * @param threads the number of workers to start
+     * @throws IllegalArgumentException if threads is not positive
+     * @throws IllegalStateException if the library already has an ingester
+     */
+    public PartitionedIngester(StatsLibrary library, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Must have at least one worker");
+        } else if (library.ingester != null) {
+            throw new IllegalStateException("Library is already being ingested into");
+        }
+        this.library = library;
+        this.alphabet = library.getAlphabetIndex();
+        workers = new Worker[threads];
+        pending = new Batch[threads];
+        load = new long[threads];
+        owners = new int[64];
+        targets = new CharStats[64];
+        for (int w = 0; w < threads; w++) {
+            pending[w] = new Batch();
+            workers[w] = new Worker();
+            workers[w].setName("garbler-ingester-" + w);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+        library.ingester = this;
+    }
+
+    // INGESTION
+    // - dispatch
+    // - flush
+    // - close
+    /**
+     * Hands every character of a word to the worker which owns it. Called by
+     * the library once the word statistics have been counted.
+     *
+     * @param charSequence the word to hand over
+     * @param count the number of times the word was encountered
+     */
+    void dispatch(CharSequence charSequence, int count) {
+        String word = charSequence.toString();
+        int length = word.length();
+
+        // RESOLVE EVERY SLOT FIRST SO THAT STORAGE ONLY EVER GROWS WHILE THE WORKERS ARE IDLE
+        int highest = 0;
+        for (int i = 0; i < length; i++) {
+            highest = Math.max(highest, resolve(word.charAt(i)));
+        }
+        if (library.tensor != null && !library.tensor.hasCapacity(highest, length - 1)) {
+            quiesce();
+            library.tensor.ensureCapacity(highest, length - 1);
+        }
+
+        for (int i = 0; i < length; i++) {
+            int slot = alphabet.indexOf(word.charAt(i));
+            int owner = owners[slot];
+            load[owner] += length - i;
+
+            Batch batch = pending[owner];
+            batch.add(word, i, count, targets[slot]);
+            if (batch.size == BATCH_SIZE) {
+                submit(owner, batch);
+                pending[owner] = new Batch();
+            }
+        }
+    }
+
+    /**
+     * Waits until every word parsed so far has been added to the library
+     *
+     * @throws IllegalStateException if a worker failed
+     */
+    public void flush() {
+        quiesce();
+        checkFailure();
+    }
+
+    /**
+     * Flushes, stops the workers and detaches from the library, which then
+     * goes back to parsing in place
+     *
+     * @throws IllegalStateException if a worker failed
+     */
+    @Override
+    public void close() {
+        if (library.ingester != this) {
+            return;
+        }
+        quiesce();
+        for (int w = 0; w < workers.length; w++) {
+            put(w, Batch.STOP);
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while stopping workers", ex);
+            }
+        }
+        library.ingester = null;
+        checkFailure();
+    }
+
+    /**
+     * Finds the slot of a character, creating its statistics and picking its
+     * owner the first time it is seen
+     *
+     * @param c the character to resolve
+     * @return the slot of the character
+     */
+    private int resolve(char c) {
+        int slot = alphabet.indexOf(c);
+        if (slot >= 0 && slot < targets.length && targets[slot] != null) {
+            return slot;
+        }
+
+        CharStats stats = library.getOrCreateStats(c);
+        slot = alphabet.indexOf(c);
+        if (slot >= targets.length) {
+            int size = Math.max(targets.length * 2, slot + 1);
+            targets = Arrays.copyOf(targets, size);
+            owners = Arrays.copyOf(owners, size);
+        }
+
+        // GIVE IT TO WHOEVER HAS HAD THE LEAST WORK SO FAR
+        int owner = 0;
+        for (int w = 1; w < load.length; w++) {
+            if (load[w] < load[owner]) {
+                owner = w;
+            }
+        }
+        owners[slot] = owner;
+        targets[slot] = stats;
+        return slot;
+    }
+
+    /**
+     * Submits every partly filled batch and waits for the workers to finish
+     * them
+     */
+    private void quiesce() {
+        CountDownLatch latch = new CountDownLatch(workers.length);
+        for (int w = 0; w < workers.length; w++) {
+            if (pending[w].size > 0) {
+                submit(w, pending[w]);
+                pending[w] = new Batch();
+            }
+            put(w, new Batch(latch));
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for workers", ex);
+        }
+    }
+
+    /**
+     * Hands a batch over to a worker, giving up early if any worker failed
+     *
+     * @param worker the index of the worker
+     * @param batch the batch to hand over
+     */
+    private void submit(int worker, Batch batch) {
+        checkFailure();
+        put(worker, batch);
+    }
+
+    /**
+     * Places a batch on a worker's queue, waiting for room if needed
+     *
+     * @param worker the index of the worker
+     * @param batch the batch to place
+     */
+    private void put(int worker, Batch batch) {
+        try {
+            workers[worker].queue.put(batch);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while handing over words", ex);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if a worker failed
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Ingestion worker failed", failure);
+        }
+    }
+
+    /**
+     * A group of (word, index) pairs for a single worker, or a signal when it
+     * holds none
+     */
+    private static class Batch {
+
+        // TELLS A WORKER TO STOP
+        static final Batch STOP = new Batch(null);
+
+        final String[] words;
+        final int[] indices;
+        final int[] counts;
+        final CharStats[] targets;
+        final CountDownLatch barrier;
+        int size;
+
+        Batch() {
+            words = new String[BATCH_SIZE];
+            indices = new int[BATCH_SIZE];
+            counts = new int[BATCH_SIZE];
+            targets = new CharStats[BATCH_SIZE];
+            barrier = null;
+        }
+
+        Batch(CountDownLatch barrier) {
+            words = null;
+            indices = null;
+            counts = null;
+            targets = null;
+            this.barrier = barrier;
+        }
+
+        void add(String word, int index, int count, CharStats target) {
+            words[size] = word;
+            indices[size] = index;
+            counts[size] = count;
+            targets[size] = target;
+            size++;
+        }
+    }
+
+    /**
+     * Thread which adds every pair it is handed to the CharStats it owns
+     */
+    private class Worker extends Thread {
+
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue(QUEUE_SIZE);
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch batch;
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (batch == Batch.STOP) {
+                    return;
+                } else if (batch.barrier != null) {
+                    batch.barrier.countDown();
+                    continue;
+                }
+
+                // KEEP DRAINING AFTER A FAILURE SO THE PARSING THREAD NEVER BLOCKS
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    for (int i = 0; i < batch.size; i++) {
+                        batch.targets[i].addWord(batch.words[i], batch.indices[i], batch.counts[i]);
+                    }
+                } catch (RuntimeException | Error ex) {
+                    failure = ex;
+                }
+            }
+        }
+    }
+}
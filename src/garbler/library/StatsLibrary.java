@@ -24,6 +24,11 @@
 package garbler.library;
 
 import garbler.structure.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
 
 /**
@@ -31,7 +36,7 @@ import java.util.Map.Entry;
  *
  * @author Rogue <Alice Q>
  */
-public class StatsLibrary {
+public class StatsLibrary implements StatsModel {
 
     // INTER-WORD CHARACTER STATS
     CharMap<CharStats> charSequenceStats;
@@ -42,6 +47,35 @@ public class StatsLibrary {
     // THE LENGTH OF A WORD
     private OccurrenceList wordLength;
 
+    // REUSED FOR SPLITTING LINES INTO WORDS, ALONG WITH THE LAST DELIMITERS COMPILED
+    private WordTokenizer tokenizer;
+    private Delimiters lastDelimiters;
+    private String lastDelim;
+
+    // DENSE SLOTS FOR EVERY CHARACTER ENCOUNTERED
+    private Alphabet alphabet;
+
+    // THE FURTHEST APART TWO CHARACTERS MAY BE AND STILL BE CORRELATED
+    private int maxCorrelationDistance;
+
+    /**
+     * The maximum correlation distance packed libraries start out with.
+     * Generation never reads correlations further apart than the seed words
+     * are built from, while an unbounded tensor grows as deep as the longest
+     * word ever parsed for every pair of characters.
+     */
+    public static final int PACKED_CORRELATION_DISTANCE = 8;
+
+    // FLAT STORAGE FOR ALL CORRELATIONS, OR NULL WHEN EACH CHARSTATS HOLDS ITS OWN
+    CorrelationTensor tensor;
+
+    // WORKERS WHICH CHARACTER STATISTICS ARE HANDED TO, OR NULL TO PARSE IN PLACE
+    PartitionedIngester ingester;
+
+    // WORDS WAITING TO BE PARSED ONCE EACH WITH THEIR COUNTS, OR NULL TO PARSE AS THEY COME
+    private static final int UNIQUE_WORD_LIMIT = 1 << 20;
+    private LinkedHashMap<String, int[]> uniqueWords;
+
     /**
      * Default constructor for a case sensitive StatsLibrary
      */
@@ -57,7 +91,27 @@ public class StatsLibrary {
      * accessing data, false otherwise
      */
     public StatsLibrary(boolean caseSensitive) {
+        this(caseSensitive, false);
+    }
+
+    /**
+     * Constructor which additionally allows the user to pick the storage used
+     * for character statistics. Packed storage keeps every correlation inside
+     * a single CorrelationTensor instead of one OccurrenceList per pair of
+     * characters, which takes far less memory on large alphabets and is much
+     * faster to generate influence maps from. In that case the CharStats
+     * handed out by getCharacterStats are views onto the tensor, and
+     * correlations are only tracked up to PACKED_CORRELATION_DISTANCE apart
+     * unless setMaxCorrelationDistance says otherwise.
+     *
+     * @param caseSensitive false in order to ignore case sensitivity when
+     * accessing data, false otherwise
+     * @param packed true to store statistics in a CorrelationTensor, false to
+     * store them in individual CharStats
+     */
+    public StatsLibrary(boolean caseSensitive, boolean packed) {
         wordLength = new OccurrenceList();
+        alphabet = new Alphabet(caseSensitive);
         charSequenceStats = new CharMap<CharStats>() {
             @Override
             public CharStats mergeValues(CharStats oldValue, CharStats newValue) {
@@ -65,12 +119,22 @@ public class StatsLibrary {
             }
         };
         firstCharCounts = new BasicIntegerCharMap(caseSensitive);
+        tensor = (packed ? new CorrelationTensor(alphabet) : null);
+        maxCorrelationDistance = Integer.MAX_VALUE;
+        if (packed) {
+            setMaxCorrelationDistance(PACKED_CORRELATION_DISTANCE);
+        }
         this.setCaseSensitive(caseSensitive);
     }
 
     // STATISTICS PARSING
-    // - parseCharacterSequence
+    // - parseCharacterSequence (2)
+    // - parseWord
+    // - setCountingUniqueWords
+    // - flushUniqueWords
+    // - parseLine (2)
     // - parseLineSimple (2)
+    // - parseCorpus (3)
     // - getWordLengths
     // - getCorrelationsMatching
     // - generateInfluenceMap (3)
@@ -83,24 +147,91 @@ public class StatsLibrary {
      * essence, a single word (but not always).
      */
     public void parseCharacterSequence(String charSequence) {
+        parseCharacterSequence((CharSequence) charSequence);
+    }
+
+    /**
+     * Variant of parseCharacterSequence(String) which accepts any sequence of
+     * characters, such as the current word of a WordTokenizer
+     *
+     * @param charSequence the sequence of characters to parse and track
+     */
+    void parseCharacterSequence(CharSequence charSequence) {
+        parseCharacterSequence(charSequence, 1);
+    }
+
+    /**
+     * Weighted variant of parseCharacterSequence(String) which adds a word as
+     * if it had been parsed several times, while only walking it once. The
+     * resulting statistics are identical to parsing it count times.
+     *
+     * @param charSequence the sequence of characters to parse and track
+     * @param count the number of times the sequence was encountered
+     * @throws IllegalArgumentException when count is less than 1
+     */
+    public void parseCharacterSequence(String charSequence, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive");
+        }
+        parseCharacterSequence((CharSequence) charSequence, count);
+    }
+
+    /**
+     * Variant of parseCharacterSequence(String, int) which accepts any
+     * sequence of characters
+     *
+     * @param charSequence the sequence of characters to parse and track
+     * @param count the number of times the sequence was encountered
+     */
+    void parseCharacterSequence(CharSequence charSequence, int count) {
         // WORD STATISTICS
-        wordLength.increment(charSequence.length() - 1);
+        wordLength.increment(charSequence.length() - 1, count);
+
+        // CHARACTER STATISTICS ARE LEFT TO THE WORKERS WHEN INGESTING CONCURRENTLY
+        if (ingester != null) {
+            ingester.dispatch(charSequence, count);
+            return;
+        }
 
         // CHARACTER STATISTICS - DO FOR EACH
         for (int i = 0; i < charSequence.length(); i++) {
             char atIndex = charSequence.charAt(i);
-            CharStats cStat = charSequenceStats.get(atIndex);
 
-            // MAKE SURE THAT IT EXISTS
-            if (cStat == null) {
-                cStat = new CharStats(atIndex);
-                cStat.setCaseSensitive(charSequenceStats.isCaseSensitive());
-                charSequenceStats.put(atIndex, cStat);
+            // PACKED STORAGE ONLY NEEDS A VIEW MADE THE FIRST TIME A CHARACTER IS SEEN
+            if (tensor != null) {
+                if (tensor.getCount(alphabet.indexOf(atIndex)) == 0) {
+                    getOrCreateStats(atIndex);
+                }
+                tensor.addWord(charSequence, i, count);
+                continue;
             }
 
             // ADD CHARACTER STATISTICS
-            cStat.addWord(charSequence, i);
+            getOrCreateStats(atIndex).addWord(charSequence, i, count);
+        }
+    }
+
+    /**
+     * Retrieves the statistics for a character, creating them if it has never
+     * been encountered
+     *
+     * @param c the character to retrieve for
+     * @return the CharStats tracking the character
+     */
+    CharStats getOrCreateStats(char c) {
+        CharStats cStat = charSequenceStats.get(c);
+
+        // MAKE SURE THAT IT EXISTS
+        if (cStat == null) {
+            cStat = (tensor != null ? new PackedCharStats(c, tensor) : new CharStats(c));
+            cStat.setCaseSensitive(charSequenceStats.isCaseSensitive());
+            if (tensor == null) {
+                cStat.setMaxCorrelationDistance(maxCorrelationDistance);
+            }
+            charSequenceStats.put(c, cStat);
+            alphabet.add(c);
         }
+        return cStat;
     }
 
     /**
@@ -117,20 +248,127 @@ public class StatsLibrary {
         }
 
         for (String s : line.split(regex)) {
-            firstCharCounts.increment(s.charAt(0), 1);
-            parseCharacterSequence(s);
+            // LEADING DELIMITERS LEAVE AN EMPTY FIRST TOKEN
+            if (!s.isEmpty()) {
+                parseWord(s);
+            }
         }
     }
 
     /**
      * Parses an entire line adding it to the internal statistics after
-     * separating the sentence into words as specified by a regex string
+     * separating the sentence into words on a precompiled set of delimiters.
+     * The line is walked once and no substrings are created.
+     *
+     * @param line A line of text
+     * @param delimiters the characters which separate words
+     */
+    public void parseLine(CharSequence line, Delimiters delimiters) {
+        if (tokenizer == null || tokenizer.getDelimiters() != delimiters) {
+            tokenizer = new WordTokenizer(delimiters, false);
+        }
+        tokenizer.setFoldCase(!isCaseSensitive());
+        tokenizer.reset(line);
+
+        while (tokenizer.next()) {
+            parseWord(tokenizer);
+        }
+        if (tokenizer.finish()) {
+            parseWord(tokenizer);
+        }
+    }
+
+    /**
+     * Parses a single word, counting its first character as well as adding its
+     * character statistics
+     *
+     * @param word the word to parse, which must not be empty
+     */
+    void parseWord(CharSequence word) {
+        if (uniqueWords == null) {
+            parseWord(word, 1);
+            return;
+        }
+
+        // ONLY COUNT IT FOR NOW
+        String key = word.toString();
+        int[] count = uniqueWords.get(key);
+        if (count == null) {
+            if (uniqueWords.size() >= UNIQUE_WORD_LIMIT) {
+                flushUniqueWords();
+            }
+            uniqueWords.put(key, new int[]{1});
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Parses a single word as if it had been encountered several times
+     *
+     * @param word the word to parse, which must not be empty
+     * @param count the number of times the word was encountered
+     */
+    void parseWord(CharSequence word, int count) {
+        firstCharCounts.increment(word.charAt(0), count);
+        parseCharacterSequence(word, count);
+    }
+
+    /**
+     * Method to switch on or off the counting of unique words. While on,
+     * words from parseLine, parseLineSimple and parseCorpus are only counted,
+     * and each distinct word is added once with its frequency when
+     * flushUniqueWords is called, in the order the words were first seen.
+     * Since natural text repeats the same words constantly this saves most of
+     * the work of walking each word, and produces identical statistics.
+     * parseCharacterSequence always adds its sequence immediately. Switching
+     * it off flushes any words still waiting.
+     *
+     * @param active true to count unique words before adding them, false to
+     * add words as they are parsed
+     */
+    public void setCountingUniqueWords(boolean active) {
+        if (active && uniqueWords == null) {
+            uniqueWords = new LinkedHashMap<>();
+        } else if (!active && uniqueWords != null) {
+            flushUniqueWords();
+            uniqueWords = null;
+        }
+    }
+
+    /**
+     * Adds every word counted since the last flush to the internal statistics,
+     * each one walked a single time. Statistics aren't complete until this is
+     * called. Does nothing when not counting unique words.
+     */
+    public void flushUniqueWords() {
+        if (uniqueWords == null) {
+            return;
+        }
+        for (Entry<String, int[]> entry : uniqueWords.entrySet()) {
+            parseWord(entry.getKey(), entry.getValue()[0]);
+        }
+        uniqueWords.clear();
+    }
+
+    /**
+     * Parses an entire line adding it to the internal statistics after
+     * separating the sentence into words on whitespace and a set of
+     * delimiters. The delimiters are read as the inside of a regular
+     * expression character class, as described by Delimiters, and are
+     * compiled once and reused for as long as the same string is passed.
      *
      * @param line a line of text
      * @param delim a string of delimiters to use in addition to whitespace
+     * @throws java.util.regex.PatternSyntaxException if delim isn't valid
+     * inside a character class
      */
     public void parseLineSimple(String line, String delim) {
-        parseLine(line, "[" + delim + "\\s]+");
+        if (!delim.equals(lastDelim)) {
+            lastDelimiters = new Delimiters(delim);
+            lastDelim = delim;
+        }
+        parseLine(line, lastDelimiters);
     }
 
     /**
@@ -140,14 +378,66 @@ public class StatsLibrary {
      * @param line a line of text
      */
     public void parseLineSimple(String line) {
-        parseLine(line, "\\s+");
+        parseLineSimple(line, "");
+    }
+
+    /**
+     * Streams a file, or every file within a directory tree, into the internal
+     * statistics without ever reading the whole of it into memory
+     *
+     * @param path the file or directory to parse
+     * @param delim a string of delimiters to use in addition to whitespace
+     * @return the CorpusParser used, which reports the amount of data processed
+     * @throws IOException if any file can't be read
+     */
+    public CorpusParser parseCorpus(Path path, String delim) throws IOException {
+        CorpusParser parser = new CorpusParser(this, delim);
+        parser.parse(path);
+        return parser;
+    }
+
+    /**
+     * Streams text from a Reader into the internal statistics without ever
+     * reading the whole of it into memory. The Reader is not closed.
+     *
+     * @param in the Reader to parse
+     * @param delim a string of delimiters to use in addition to whitespace
+     * @return the CorpusParser used, which reports the amount of data processed
+     * @throws IOException if the Reader can't be read
+     */
+    public CorpusParser parseCorpus(Reader in, String delim) throws IOException {
+        CorpusParser parser = new CorpusParser(this, delim);
+        parser.parse(in);
+        return parser;
+    }
+
+    /**
+     * Streams UTF-8 text from an InputStream into the internal statistics
+     * without ever reading the whole of it into memory. The stream is not
+     * closed.
+     *
+     * @param in the stream to parse
+     * @param delim a string of delimiters to use in addition to whitespace
+     * @return the CorpusParser used, which reports the amount of data processed
+     * @throws IOException if the stream can't be read
+     */
+    public CorpusParser parseCorpus(InputStream in, String delim) throws IOException {
+        CorpusParser parser = new CorpusParser(this, delim);
+        parser.parse(in);
+        return parser;
     }
 
     // STATISTICS DATA RETRIEVAL AND GENERATION
     // - getWordLengths
     // - generateInfluenceMap (2)
+    // - generateDenseInfluenceMap (2)
+    // - getEndProbabilityMass
+    // - getCorrelation
+    // - addCorrelations
     // - getCharacterStats
     // - getAlphabet
+    // - getAlphabetIndex
+    // - isPacked
     /**
      * Method for retrieval of data regarding all the word lengths encountered.
      * Please note that this list has indeces offset by 1. That is, the value at
@@ -164,6 +454,7 @@ public class StatsLibrary {
      * @return a map of the number of times each character has appeared as the
      * first character
      */
+    @Override
     public CharMap<Integer> getPrimaryCharacterCounts() {
         return firstCharCounts;
     }
@@ -205,6 +496,8 @@ public class StatsLibrary {
 
         if (offset < 0) {
             throw new IllegalArgumentException("Negative offset passed");
+        } else if (tensor != null) {
+            return generateDenseInfluenceMap(charSequence, offset).toCharMap();
         }
 
         OccurrenceCharMap results = new OccurrenceCharMap(charSequenceStats.isCaseSensitive());
@@ -241,6 +534,129 @@ public class StatsLibrary {
         return results;
     }
 
+    /**
+     * Slot-indexed variant of generateInfluenceMap(String, int), producing the
+     * same lists without boxing characters or walking a TreeMap per lookup.
+     *
+     * @param charSequence the string of characters to interpret
+     * @param offset the offset with which to treat the word. That is, an offset
+     * greater than 0 will treat the word as if there were ghost characters in
+     * front of it
+     * @throws IllegalArgumentException when offset is less than 0
+     * @return A slot-indexed map of OccurrenceLists demonstrating the amount of
+     * influence each relevant character has on the word based on the distance
+     * from the end as an integer. If a character has no influence it is not
+     * included in the return value.
+     */
+    @Override
+    public DenseOccurrenceCharMap generateDenseInfluenceMap(CharSequence charSequence, int offset) {
+        return generateDenseInfluenceMap(charSequence, 0, charSequence.length(), offset);
+    }
+
+    @Override
+    public DenseOccurrenceCharMap generateDenseInfluenceMap(CharSequence charSequence, int start, int end, int offset) {
+        int position;
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset passed");
+        }
+
+        DenseOccurrenceCharMap results = new DenseOccurrenceCharMap(alphabet);
+
+        // GO THROUGH EACH CHARACTER IN THE RANGE
+        for (int i = end - 1 - offset; i >= start; i--) {
+            position = end - i - 1;
+
+            // PACKED STORAGE CAN BE READ STRAIGHT OUT OF THE TENSOR
+            if (tensor != null) {
+                int from = alphabet.indexOf(charSequence.charAt(i));
+                for (int to = 0; from >= 0 && to < alphabet.size(); to++) {
+                    int count = tensor.getCorrelation(from, to, position);
+                    if (count > 0) {
+                        results.incrementAt(to, position, count);
+                    }
+                }
+                continue;
+            }
+
+            // FETCH THE ASSOCIATED CHARSTAT
+            CharStats stats = charSequenceStats.get(charSequence.charAt(i));
+            if (stats == null) {
+                continue;   // THERE ARE NO STATS SO IT DOESN'T MATTER
+            }
+
+            // ADD EVERY LIST WITH DATA AT THIS POSITION STRAIGHT TO ITS SLOT
+            for (Entry<Character, OccurrenceList> entry : stats.getAllCorrelations().entrySet()) {
+                int count = entry.getValue().getCount(position);
+                if (count > 0) {
+                    results.incrementAt(alphabet.add(entry.getKey()), position, count);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Retrieves the probability of a character being found at a certain
+     * distance from the end of a word. This is equivalent to
+     * getCharacterStats(c).getDistancesFromEnd().getProbabilityMass(distance)
+     * but doesn't copy anything out of packed storage.
+     *
+     * @param c the character to retrieve for
+     * @param distance the distance from the end of the word
+     * @return the probability mass at the distance, or 0.0f if the character
+     * has never been encountered
+     */
+    @Override
+    public float getEndProbabilityMass(char c, int distance) {
+        if (tensor != null) {
+            return tensor.getEndProbabilityMass(alphabet.indexOf(c), distance);
+        }
+        CharStats stats = charSequenceStats.get(c);
+        return (stats == null ? 0.0f : stats.getDistancesFromEnd().getProbabilityMass(distance));
+    }
+
+    @Override
+    public int getCorrelation(int from, int to, int index) {
+        if (tensor != null) {
+            return tensor.getCorrelation(from, to, index);
+        } else if (from < 0 || to < 0 || from >= alphabet.size() || to >= alphabet.size()) {
+            return 0;
+        }
+        CharStats stats = charSequenceStats.get(alphabet.charAt(from));
+        OccurrenceList list = (stats == null ? null : stats.getCorrelationWith(alphabet.charAt(to)));
+        return (list == null ? 0 : list.getCount(index));
+    }
+
+    @Override
+    public void addCorrelations(int from, int index, float weight, float[] weights) {
+        if (from < 0 || from >= alphabet.size()) {
+            return;
+        } else if (tensor != null) {
+            for (int to = 0; to < alphabet.size() && to < weights.length; to++) {
+                int count = tensor.getCorrelation(from, to, index);
+                if (count > 0) {
+                    weights[to] += weight * count;
+                }
+            }
+            return;
+        }
+
+        // ONLY THE CHARACTERS WHICH HAVE FOLLOWED THIS ONE NEED LOOKING AT
+        CharStats stats = charSequenceStats.get(alphabet.charAt(from));
+        if (stats == null) {
+            return;
+        }
+        for (Entry<Character, OccurrenceList> entry : stats.getAllCorrelations().entrySet()) {
+            int count = entry.getValue().getCount(index);
+            int to = alphabet.indexOf(entry.getKey());
+            if (count > 0 && to < weights.length) {
+                weights[to] += weight * count;
+            }
+        }
+    }
+
     /**
      * Retrieves a set of statistics for a single character in a character
      * sequence
@@ -259,8 +675,32 @@ public class StatsLibrary {
         return charSequenceStats.getAlphabet();
     }
 
+    /**
+     * Method for retrieving the dense slots assigned to every character. Slots
+     * are never reassigned, including when the library is cleared.
+     *
+     * @return the Alphabet used to index slot-based structures
+     */
+    @Override
+    public Alphabet getAlphabetIndex() {
+        return alphabet;
+    }
+
+    /**
+     * @return true if statistics are kept in a CorrelationTensor, false if
+     * they are kept in individual CharStats
+     */
+    public boolean isPacked() {
+        return tensor != null;
+    }
+
     // MODIFIERS
     // - setCaseSensitive
+    // - isCaseSensitive
+    // - setMaxCorrelationDistance
+    // - getMaxCorrelationDistance
+    // - addAll
+    // - restoreCharacterStats
     // = clear
     /**
      * Method to set the case sensitivity of the internal character-sorted
@@ -271,16 +711,157 @@ public class StatsLibrary {
      */
     public final void setCaseSensitive(boolean active) {
         charSequenceStats.setCaseSensitive(active);
+        alphabet.setCaseSensitive(active);
         for (CharStats stats : charSequenceStats.values()) {
             stats.setCaseSensitive(active);
         }
     }
 
+    /**
+     * Method for retrieving the case sensitivity of the internal
+     * character-sorted structures
+     *
+     * @return true if case is taken into consideration when accessing data,
+     * false if case is ignored.
+     */
+    @Override
+    public boolean isCaseSensitive() {
+        return charSequenceStats.isCaseSensitive();
+    }
+
+    /**
+     * Method to set the furthest apart two characters in a word may be and
+     * still have their correlation tracked. Without a limit, every character
+     * is correlated with every later character in its word, so training time
+     * and correlation lists grow with the square of the word length, which
+     * long tokens such as URLs make very costly. Since words are generated
+     * from a short seed, a limit a little beyond the seed length loses
+     * nothing. Correlations already tracked beyond the new limit are
+     * discarded. Distances from the start and end of words are unaffected.
+     * Lifting the limit of packed storage makes its tensor grow with the
+     * square of the alphabet times the longest word.
+     *
+     * @param distance the maximum distance, which must be at least 1, or
+     * Integer.MAX_VALUE for no limit
+     * @throws IllegalArgumentException when distance is less than 1
+     */
+    public void setMaxCorrelationDistance(int distance) {
+        if (distance < 1) {
+            throw new IllegalArgumentException("Maximum distance must be at least 1");
+        }
+        maxCorrelationDistance = distance;
+        if (tensor != null) {
+            tensor.setMaxDistance(distance);
+            return;
+        }
+        for (CharStats stats : charSequenceStats.values()) {
+            stats.setMaxCorrelationDistance(distance);
+        }
+    }
+
+    /**
+     * @return the furthest apart two characters may be and still have their
+     * correlation tracked, which is Integer.MAX_VALUE when unbounded
+     */
+    public int getMaxCorrelationDistance() {
+        return maxCorrelationDistance;
+    }
+
+    /**
+     * Merges every statistic tracked by another library into this one,
+     * including word lengths and first character counts. The two libraries may
+     * use different storage, and the source is left untouched.
+     *
+     * @param source the library to inherit values from
+     * @return a reference to itself
+     */
+    public StatsLibrary addAll(StatsLibrary source) {
+        // WORD STATISTICS
+        int[] lengths = source.wordLength.values();
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] != 0) {
+                wordLength.increment(i, lengths[i]);
+            }
+        }
+        for (Entry<Character, Integer> entry : source.firstCharCounts.entrySet()) {
+            firstCharCounts.increment(entry.getKey(), entry.getValue());
+        }
+
+        // CHARACTER STATISTICS. TWO TENSORS CAN BE ADDED DIRECTLY
+        if (tensor != null && source.tensor != null) {
+            tensor.addAll(source.tensor);
+            for (Character c : source.charSequenceStats.keySet()) {
+                if (charSequenceStats.get(c) == null) {
+                    charSequenceStats.put(c, new PackedCharStats(c, tensor));
+                }
+            }
+            return this;
+        }
+        for (CharStats stats : source.charSequenceStats.values()) {
+            getOrCreateStats(stats.getCharValue()).addAll(stats);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a complete set of previously tracked statistics for a character
+     * which isn't yet being tracked, copying it into packed storage if needed
+     *
+     * @param stats the statistics to add
+     */
+    void restoreCharacterStats(CharStats stats) {
+        char c = stats.getCharValue();
+        alphabet.add(c);
+        if (tensor != null) {
+            CharStats view = new PackedCharStats(c, tensor);
+            view.addAll(stats);
+            charSequenceStats.put(c, view);
+        } else {
+            stats.setCaseSensitive(isCaseSensitive());
+            stats.setMaxCorrelationDistance(maxCorrelationDistance);
+            charSequenceStats.put(c, stats);
+        }
+    }
+
     /**
      * Clears the internal data structures
      */
     public void clear() {
         charSequenceStats.clear();
         wordLength.clear();
+        if (uniqueWords != null) {
+            uniqueWords.clear();
+        }
+        if (tensor != null) {
+            tensor.clear();
+        }
+    }
+
+    // PERSISTENCE
+    // - save
+    // - load
+    /**
+     * Saves every piece of state held by this library to a compact binary
+     * snapshot, replacing the file if it already exists. Loading the snapshot
+     * is far faster than parsing the original text again.
+     *
+     * @param path the file to write to
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path path) throws IOException {
+        LibrarySnapshot.write(this, path);
+    }
+
+    /**
+     * Loads a library from a snapshot previously written by save(Path). The
+     * loaded library has the same case sensitivity and storage as the saved
+     * one, and generates the same words from the same seed.
+     *
+     * @param path the file to read from
+     * @return a new StatsLibrary holding the saved state
+     * @throws IOException if the file can't be read or isn't a valid snapshot
+     */
+    public static StatsLibrary load(Path path) throws IOException {
+        return LibrarySnapshot.read(path);
     }
 }
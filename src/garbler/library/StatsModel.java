@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+import garbler.structure.Alphabet;
+import garbler.structure.DenseOccurrenceCharMap;
+
+/**
+ * Interface for the read-only statistics needed while generating words. This
+ * is implemented by StatsLibrary itself as well as by frozen models which
+ * only hold what generation requires, allowing a StatsCruncher to work from
+ * either.
+ *
+ * @author Rogue <Alice Q>
+ */
+public interface StatsModel {
+
+    /**
+     * @return the Alphabet whose slots index every slot-based structure
+     * returned by the model
+     */
+    public Alphabet getAlphabetIndex();
+
+    /**
+     * @return true if case is taken into consideration when accessing data,
+     * false if case is ignored.
+     */
+    public boolean isCaseSensitive();
+
+    /**
+     * @return a map of the number of times each character has appeared as the
+     * first character
+     */
+    public CharMap<Integer> getPrimaryCharacterCounts();
+
+    /**
+     * Retrieves a single correlation count
+     *
+     * @param from the slot of the preceding character
+     * @param to the slot of the following character
+     * @param index the 0-indexed distance, being the distance minus one
+     * @return the number of times to was found index + 1 characters after
+     * from, or 0 for anything outside the tracked range
+     */
+    public int getCorrelation(int from, int to, int index);
+
+    /**
+     * Adds a weighed row of correlations to an array. This is equivalent to
+     * adding weight * getCorrelation(from, to, index) to weights[to] for every
+     * slot the array can hold, but reads the row in one go.
+     *
+     * @param from the slot of the preceding character
+     * @param index the 0-indexed distance, being the distance minus one
+     * @param weight the weight to multiply each count by
+     * @param weights the array to add to, indexed by the slot of the following
+     * character
+     */
+    public void addCorrelations(int from, int index, float weight, float[] weights);
+
+    /**
+     * Retrieves the probability of a character being found at a certain
+     * distance from the end of a word
+     *
+     * @param c the character to retrieve for
+     * @param distance the distance from the end of the word
+     * @return the probability mass at the distance, or 0.0f if the character
+     * has never been encountered
+     */
+    public float getEndProbabilityMass(char c, int distance);
+
+    /**
+     * Method to generate an Influence Map for a specified character sequence.
+     * That is, a map of all the characters that have been calculated as
+     * possible next characters with their influence levels
+     *
+     * @param charSequence the string of characters to interpret
+     * @param offset the offset with which to treat the word. That is, an offset
+     * greater than 0 will treat the word as if there were ghost characters in
+     * front of it
+     * @throws IllegalArgumentException when offset is less than 0
+     * @return A slot-indexed map of OccurrenceLists demonstrating the amount of
+     * influence each relevant character has on the word based on the distance
+     * from the end as an integer. If a character has no influence it is not
+     * included in the return value.
+     */
+    public DenseOccurrenceCharMap generateDenseInfluenceMap(CharSequence charSequence, int offset);
+
+    /**
+     * Variant of generateDenseInfluenceMap(CharSequence, int) which interprets
+     * a range of characters, so that a seed can be taken from the end of a
+     * word without copying it
+     *
+     * @param charSequence the sequence holding the characters to interpret
+     * @param start the index of the first character to interpret
+     * @param end the index just past the last character to interpret
+     * @param offset the offset with which to treat the range
+     * @throws IllegalArgumentException when offset is less than 0
+     * @return A slot-indexed map of OccurrenceLists, as with
+     * generateDenseInfluenceMap(CharSequence, int)
+     */
+    public DenseOccurrenceCharMap generateDenseInfluenceMap(CharSequence charSequence, int start, int end, int offset);
+}
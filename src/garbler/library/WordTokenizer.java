@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.library;
+
+/**
+ * Tokenizer which walks text once, splitting it into words on a precompiled
+ * set of Delimiters without creating any substrings. Each word found is copied
+ * into a reusable buffer, folding case character by character if needed, and
+ * the tokenizer itself is the CharSequence for the current word, so handing a
+ * word to the parsing code allocates nothing.
+ *
+ * Text may be fed in pieces: a word running off the end of one piece is kept
+ * and continued by the next, and finish() releases whatever is left once the
+ * last piece has been fed. Consecutive delimiters never produce empty words.
+ *
+ * @author Rogue <Alice Q>
+ */
+public class WordTokenizer implements CharSequence {
+
+    // HOW TO FIND WORDS
+    private final Delimiters delimiters;
+    private boolean foldCase;
+
+    // THE TEXT BEING WALKED
+    private CharSequence text;
+    private int position;
+    private int end;
+
+    // THE CURRENT WORD
+    private char[] word;
+    private int length;
+    private boolean complete;
+
+    /**
+     * Basic constructor
+     *
+     * @param delimiters the characters which separate words
+     * @param foldCase true to lowercase every character of every word
+     */
+    public WordTokenizer(Delimiters delimiters, boolean foldCase) {
+        this.delimiters = delimiters;
+        this.foldCase = foldCase;
+        word = new char[32];
+        text = "";
+    }
+
+    // FEEDING TEXT
+    // - getDelimiters
+    // - setFoldCase
+    // - reset (2)
+    // - next
+    // - finish
+    /**
+     * @return the characters which separate words
+     */
+    public Delimiters getDelimiters() {
+        return delimiters;
+    }
+
+    /**
+     * @param foldCase true to lowercase every character of every word
+     */
+    public void setFoldCase(boolean foldCase) {
+        this.foldCase = foldCase;
+    }
+
+    /**
+     * Starts walking a new piece of text. Any unfinished word from the previous
+     * piece is continued.
+     *
+     * @param text the text to walk
+     */
+    public void reset(CharSequence text) {
+        this.text = text;
+        position = 0;
+        end = text.length();
+    }
+
+    /**
+     * Starts walking a new piece of text held in an array. Any unfinished word
+     * from the previous piece is continued.
+     *
+     * @param text the array holding the text
+     * @param offset the index of the first character to walk
+     * @param count the number of characters to walk
+     */
+    public void reset(char[] text, int offset, int count) {
+        reset(java.nio.CharBuffer.wrap(text, offset, count));
+    }
+
+    /**
+     * Advances to the next complete word in the current piece of text
+     *
+     * @return true if a word was found, false if the piece was exhausted
+     */
+    public boolean next() {
+        if (complete) {
+            // THE PREVIOUS WORD HAS BEEN CONSUMED
+            length = 0;
+            complete = false;
+        }
+        while (position < end) {
+            char c = text.charAt(position++);
+            if (delimiters.isDelimiter(c)) {
+                if (length > 0) {
+                    complete = true;
+                    return true;
+                }
+            } else {
+                append(foldCase ? Character.toLowerCase(c) : c);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases the unfinished word left over once all text has been fed
+     *
+     * @return true if there was an unfinished word, which is now current
+     */
+    public boolean finish() {
+        if (complete) {
+            length = 0;
+        }
+        complete = length > 0;
+        return complete;
+    }
+
+    /**
+     * Adds a character to the end of the current word, growing the buffer if
+     * needed
+     *
+     * @param c the character to add
+     */
+    private void append(char c) {
+        if (length == word.length) {
+            char[] temp = new char[word.length * 2];
+            System.arraycopy(word, 0, temp, 0, length);
+            word = temp;
+        }
+        word[length++] = c;
+    }
+
+    // CURRENT WORD
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return word[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return new String(word, 0, length);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Sampler using Vose's alias method. Each slot with a weight above zero gets a
+ * column holding its own share and an alias whose share tops the column up to
+ * an even height, so a draw only has to pick a column and compare within it.
+ * Building the table takes linear time, after which every draw is constant
+ * time, making it the better choice for distributions drawn from repeatedly.
+ *
+ * The columns are laid out in the order given by an array of slots, normally
+ * Alphabet.getSortedSlots(), so that the table doesn't depend on the order
+ * the slots were handed out in.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public final class AliasSampler implements Sampler {
+
+    // THE SLOT EACH COLUMN BELONGS TO, THE SHARE OF THE COLUMN IT OWNS AND THE COLUMN OWNING THE REST
+    private final int[] slots;
+    private final float[] probability;
+    private final int[] alias;
+
+    /**
+     * Builds a sampler over the values of a map
+     *
+     * @param map the weights to sample, which need not sum to 1.0f
+     */
+    public AliasSampler(DenseDecimalCharMap map) {
+        this(map.toArray(), map.getAlphabet().getSortedSlots(map.slots()));
+    }
+
+    /**
+     * Builds a sampler over an array of weights. Weights of zero, below zero
+     * or NaN are never picked.
+     *
+     * @param weights the weights to sample, indexed by slot, which need not
+     * sum to 1.0f
+     * @param order the slots to sample, in the order to lay out their columns
+     */
+    public AliasSampler(float[] weights, int[] order) {
+        // ONLY WEIGHTS ABOVE ZERO GET A COLUMN, SO A LEFTOVER COLUMN IS NEVER AN EMPTY SLOT
+        int columns = 0;
+        double total = 0.0;
+        for (int slot : order) {
+            if (weights[slot] > 0.0f) {
+                columns++;
+                total += weights[slot];
+            }
+        }
+        slots = new int[columns];
+        probability = new float[columns];
+        alias = new int[columns];
+
+        // SCALE EVERY WEIGHT SO THAT THE AVERAGE COLUMN IS 1.0 AND SORT THEM BY HEIGHT
+        double[] scaled = new double[columns];
+        int[] small = new int[columns];
+        int[] large = new int[columns];
+        int smallCount = 0;
+        int largeCount = 0;
+        int next = 0;
+        for (int slot : order) {
+            if (weights[slot] > 0.0f) {
+                slots[next] = slot;
+                scaled[next] = weights[slot] * columns / total;
+                if (scaled[next] < 1.0) {
+                    small[smallCount++] = next;
+                } else {
+                    large[largeCount++] = next;
+                }
+                next++;
+            }
+        }
+
+        // TOP UP EACH SHORT COLUMN FROM A TALL ONE
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = (float) scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // WHATEVER IS LEFT IS FULL, BARRING ROUNDING
+        while (largeCount > 0) {
+            int column = large[--largeCount];
+            probability[column] = 1.0f;
+            alias[column] = column;
+        }
+        while (smallCount > 0) {
+            int column = small[--smallCount];
+            probability[column] = 1.0f;
+            alias[column] = column;
+        }
+    }
+
+    @Override
+    public int sample(float pick) {
+        if (slots.length == 0) {
+            return -1;
+        }
+
+        // THE WHOLE PART PICKS THE COLUMN AND THE FRACTION WHERE IN IT THE PICK LANDED
+        double scaled = (double) pick * slots.length;
+        int column = (int) scaled;
+        if (column >= slots.length) {
+            column = slots.length - 1;
+        }
+        return slots[(scaled - column < probability[column] ? column : alias[column])];
+    }
+}
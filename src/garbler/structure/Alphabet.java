@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Class which assigns every character a dense integer slot, allowing character
+ * keyed data to be stored in flat primitive arrays instead of TreeMaps. Slots
+ * are handed out in the order characters are first added and are never
+ * reassigned, so any array indexed by a slot stays valid as the alphabet grows.
+ *
+ * Since the slots depend on the order the characters happened to be seen in,
+ * anything which walks the slots to build a distribution walks them in the
+ * order of their characters instead, as given by getSortedSlots(). That way two
+ * Alphabets holding the same characters lead to the same draws.
+ *
+ * Characters may be looked up by any number of threads while others add new
+ * ones. A slot only becomes visible through indexOf once its character, the
+ * sorted slots and the size have all been updated.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class Alphabet {
+
+    // NUMBER OF CHARACTERS COVERED BY A SINGLE PAGE OF THE LOOKUP TABLE
+    private static final int PAGE_SIZE = 256;
+
+    // TWO-LEVEL LOOKUP TABLE FROM CHARACTER TO SLOT + 1, SO THAT 0 MEANS ABSENT. PAGES AND THEIR ENTRIES
+    // ARE WRITTEN WITH RELEASE AND READ WITH ACQUIRE SEMANTICS
+    private final int[][] pages;
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(int[][].class);
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // REVERSE LOOKUP FROM SLOT TO CHARACTER
+    private char[] characters;
+    private volatile int size;
+
+    // EVERY SLOT ORDERED BY ITS CHARACTER, REPLACED AS A WHOLE ON EVERY ASSIGNMENT
+    private volatile int[] sortedSlots = new int[0];
+
+    // WHETHER OR NOT TO IGNORE CASES
+    private boolean caseSensitive;
+
+    // CONSTRUCTORS
+    /**
+     * Basic constructor for a case sensitive Alphabet
+     */
+    public Alphabet() {
+        this(true);
+    }
+
+    /**
+     * Basic constructor allowing a specified initial case sensitivity.
+     *
+     * @param caseSensitive false in order to ignore case when looking up
+     * characters, true otherwise
+     */
+    public Alphabet(boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+        pages = new int[(Character.MAX_VALUE + 1) / PAGE_SIZE][];
+        characters = new char[64];
+        size = 0;
+    }
+
+    // GET-SETS
+    // - setCaseSensitive
+    // - isCaseSensitive
+    // - getKey
+    // - size
+    /**
+     * Method for making the Alphabet case sensitive or insensitive. Please note
+     * that this does nothing to the slots already assigned
+     *
+     * @param active false in order to ignore case when looking up characters,
+     * true otherwise
+     */
+    public void setCaseSensitive(boolean active) {
+        caseSensitive = active;
+    }
+
+    /**
+     * @return true if case is taken into consideration when looking up
+     * characters, false if case is ignored.
+     */
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    /**
+     * Gets the character actually stored for the input character, taking case
+     * sensitivity into account
+     *
+     * @param c The character to retrieve a key for
+     * @return c itself, or its lowercase variant if case is being ignored
+     */
+    public char getKey(char c) {
+        return (caseSensitive ? c : Character.toLowerCase(c));
+    }
+
+    /**
+     * @return the number of slots which have been assigned so far
+     */
+    public int size() {
+        return size;
+    }
+
+    // SLOT ACCESS
+    // - indexOf
+    // - add
+    // - charAt
+    // - contains
+    // - toCharArray
+    // - getSortedSlots (2)
+    /**
+     * Method to look up the slot of a character without assigning one
+     *
+     * @param c the character to look up
+     * @return the slot assigned to the character, or -1 if it has none
+     */
+    public int indexOf(char c) {
+        char key = getKey(c);
+        int[] page = (int[]) PAGES.getAcquire(pages, key / PAGE_SIZE);
+        if (page == null) {
+            return -1;
+        }
+        return (int) ENTRIES.getAcquire(page, key % PAGE_SIZE) - 1;
+    }
+
+    /**
+     * Method to look up the slot of a character, assigning the next free slot
+     * to it if it has none yet
+     *
+     * @param c the character to add
+     * @return the slot assigned to the character
+     */
+    public int add(char c) {
+        int slot = indexOf(c);
+        if (slot >= 0) {
+            return slot;
+        }
+        return assign(getKey(c));
+    }
+
+    /**
+     * Method for retrieving the character held at a slot
+     *
+     * @param slot the slot to look up
+     * @return the character assigned to the slot
+     * @throws ArrayIndexOutOfBoundsException when the slot hasn't been assigned
+     */
+    public char charAt(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new ArrayIndexOutOfBoundsException(slot);
+        }
+        return characters[slot];
+    }
+
+    /**
+     * @param c the character to test for
+     * @return true if the character has been assigned a slot
+     */
+    public boolean contains(char c) {
+        return indexOf(c) >= 0;
+    }
+
+    /**
+     * @return an array of every character in slot order. Modifying it does
+     * not modify the Alphabet.
+     */
+    public char[] toCharArray() {
+        char[] copy = new char[size];
+        System.arraycopy(characters, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Gives every slot in the order of the characters held in them, which is
+     * the order to walk the slots in whenever the result depends on it
+     *
+     * @return the slots assigned so far, ordered by character. The array is
+     * shared and must not be modified.
+     */
+    public int[] getSortedSlots() {
+        return sortedSlots;
+    }
+
+    /**
+     * Variant of getSortedSlots() leaving out the slots at or above a length,
+     * for arrays sized before the Alphabet last grew
+     *
+     * @param length the number of slots to cover
+     * @return the slots below length, ordered by character. The array may be
+     * shared and must not be modified.
+     */
+    public int[] getSortedSlots(int length) {
+        int[] sorted = sortedSlots;
+        if (length >= sorted.length) {
+            return sorted;
+        }
+        int[] below = new int[Math.max(length, 0)];
+        int count = 0;
+        for (int slot : sorted) {
+            if (slot < length) {
+                below[count++] = slot;
+            }
+        }
+        return below;
+    }
+
+    /**
+     * Assigns a new slot to a key. Assignment is synchronized so that several
+     * threads may safely discover new characters while reading existing ones,
+     * and the slot is only published in the lookup table once everything else
+     * about it has been written.
+     *
+     * @param key the key to assign, with case sensitivity already applied
+     * @return the slot assigned to the key
+     */
+    private synchronized int assign(char key) {
+        int[] page = pages[key / PAGE_SIZE];
+        if (page == null) {
+            page = new int[PAGE_SIZE];
+            PAGES.setRelease(pages, key / PAGE_SIZE, page);
+        } else if (page[key % PAGE_SIZE] > 0) {
+            // ANOTHER THREAD GOT HERE FIRST
+            return page[key % PAGE_SIZE] - 1;
+        }
+
+        // GROW THE REVERSE LOOKUP IF NEEDED
+        int slot = size;
+        if (slot >= characters.length) {
+            char[] temp = new char[characters.length * 2];
+            System.arraycopy(characters, 0, temp, 0, characters.length);
+            characters = temp;
+        }
+        characters[slot] = key;
+
+        // FIT THE SLOT INTO THE SORTED ORDER
+        int[] sorted = sortedSlots;
+        int position = 0;
+        while (position < sorted.length && characters[sorted[position]] < key) {
+            position++;
+        }
+        int[] temp = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, temp, 0, position);
+        temp[position] = slot;
+        System.arraycopy(sorted, position, temp, position + 1, sorted.length - position);
+        sortedSlots = temp;
+
+        // PUBLISH THE SLOT LAST, SO THAT A READER WHICH FINDS IT ALSO SEES ITS CHARACTER
+        size = slot + 1;
+        ENTRIES.setRelease(page, key % PAGE_SIZE, slot + 1);
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return new String(characters, 0, size);
+    }
+}
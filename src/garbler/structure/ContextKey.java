@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Static methods which turn a short run of characters into a single long, so
+ * that contexts such as word endings can be used as keys without creating a
+ * String for each. Up to four non-null characters are packed 16 bits apiece,
+ * which is exact and can be turned back into the characters. Anything longer,
+ * or holding a null character, is hashed instead, in which case two contexts
+ * may share a key and the characters must be compared to tell them apart.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public final class ContextKey {
+
+    // THE LONGEST CONTEXT WHICH CAN BE PACKED
+    public static final int MAX_PACKED_LENGTH = 4;
+
+    // FNV-1a CONSTANTS FOR CONTEXTS WHICH CAN'T BE PACKED
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private ContextKey() {
+    }
+
+    /**
+     * Checks whether a context can be packed exactly
+     *
+     * @param charSequence the sequence holding the context
+     * @param start the index of the first character of the context
+     * @param end the index just past the last character of the context
+     * @return true if the context is short enough and holds no null
+     * characters
+     */
+    public static boolean isPackable(CharSequence charSequence, int start, int end) {
+        if (end - start > MAX_PACKED_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (charSequence.charAt(i) == '\0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the key of a context, packing it if possible and hashing it
+     * otherwise
+     *
+     * @param charSequence the sequence holding the context
+     * @param start the index of the first character of the context
+     * @param end the index just past the last character of the context
+     * @return the key of the context
+     */
+    public static long of(CharSequence charSequence, int start, int end) {
+        long key = 0;
+        if (isPackable(charSequence, start, end)) {
+            for (int i = start; i < end; i++) {
+                key = (key << 16) | charSequence.charAt(i);
+            }
+            return key;
+        }
+        key = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            key = (key ^ charSequence.charAt(i)) * FNV_PRIME;
+        }
+        return key;
+    }
+
+    /**
+     * Turns a packed key back into its characters. The result is meaningless
+     * for a key which was hashed.
+     *
+     * @param key the packed key
+     * @return the context the key was packed from
+     */
+    public static String unpack(long key) {
+        char[] characters = new char[MAX_PACKED_LENGTH];
+        int length = 0;
+        for (long rest = key; rest != 0; rest >>>= 16) {
+            characters[length++] = (char) (rest & 0xFFFF);
+        }
+
+        // THE CHARACTERS CAME OUT BACKWARDS
+        for (int i = 0; i < length / 2; i++) {
+            char c = characters[i];
+            characters[i] = characters[length - i - 1];
+            characters[length - i - 1] = c;
+        }
+        return new String(characters, 0, length);
+    }
+}
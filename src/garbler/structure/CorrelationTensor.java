@@ -0,0 +1,633 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Flat storage for every character correlation tracked by a StatsLibrary.
+ * Rather than one OccurrenceList per pair of characters, all the counts live
+ * in a single contiguous int array laid out as [from][to][distance], with the
+ * distances from the start and end of each word packed into [slot][distance]
+ * arrays alongside it. Characters are indexed by the slots of an Alphabet.
+ *
+ * Just like OccurrenceList, distances between two characters are stored with
+ * an offset of 1, so that index 0 corresponds to adjacent characters. The
+ * correlations may be limited to a maximum distance, in which case they never
+ * grow deeper than it while the distances from the start and end of each word
+ * still grow to fit the longest word.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class CorrelationTensor {
+
+    // THE ALPHABET PROVIDING THE SLOTS
+    private final Alphabet alphabet;
+
+    // NUMBER OF SLOTS, CORRELATION DISTANCES AND WORD POSITIONS THE ARRAYS HAVE ROOM FOR
+    private int capacity;
+    private int depth;
+    private int span;
+
+    // THE FURTHEST APART TWO CHARACTERS MAY BE AND STILL BE CORRELATED
+    private int maxDistance;
+
+    // [from][to][distance] CORRELATION COUNTS
+    private int[] correlations;
+
+    // [slot][distance] DISTANCES FROM THE START AND END OF A WORD
+    private int[] startDistances;
+    private int[] endDistances;
+
+    // [slot] TOTALS WHICH ARE FREQUENTLY NEEDED
+    private int[] occurrences;
+    private int[] startTotals;
+    private int[] endTotals;
+
+    /**
+     * Basic constructor
+     *
+     * @param alphabet the Alphabet whose slots index this tensor
+     */
+    public CorrelationTensor(Alphabet alphabet) {
+        this(alphabet, Math.max(alphabet.size(), 32), 16);
+    }
+
+    /**
+     * Basic constructor
+     *
+     * @param alphabet the Alphabet whose slots index this tensor
+     * @param capacity the initial number of slots to make room for
+     * @param depth the initial number of distances to make room for
+     */
+    public CorrelationTensor(Alphabet alphabet, int capacity, int depth) {
+        this.alphabet = alphabet;
+        this.maxDistance = Integer.MAX_VALUE;
+        allocate(Math.max(capacity, 1), Math.max(depth, 1), Math.max(depth, 1));
+    }
+
+    // GET-SETS
+    // - getAlphabet
+    // - getCapacity
+    // - getDepth
+    // - getSpan
+    // - setMaxDistance
+    // - getMaxDistance
+    /**
+     * @return the Alphabet whose slots index this tensor
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the number of slots the tensor currently has room for
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of correlation distances the tensor currently has
+     * room for
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the number of distances from the start or end of a word the
+     * tensor currently has room for
+     */
+    public int getSpan() {
+        return span;
+    }
+
+    /**
+     * Method to set the furthest apart two characters may be and still have
+     * their correlation tracked. Correlations already tracked beyond the new
+     * limit are discarded.
+     *
+     * @param distance the maximum distance, which must be at least 1
+     * @throws IllegalArgumentException when distance is less than 1
+     */
+    public void setMaxDistance(int distance) {
+        if (distance < 1) {
+            throw new IllegalArgumentException("Maximum distance must be at least 1");
+        }
+        maxDistance = distance;
+        if (distance < depth) {
+            for (int offset = 0; offset < correlations.length; offset += depth) {
+                java.util.Arrays.fill(correlations, offset + distance, offset + depth, 0);
+            }
+        }
+    }
+
+    /**
+     * @return the furthest apart two characters may be and still have their
+     * correlation tracked
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    // STAT TRACKING
+    // - addWord
+    // - addOccurrence
+    // - addPositionFromStart
+    // - addPositionFromEnd
+    // - addCharacterCorrelation
+    /**
+     * Parses an individual word, adding the character at fromIndex along with
+     * every character following it
+     *
+     * @param word The word to add to tracking
+     * @param fromIndex The index of the character to count from
+     * @throws ArrayIndexOutOfBoundsException when fromIndex is outside the
+     * valid word range
+     */
+    public void addWord(CharSequence word, int fromIndex) {
+        addWord(word, fromIndex, 1);
+    }
+
+    /**
+     * Weighted variant of addWord(CharSequence, int) which adds a word as if
+     * it had been encountered several times
+     *
+     * @param word The word to add to tracking
+     * @param fromIndex The index of the character to count from
+     * @param count the number of times the word was encountered
+     * @throws ArrayIndexOutOfBoundsException when fromIndex is outside the
+     * valid word range
+     */
+    public void addWord(CharSequence word, int fromIndex, int count) {
+        int length = word.length();
+        if (fromIndex < 0 || fromIndex >= length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        int from = alphabet.add(word.charAt(fromIndex));
+
+        // MAKE ROOM FOR THE WHOLE WORD AT ONCE
+        ensureCapacity(from, length - 1);
+
+        // IT PASSED THE TEST SO ADD EVERYTHING
+        occurrences[from] += count;
+        startDistances[from * span + fromIndex] += count;
+        startTotals[from] += count;
+        endDistances[from * span + length - fromIndex - 1] += count;
+        endTotals[from] += count;
+
+        // ADD EVERY CHARACTER AFTER THIS ONE, UP TO THE MAXIMUM DISTANCE
+        int last = (length - fromIndex - 1 > maxDistance ? fromIndex + maxDistance : length - 1);
+        for (int i = fromIndex + 1; i <= last; i++) {
+            int to = alphabet.add(word.charAt(i));
+            if (to >= capacity) {
+                ensureCapacity(to, length - 1);
+            }
+            correlations[(from * capacity + to) * depth + i - fromIndex - 1] += count;
+        }
+    }
+
+    /**
+     * Adds encounters to the occurrence counter of a slot
+     *
+     * @param slot the slot of the character encountered
+     * @param amount the number of encounters to add
+     */
+    public void addOccurrence(int slot, int amount) {
+        ensureCapacity(slot, 0);
+        occurrences[slot] += amount;
+    }
+
+    /**
+     * Adds a position occurrence from the start of a word
+     *
+     * @param slot the slot of the character encountered
+     * @param distance The distance from the start of the word
+     * @param amount the number of encounters to add
+     * @throws ArrayIndexOutOfBoundsException When distance is less than 0
+     */
+    public void addPositionFromStart(int slot, int distance, int amount) {
+        if (distance < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        ensureCapacity(slot, distance);
+        startDistances[slot * span + distance] += amount;
+        startTotals[slot] += amount;
+    }
+
+    /**
+     * Adds a position occurrence from the end of a word
+     *
+     * @param slot the slot of the character encountered
+     * @param distance The distance from the end of the word
+     * @param amount the number of encounters to add
+     * @throws ArrayIndexOutOfBoundsException When distance is less than 0
+     */
+    public void addPositionFromEnd(int slot, int distance, int amount) {
+        if (distance < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        ensureCapacity(slot, distance);
+        endDistances[slot * span + distance] += amount;
+        endTotals[slot] += amount;
+    }
+
+    /**
+     * Adds a character occurrence between two characters
+     *
+     * @param from the slot of the preceding character
+     * @param to the slot of the following character
+     * @param distanceTo The distance between the two. Note that this must be
+     * greater than 0.
+     * @param amount the number of occurrences to add, which are ignored if the
+     * distance is beyond the maximum
+     * @throws ArrayIndexOutOfBoundsException When distanceTo is less than 1
+     */
+    public void addCharacterCorrelation(int from, int to, int distanceTo, int amount) {
+        if (distanceTo < 1) {
+            throw new ArrayIndexOutOfBoundsException();
+        } else if (distanceTo > maxDistance) {
+            return;
+        }
+        ensureCapacity(Math.max(from, to), distanceTo - 1);
+        correlations[(from * capacity + to) * depth + distanceTo - 1] += amount;
+    }
+
+    // STAT FETCHING
+    // - getCount
+    // - getCorrelation
+    // - getStartCount
+    // - getEndCount
+    // - getEndProbabilityMass
+    // - hasCorrelations
+    // - getCorrelationList
+    // - getDistancesFromStart
+    // - getDistancesFromEnd
+    /**
+     * @param slot the slot of the character
+     * @return the total number of times the character has been encountered
+     */
+    public int getCount(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            return 0;
+        }
+        return occurrences[slot];
+    }
+
+    /**
+     * Retrieves a single correlation count, returning 0 for anything outside
+     * the tracked range
+     *
+     * @param from the slot of the preceding character
+     * @param to the slot of the following character
+     * @param index the 0-indexed distance, being the distance minus one
+     * @return the number of times to was found index + 1 characters after from
+     */
+    public int getCorrelation(int from, int to, int index) {
+        if (from < 0 || to < 0 || index < 0 || from >= capacity || to >= capacity || index >= depth) {
+            return 0;
+        }
+        return correlations[(from * capacity + to) * depth + index];
+    }
+
+    /**
+     * @param slot the slot of the character
+     * @param distance the distance from the start of a word
+     * @return the number of times the character was found at the distance
+     */
+    public int getStartCount(int slot, int distance) {
+        if (slot < 0 || distance < 0 || slot >= capacity || distance >= span) {
+            return 0;
+        }
+        return startDistances[slot * span + distance];
+    }
+
+    /**
+     * @param slot the slot of the character
+     * @param distance the distance from the end of a word
+     * @return the number of times the character was found at the distance
+     */
+    public int getEndCount(int slot, int distance) {
+        if (slot < 0 || distance < 0 || slot >= capacity || distance >= span) {
+            return 0;
+        }
+        return endDistances[slot * span + distance];
+    }
+
+    /**
+     * Equivalent of OccurrenceList.getProbabilityMass for the distances from
+     * the end of a word, computed without building a list
+     *
+     * @param slot the slot of the character
+     * @param distance the distance from the end of a word
+     * @return the probability of the character being found at the distance
+     */
+    public float getEndProbabilityMass(int slot, int distance) {
+        if (slot < 0 || slot >= capacity || endTotals[slot] == 0) {
+            return 0.0f;
+        }
+        return (float) getEndCount(slot, distance) / endTotals[slot];
+    }
+
+    /**
+     * @param from the slot of the preceding character
+     * @param to the slot of the following character
+     * @return true if to has ever been found after from
+     */
+    public boolean hasCorrelations(int from, int to) {
+        if (from < 0 || to < 0 || from >= capacity || to >= capacity) {
+            return false;
+        }
+        int offset = (from * capacity + to) * depth;
+        for (int i = offset; i < offset + depth; i++) {
+            if (correlations[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param from the slot of the preceding character
+     * @param to the slot of the following character
+     * @return a new OccurrenceList holding a copy of the correlations between
+     * the two characters
+     */
+    public OccurrenceList getCorrelationList(int from, int to) {
+        if (from < 0 || to < 0 || from >= capacity || to >= capacity) {
+            return new OccurrenceList();
+        }
+        return copyOf(correlations, (from * capacity + to) * depth, depth);
+    }
+
+    /**
+     * @param slot the slot of the character
+     * @return a new OccurrenceList holding a copy of the distances between the
+     * character and the start of each tracked word
+     */
+    public OccurrenceList getDistancesFromStart(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            return new OccurrenceList();
+        }
+        return copyOf(startDistances, slot * span, span);
+    }
+
+    /**
+     * @param slot the slot of the character
+     * @return a new OccurrenceList holding a copy of the distances between the
+     * character and the end of each tracked word
+     */
+    public OccurrenceList getDistancesFromEnd(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            return new OccurrenceList();
+        }
+        return copyOf(endDistances, slot * span, span);
+    }
+
+    // STRUCTURE MODIFIERS
+    // - addAll
+    // - reset (2)
+    // - clear
+    // - ensureCapacity
+    /**
+     * Adds every count held by another tensor to this one. Characters are
+     * matched up through the two Alphabets, so the tensors don't need to share
+     * slots, and the source is left untouched.
+     *
+     * @param source the tensor to add from
+     * @return a reference to itself
+     */
+    public CorrelationTensor addAll(CorrelationTensor source) {
+        // TRANSLATE EVERY SLOT OF THE SOURCE, GROWING TO FIT IN ONE GO
+        int sourceSize = Math.min(source.alphabet.size(), source.capacity);
+        int[] slots = new int[sourceSize];
+        int highest = 0;
+        for (int i = 0; i < sourceSize; i++) {
+            slots[i] = (source.alphabet == alphabet ? i : alphabet.add(source.alphabet.charAt(i)));
+            highest = Math.max(highest, slots[i]);
+        }
+        grow(highest, Math.min(source.depth, maxDistance) - 1, source.span - 1);
+
+        int rowLength = Math.min(depth, source.depth);
+        for (int from = 0; from < sourceSize; from++) {
+            int f = slots[from];
+            occurrences[f] += source.occurrences[from];
+            startTotals[f] += source.startTotals[from];
+            endTotals[f] += source.endTotals[from];
+            addRow(source.startDistances, from * source.span, startDistances, f * span, source.span);
+            addRow(source.endDistances, from * source.span, endDistances, f * span, source.span);
+
+            for (int to = 0; to < sourceSize; to++) {
+                addRow(source.correlations, (from * source.capacity + to) * source.depth,
+                        correlations, (f * capacity + slots[to]) * depth, rowLength);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a row of values from one array to another
+     *
+     * @param source the array to add from
+     * @param sourceOffset where the row starts in the source
+     * @param target the array to add to
+     * @param targetOffset where the row starts in the target
+     * @param length the length of the row
+     */
+    private static void addRow(int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] += source[sourceOffset + i];
+        }
+    }
+
+    /**
+     * Resets all the correlations from one character to another
+     *
+     * @param from the slot of the preceding character
+     * @param to the slot of the following character
+     */
+    public void reset(int from, int to) {
+        if (from >= 0 && to >= 0 && from < capacity && to < capacity) {
+            int offset = (from * capacity + to) * depth;
+            java.util.Arrays.fill(correlations, offset, offset + depth, 0);
+        }
+    }
+
+    /**
+     * Resets everything tracked for a single character
+     *
+     * @param slot the slot of the character to reset
+     */
+    public void reset(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            return;
+        }
+        java.util.Arrays.fill(correlations, slot * capacity * depth, (slot + 1) * capacity * depth, 0);
+        java.util.Arrays.fill(startDistances, slot * span, (slot + 1) * span, 0);
+        java.util.Arrays.fill(endDistances, slot * span, (slot + 1) * span, 0);
+        occurrences[slot] = 0;
+        startTotals[slot] = 0;
+        endTotals[slot] = 0;
+    }
+
+    /**
+     * Resets every count back to zero
+     */
+    public void clear() {
+        java.util.Arrays.fill(correlations, 0);
+        java.util.Arrays.fill(startDistances, 0);
+        java.util.Arrays.fill(endDistances, 0);
+        java.util.Arrays.fill(occurrences, 0);
+        java.util.Arrays.fill(startTotals, 0);
+        java.util.Arrays.fill(endTotals, 0);
+    }
+
+    /**
+     * Checks whether a slot and distance already fit without growing. Unlike
+     * ensureCapacity this never writes, so it is safe to call while other
+     * threads are adding to different slots.
+     *
+     * @param slot the slot to check
+     * @param distance the 0-indexed distance to check
+     * @return true if both fit within the current arrays
+     */
+    public boolean hasCapacity(int slot, int distance) {
+        return slot < capacity && distance < span && Math.min(distance, maxDistance - 1) < depth;
+    }
+
+    /**
+     * Grows the internal arrays so that they can hold the provided slot and
+     * distance, doubling each dimension that is too small. Correlations never
+     * grow deeper than the maximum distance.
+     *
+     * @param slot the slot which needs to fit
+     * @param distance the 0-indexed distance which needs to fit
+     */
+    public void ensureCapacity(int slot, int distance) {
+        grow(slot, Math.min(distance, maxDistance - 1), distance);
+    }
+
+    /**
+     * Grows the internal arrays so that they can hold the provided slot,
+     * correlation distance and word position
+     *
+     * @param slot the slot which needs to fit
+     * @param distance the 0-indexed correlation distance which needs to fit
+     * @param position the distance from the start or end of a word which
+     * needs to fit
+     */
+    private void grow(int slot, int distance, int position) {
+        if (slot < capacity && distance < depth && position < span) {
+            return;
+        }
+
+        // REMEMBER THE OLD LAYOUT
+        int oldCapacity = capacity;
+        int oldDepth = depth;
+        int oldSpan = span;
+        int[] oldCorrelations = correlations;
+        int[] oldStarts = startDistances;
+        int[] oldEnds = endDistances;
+        int[] oldOccurrences = occurrences;
+        int[] oldStartTotals = startTotals;
+        int[] oldEndTotals = endTotals;
+
+        allocate(slot < capacity ? capacity : Math.max(capacity * 2, slot + 1),
+                distance < depth ? depth : Math.min(Math.max(depth * 2, distance + 1), Math.max(maxDistance, depth)),
+                position < span ? span : Math.max(span * 2, position + 1));
+
+        // COPY EVERY ROW ACROSS
+        for (int from = 0; from < oldCapacity; from++) {
+            for (int to = 0; to < oldCapacity; to++) {
+                System.arraycopy(oldCorrelations, (from * oldCapacity + to) * oldDepth,
+                        correlations, (from * capacity + to) * depth, oldDepth);
+            }
+            System.arraycopy(oldStarts, from * oldSpan, startDistances, from * span, oldSpan);
+            System.arraycopy(oldEnds, from * oldSpan, endDistances, from * span, oldSpan);
+        }
+        System.arraycopy(oldOccurrences, 0, occurrences, 0, oldCapacity);
+        System.arraycopy(oldStartTotals, 0, startTotals, 0, oldCapacity);
+        System.arraycopy(oldEndTotals, 0, endTotals, 0, oldCapacity);
+    }
+
+    /**
+     * Replaces the internal arrays with empty ones of the provided size
+     *
+     * @param newCapacity the number of slots to make room for
+     * @param newDepth the number of correlation distances to make room for
+     * @param newSpan the number of word positions to make room for
+     * @throws IllegalStateException when the arrays would be too large for
+     * Java to index
+     */
+    private void allocate(int newCapacity, int newDepth, int newSpan) {
+        int size = checkedSize(newCapacity, newCapacity, newDepth);
+        int positions = checkedSize(newCapacity, newSpan, 1);
+        capacity = newCapacity;
+        depth = newDepth;
+        span = newSpan;
+        correlations = new int[size];
+        startDistances = new int[positions];
+        endDistances = new int[positions];
+        occurrences = new int[newCapacity];
+        startTotals = new int[newCapacity];
+        endTotals = new int[newCapacity];
+    }
+
+    /**
+     * Multiplies the dimensions of an array without overflowing
+     *
+     * @param slots the number of slots
+     * @param rows the number of rows per slot
+     * @param length the length of each row
+     * @return the number of elements the array needs
+     * @throws IllegalStateException when the array would be too large for Java
+     * to index
+     */
+    private static int checkedSize(int slots, int rows, int length) {
+        long size = Math.multiplyExact(Math.multiplyExact((long) slots, rows), length);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many correlations to pack (" + slots + " slots, "
+                    + rows + " rows of " + length + "), lower the maximum distance");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Copies a row of the provided array into a new OccurrenceList, dropping
+     * any trailing zeros
+     *
+     * @param array the array to copy from
+     * @param offset the offset of the row
+     * @param rowLength the length of the row
+     * @return a new OccurrenceList with the row's values
+     */
+    private static OccurrenceList copyOf(int[] array, int offset, int rowLength) {
+        int length = rowLength;
+        while (length > 1 && array[offset + length - 1] == 0) {
+            length--;
+        }
+        int[] row = new int[length];
+        System.arraycopy(array, offset, row, 0, length);
+        return new OccurrenceList(row);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Sampler which keeps a running total of the weights and binary searches it
+ * for each draw. It is cheaper to build than an AliasSampler, so it suits
+ * distributions which are only drawn from a handful of times. The static
+ * methods let a caller do the same over an array it owns without creating a
+ * sampler at all.
+ *
+ * The weights are totalled in the order given by an array of slots, normally
+ * Alphabet.getSortedSlots(), rather than in slot order. The running totals
+ * are still stored at the slot of each weight, so a search steps through them
+ * by way of the same order. A StatsCruncher samples with it wherever a
+ * GenerationModel samples running totals, so that both build the same words.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public final class CumulativeSampler implements Sampler {
+
+    // RUNNING TOTAL OF THE WEIGHTS, BY SLOT, AND THE ORDER THEY WERE TOTALLED IN
+    private float[] cumulative;
+    private int[] order;
+
+    /**
+     * Builds a sampler over the values of a map, totalled in the order of
+     * their characters
+     *
+     * @param map the weights to sample, which need not sum to 1.0f
+     */
+    public CumulativeSampler(DenseDecimalCharMap map) {
+        cumulative = map.toArray();
+        order = map.getAlphabet().getSortedSlots(cumulative.length);
+        accumulate(cumulative, order);
+    }
+
+    /**
+     * Builds a sampler over an array of weights. Weights of zero, below zero
+     * or NaN are never picked.
+     *
+     * @param weights the weights to sample, indexed by slot, which need not
+     * sum to 1.0f
+     * @param order the slots to sample, in the order to total them in
+     */
+    public CumulativeSampler(float[] weights, int[] order) {
+        this.cumulative = weights.clone();
+        this.order = order;
+        accumulate(cumulative, order);
+    }
+
+    /**
+     * Builds a sampler over the weights of an array which are above a share of
+     * their total, just as trimming, re-balancing and sampling them would
+     *
+     * @param weights the weights to sample, indexed by slot, which need not
+     * sum to 1.0f
+     * @param order the slots to sample, in the order to total them in
+     * @param threshold the share of the total a weight must be above to be
+     * picked, or 1.0f or more to keep every weight
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    public CumulativeSampler(float[] weights, int[] order, float threshold) {
+        this.cumulative = weights.clone();
+        this.order = order;
+        accumulate(cumulative, order, floor(sum(cumulative, order), threshold));
+    }
+
+    /**
+     * Rebuilds the sampler over a new array of weights, just as the
+     * constructor taking a threshold would, reusing its running totals
+     * whenever they have room. A sampler must not be rebuilt while another
+     * thread may be drawing from it.
+     *
+     * @param weights the weights to sample, indexed by slot, which need not
+     * sum to 1.0f
+     * @param order the slots to sample, in the order to total them in
+     * @param threshold the share of the total a weight must be above to be
+     * picked, or 1.0f or more to keep every weight
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    public void rebuild(float[] weights, int[] order, float threshold) {
+        float floor = floor(sum(weights, order), threshold);
+        if (cumulative.length < weights.length) {
+            cumulative = new float[weights.length];
+        }
+        System.arraycopy(weights, 0, cumulative, 0, weights.length);
+        this.order = order;
+        accumulate(cumulative, order, floor);
+    }
+
+    @Override
+    public int sample(float pick) {
+        return sample(cumulative, order, pick);
+    }
+
+    // STATIC METHODS
+    // - sum
+    // - accumulate (2)
+    // - floor
+    // - sample
+    /**
+     * @param weights the weights to total, indexed by slot
+     * @param order the slots to total, in the order to total them in
+     * @return the total of the weights
+     */
+    public static float sum(float[] weights, int[] order) {
+        float sum = 0.0f;
+        for (int slot : order) {
+            sum += weights[slot];
+        }
+        return sum;
+    }
+
+    /**
+     * Replaces each weight in an array with the running total up to and
+     * including it. Weights of zero, below zero or NaN add nothing.
+     *
+     * @param weights the weights to accumulate, indexed by slot
+     * @param order the slots to accumulate, in the order to total them in
+     * @return the total of all the weights
+     */
+    public static float accumulate(float[] weights, int[] order) {
+        float sum = 0.0f;
+        for (int slot : order) {
+            if (weights[slot] > 0.0f) {
+                sum += weights[slot];
+            }
+            weights[slot] = sum;
+        }
+        return sum;
+    }
+
+    /**
+     * Variant of accumulate(float[], int[]) which also leaves out every weight
+     * at or below a floor, trimming the weights in the same pass. The totals
+     * are not re-balanced, since sample scales its pick by the total anyway.
+     *
+     * @param weights the weights to accumulate, indexed by slot
+     * @param order the slots to accumulate, in the order to total them in
+     * @param floor the weight a slot must be above to be kept
+     * @return the total of the weights kept
+     */
+    public static float accumulate(float[] weights, int[] order, float floor) {
+        float sum = 0.0f;
+        for (int slot : order) {
+            if (weights[slot] > floor && weights[slot] > 0.0f) {
+                sum += weights[slot];
+            }
+            weights[slot] = sum;
+        }
+        return sum;
+    }
+
+    /**
+     * @param sum the total of a set of weights
+     * @param threshold the share of the total a weight must be above to be
+     * kept, or 1.0f or more to keep every weight
+     * @return the floor to accumulate the weights above
+     * @throws IllegalArgumentException when the threshold is 0.0 or less
+     */
+    public static float floor(float sum, float threshold) {
+        if (!(threshold > 0.0f)) {
+            throw new IllegalArgumentException("Threshold must be above 0.0");
+        }
+        return (threshold < 1.0f ? threshold * sum : 0.0f);
+    }
+
+    /**
+     * Picks a slot from an array of running totals
+     *
+     * @param cumulative the running totals, as left by accumulate
+     * @param order the slots, in the order they were accumulated in
+     * @param pick a uniformly distributed random number in the range 0.0-1.0,
+     * exclusive of 1.0
+     * @return the first slot whose running total exceeds the pick's share of
+     * the total, the last slot with a weight if rounding leaves none, or -1
+     * if no slot has a weight above zero
+     */
+    public static int sample(float[] cumulative, int[] order, float pick) {
+        int length = order.length;
+        float total = (length == 0 ? 0.0f : cumulative[order[length - 1]]);
+        if (!(total > 0.0f)) {
+            return -1;
+        }
+
+        // BINARY SEARCH FOR THE FIRST TOTAL ABOVE THE TARGET, WHICH ALWAYS HAS A WEIGHT OF ITS OWN
+        float target = Math.min(pick * total, Math.nextAfter(total, 0.0));
+        int low = 0;
+        int high = length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[order[middle]] > target) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return order[low];
+    }
+}
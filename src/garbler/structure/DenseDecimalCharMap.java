@@ -0,0 +1,379 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import garbler.library.CharMap;
+import java.util.Map.Entry;
+
+/**
+ * Primitive counterpart of BasicDecimalCharMap which stores its values in a
+ * float array indexed by the slots of an Alphabet rather than in a TreeMap. A
+ * character whose value is 0.0f is treated as being absent from the map.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class DenseDecimalCharMap implements Compactable<DenseDecimalCharMap, Float> {
+
+    // THE ALPHABET PROVIDING THE SLOTS
+    private final Alphabet alphabet;
+
+    // VALUES INDEXED BY SLOT
+    private float[] values;
+
+    /**
+     * Basic constructor
+     *
+     * @param alphabet the Alphabet whose slots index this map
+     */
+    public DenseDecimalCharMap(Alphabet alphabet) {
+        this.alphabet = alphabet;
+        values = new float[Math.max(alphabet.size(), 1)];
+    }
+
+    @Override
+    public Float mergeValues(Float oldValue, Float newValue) {
+        return oldValue + newValue;
+    }
+
+    // DATA STRUCTURE
+    // - getAlphabet
+    // - slots
+    // - get (2)
+    // - put (2)
+    // - increment (2)
+    // - reset
+    // - clear
+    /**
+     * @return the Alphabet whose slots index this map
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the number of slots which may currently hold a value. Every slot
+     * at or above this is guaranteed to be 0.0f.
+     */
+    public int slots() {
+        return Math.min(values.length, alphabet.size());
+    }
+
+    /**
+     * @param c the character key to get
+     * @return the value held at the key, or 0.0f if there is none
+     */
+    public float get(char c) {
+        return getAt(alphabet.indexOf(c));
+    }
+
+    /**
+     * @param slot the slot to get
+     * @return the value held at the slot, or 0.0f if there is none
+     */
+    public float getAt(int slot) {
+        if (slot < 0 || slot >= values.length) {
+            return 0.0f;
+        }
+        return values[slot];
+    }
+
+    /**
+     * Sets the value held at a key, adding the key to the Alphabet if needed
+     *
+     * @param c the character key to set
+     * @param value the new value
+     */
+    public void put(char c, float value) {
+        putAt(alphabet.add(c), value);
+    }
+
+    /**
+     * Sets the value held at a slot
+     *
+     * @param slot the slot to set
+     * @param value the new value
+     */
+    public void putAt(int slot, float value) {
+        ensureCapacity(slot);
+        values[slot] = value;
+    }
+
+    /**
+     * Increments the count at a certain key, adding the key to the Alphabet if
+     * needed
+     *
+     * @param c the character key to get
+     * @param quantity the amount to increment by
+     * @return the new value held at the provided key
+     */
+    public float increment(char c, float quantity) {
+        return incrementAt(alphabet.add(c), quantity);
+    }
+
+    /**
+     * Increments the count at a certain slot
+     *
+     * @param slot the slot to increment
+     * @param quantity the amount to increment by
+     * @return the new value held at the provided slot
+     */
+    public float incrementAt(int slot, float quantity) {
+        ensureCapacity(slot);
+        return (values[slot] += quantity);
+    }
+
+    /**
+     * Resets the value at a given key to 0.0f
+     *
+     * @param c the character key to reset
+     */
+    public void reset(char c) {
+        int slot = alphabet.indexOf(c);
+        if (slot >= 0 && slot < values.length) {
+            values[slot] = 0.0f;
+        }
+    }
+
+    /**
+     * Resets every value back to 0.0f
+     */
+    public void clear() {
+        java.util.Arrays.fill(values, 0.0f);
+    }
+
+    // ADDITIONAL METHODS
+    // - getSum
+    // - toIntegerMap
+    // - toCharMap
+    // - toArray
+    // - fromCharMap
+    // - compact
+    // - addAll
+    /**
+     * Method to get the sum of all the internally held values, added up in the
+     * order of their characters
+     *
+     * @return a float representation of the sum of all internal values
+     */
+    public float getSum() {
+        float sum = 0.0f;
+        for (int slot : alphabet.getSortedSlots(slots())) {
+            sum += values[slot];
+        }
+        return sum;
+    }
+
+    /**
+     * Conversion method from float to integer
+     *
+     * @return a new map of equivalent integers sharing this map's Alphabet
+     */
+    public DenseIntegerCharMap toIntegerMap() {
+        DenseIntegerCharMap map = new DenseIntegerCharMap(alphabet);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0.0f) {
+                map.putAt(i, (int) values[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Conversion method to the TreeMap-based representation
+     *
+     * @return a new BasicDecimalCharMap holding every non-zero value
+     */
+    public BasicDecimalCharMap toCharMap() {
+        BasicDecimalCharMap map = new BasicDecimalCharMap(alphabet.isCaseSensitive());
+        for (int i = 0; i < slots(); i++) {
+            if (values[i] != 0.0f) {
+                map.put(alphabet.charAt(i), values[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Conversion method to a plain array
+     *
+     * @return a copy of the value held at every slot below slots()
+     */
+    public float[] toArray() {
+        float[] array = new float[slots()];
+        System.arraycopy(values, 0, array, 0, array.length);
+        return array;
+    }
+
+    /**
+     * Conversion method from the TreeMap-based representation
+     *
+     * @param map the map to convert
+     * @param alphabet the Alphabet to index the new map by. Characters missing
+     * from it are added.
+     * @return a new DenseDecimalCharMap holding every value in map
+     */
+    public static DenseDecimalCharMap fromCharMap(CharMap<Float> map, Alphabet alphabet) {
+        DenseDecimalCharMap dense = new DenseDecimalCharMap(alphabet);
+        for (Entry<Character, Float> entry : map.entrySet()) {
+            dense.increment(entry.getKey(), entry.getValue());
+        }
+        return dense;
+    }
+
+    /**
+     * Reassigns the values held by uppercase characters to their lowercase
+     * variants, merging the two where both exist
+     */
+    @Override
+    public void compact() {
+        for (int i = 0; i < slots(); i++) {
+            char c = alphabet.charAt(i);
+            if (values[i] != 0.0f && Character.isUpperCase(c)) {
+                int lower = alphabet.add(Character.toLowerCase(c));
+                ensureCapacity(lower);
+                values[lower] += values[i];
+                values[i] = 0.0f;
+            }
+        }
+    }
+
+    @Override
+    public DenseDecimalCharMap addAll(DenseDecimalCharMap source) {
+        if (source.alphabet == alphabet) {
+            // SAME SLOTS SO JUST ADD THE ARRAYS
+            ensureCapacity(source.values.length - 1);
+            for (int i = 0; i < source.values.length; i++) {
+                values[i] += source.values[i];
+            }
+        } else {
+            for (int i = 0; i < source.slots(); i++) {
+                if (source.values[i] != 0.0f) {
+                    increment(source.alphabet.charAt(i), source.values[i]);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Grows the internal array so that it can hold the provided slot
+     *
+     * @param slot the slot which needs to fit
+     */
+    private void ensureCapacity(int slot) {
+        if (slot >= values.length) {
+            float[] temp = new float[Math.max(slot + 1, alphabet.size())];
+            System.arraycopy(values, 0, temp, 0, values.length);
+            values = temp;
+        }
+    }
+
+    // STATIC METHODS
+    // - rebalanceMap
+    // - rebalanceValues
+    // - trimMap
+    // - trimValues
+    /**
+     * Method to equalize or re-balance a decimal map so that the sum of its
+     * values equals 1.0f while still keeping in proportion to each other.
+     *
+     * @param map a map of decimal point values to equalize
+     */
+    public static void rebalanceMap(DenseDecimalCharMap map) {
+        rebalanceValues(map.values, map.alphabet.getSortedSlots(map.slots()));
+    }
+
+    /**
+     * Variant of rebalanceMap(DenseDecimalCharMap) for a plain array of
+     * values, such as one reused between calls
+     *
+     * @param values the values to equalize, indexed by slot
+     * @param order the slots to equalize, in the order to total them in
+     */
+    public static void rebalanceValues(float[] values, int[] order) {
+        // TAKE THE TOTAL SUM
+        float sum = 0.0f;
+        for (int slot : order) {
+            sum += values[slot];
+        }
+        // DIVIDE BY SUM TO EQUALIZE
+        for (int slot : order) {
+            values[slot] /= sum;
+        }
+    }
+
+    /**
+     * Method to trim any low-valued items inside a dense decimal map. A
+     * low-valued item is one which is below the threshold percentage of the
+     * total.
+     *
+     * @param map the map to trim
+     * @param threshold the lower threshold of acceptable values
+     * @return the number of deleted items
+     * @throws IllegalArgumentException when the threshold is not between 0.0
+     * and 1.0
+     */
+    public static int trimMap(DenseDecimalCharMap map, float threshold) {
+        return trimValues(map.values, map.alphabet.getSortedSlots(map.slots()), threshold);
+    }
+
+    /**
+     * Variant of trimMap(DenseDecimalCharMap, float) for a plain array of
+     * values, such as one reused between calls
+     *
+     * @param values the values to trim, indexed by slot
+     * @param order the slots to trim, in the order to total them in
+     * @param threshold the lower threshold of acceptable values
+     * @return the number of zeroed values
+     * @throws IllegalArgumentException when the threshold is not between 0.0
+     * and 1.0
+     */
+    public static int trimValues(float[] values, int[] order, float threshold) {
+        if (threshold <= 0.0f || threshold >= 1.0f) {
+            throw new IllegalArgumentException("Threshold must be between 0.0 and 1.0");
+        }
+
+        // FIND THE SUM
+        float sum = 0.0f;
+        for (int slot : order) {
+            sum += values[slot];
+        }
+
+        // ZERO OUT LOW-VALUED ENTRIES
+        int removed = 0;
+        float thresholdAdjusted = threshold * sum;
+        for (int slot : order) {
+            if (values[slot] != 0.0f && values[slot] <= thresholdAdjusted) {
+                values[slot] = 0.0f;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return toCharMap().toString();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Primitive counterpart of BasicIntegerCharMap which stores its values in an
+ * int array indexed by the slots of an Alphabet rather than in a TreeMap. A
+ * character whose value is 0 is treated as being absent from the map.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class DenseIntegerCharMap implements Compactable<DenseIntegerCharMap, Integer> {
+
+    // THE ALPHABET PROVIDING THE SLOTS
+    private final Alphabet alphabet;
+
+    // VALUES INDEXED BY SLOT
+    private int[] values;
+
+    /**
+     * Basic constructor
+     *
+     * @param alphabet the Alphabet whose slots index this map
+     */
+    public DenseIntegerCharMap(Alphabet alphabet) {
+        this.alphabet = alphabet;
+        values = new int[Math.max(alphabet.size(), 1)];
+    }
+
+    @Override
+    public Integer mergeValues(Integer oldValue, Integer newValue) {
+        return oldValue + newValue;
+    }
+
+    // DATA STRUCTURE
+    // - getAlphabet
+    // - slots
+    // - get (2)
+    // - put (2)
+    // - increment (2)
+    // - reset
+    // - clear
+    /**
+     * @return the Alphabet whose slots index this map
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the number of slots which may currently hold a value. Every slot
+     * at or above this is guaranteed to be 0.
+     */
+    public int slots() {
+        return Math.min(values.length, alphabet.size());
+    }
+
+    /**
+     * @param c the character key to get
+     * @return the value held at the key, or 0 if there is none
+     */
+    public int get(char c) {
+        return getAt(alphabet.indexOf(c));
+    }
+
+    /**
+     * @param slot the slot to get
+     * @return the value held at the slot, or 0 if there is none
+     */
+    public int getAt(int slot) {
+        if (slot < 0 || slot >= values.length) {
+            return 0;
+        }
+        return values[slot];
+    }
+
+    /**
+     * Sets the value held at a key, adding the key to the Alphabet if needed
+     *
+     * @param c the character key to set
+     * @param value the new value
+     */
+    public void put(char c, int value) {
+        putAt(alphabet.add(c), value);
+    }
+
+    /**
+     * Sets the value held at a slot
+     *
+     * @param slot the slot to set
+     * @param value the new value
+     */
+    public void putAt(int slot, int value) {
+        ensureCapacity(slot);
+        values[slot] = value;
+    }
+
+    /**
+     * Increments the count at a certain key, adding the key to the Alphabet if
+     * needed
+     *
+     * @param c the character key to get
+     * @param quantity the amount to increment by
+     * @return the new value held at the provided key
+     */
+    public int increment(char c, int quantity) {
+        return incrementAt(alphabet.add(c), quantity);
+    }
+
+    /**
+     * Increments the count at a certain slot
+     *
+     * @param slot the slot to increment
+     * @param quantity the amount to increment by
+     * @return the new value held at the provided slot
+     */
+    public int incrementAt(int slot, int quantity) {
+        ensureCapacity(slot);
+        return (values[slot] += quantity);
+    }
+
+    /**
+     * Resets the value at a given key to 0
+     *
+     * @param c the character key to reset
+     */
+    public void reset(char c) {
+        int slot = alphabet.indexOf(c);
+        if (slot >= 0 && slot < values.length) {
+            values[slot] = 0;
+        }
+    }
+
+    /**
+     * Resets every value back to 0
+     */
+    public void clear() {
+        java.util.Arrays.fill(values, 0);
+    }
+
+    // ADDITIONAL METHODS
+    // - getSum
+    // - toDecimalMap
+    // - toCharMap
+    // - compact
+    // - addAll
+    /**
+     * Method to get the sum of all the internally held values
+     *
+     * @return an integer representation of the sum of all internal values
+     */
+    public int getSum() {
+        int sum = 0;
+        for (int i : values) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    /**
+     * Conversion method from integer to float
+     *
+     * @return a new map of equivalent floats sharing this map's Alphabet
+     */
+    public DenseDecimalCharMap toDecimalMap() {
+        DenseDecimalCharMap map = new DenseDecimalCharMap(alphabet);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                map.putAt(i, values[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Conversion method to the TreeMap-based representation
+     *
+     * @return a new BasicIntegerCharMap holding every non-zero value
+     */
+    public BasicIntegerCharMap toCharMap() {
+        BasicIntegerCharMap map = new BasicIntegerCharMap(alphabet.isCaseSensitive());
+        for (int i = 0; i < slots(); i++) {
+            if (values[i] != 0) {
+                map.put(alphabet.charAt(i), values[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Reassigns the values held by uppercase characters to their lowercase
+     * variants, merging the two where both exist
+     */
+    @Override
+    public void compact() {
+        for (int i = 0; i < slots(); i++) {
+            char c = alphabet.charAt(i);
+            if (values[i] != 0 && Character.isUpperCase(c)) {
+                int lower = alphabet.add(Character.toLowerCase(c));
+                ensureCapacity(lower);
+                values[lower] += values[i];
+                values[i] = 0;
+            }
+        }
+    }
+
+    @Override
+    public DenseIntegerCharMap addAll(DenseIntegerCharMap source) {
+        if (source.alphabet == alphabet) {
+            // SAME SLOTS SO JUST ADD THE ARRAYS
+            ensureCapacity(source.values.length - 1);
+            for (int i = 0; i < source.values.length; i++) {
+                values[i] += source.values[i];
+            }
+        } else {
+            for (int i = 0; i < source.slots(); i++) {
+                if (source.values[i] != 0) {
+                    increment(source.alphabet.charAt(i), source.values[i]);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Grows the internal array so that it can hold the provided slot
+     *
+     * @param slot the slot which needs to fit
+     */
+    private void ensureCapacity(int slot) {
+        if (slot >= values.length) {
+            int[] temp = new int[Math.max(slot + 1, alphabet.size())];
+            System.arraycopy(values, 0, temp, 0, values.length);
+            values = temp;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toCharMap().toString();
+    }
+}
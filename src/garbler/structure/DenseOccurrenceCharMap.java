@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Counterpart of OccurrenceCharMap which stores its OccurrenceLists in an
+ * array indexed by the slots of an Alphabet rather than in a TreeMap. A slot
+ * without a list is treated as being absent from the map.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class DenseOccurrenceCharMap implements Compactable<DenseOccurrenceCharMap, OccurrenceList> {
+
+    // THE ALPHABET PROVIDING THE SLOTS
+    private final Alphabet alphabet;
+
+    // LISTS INDEXED BY SLOT
+    private OccurrenceList[] values;
+
+    /**
+     * Basic constructor
+     *
+     * @param alphabet the Alphabet whose slots index this map
+     */
+    public DenseOccurrenceCharMap(Alphabet alphabet) {
+        this.alphabet = alphabet;
+        values = new OccurrenceList[Math.max(alphabet.size(), 1)];
+    }
+
+    @Override
+    public OccurrenceList mergeValues(OccurrenceList oldValue, OccurrenceList newValue) {
+        return oldValue.addAll(newValue);
+    }
+
+    // DATA STRUCTURE
+    // - getAlphabet
+    // - slots
+    // - get (2)
+    // - put (2)
+    // - increment
+    // - clear
+    /**
+     * @return the Alphabet whose slots index this map
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the number of slots which may currently hold a list. Every slot
+     * at or above this is guaranteed to be empty.
+     */
+    public int slots() {
+        return Math.min(values.length, alphabet.size());
+    }
+
+    /**
+     * @param c the character key to get
+     * @return the list held at the key, or null if there is none
+     */
+    public OccurrenceList get(char c) {
+        return getAt(alphabet.indexOf(c));
+    }
+
+    /**
+     * @param slot the slot to get
+     * @return the list held at the slot, or null if there is none
+     */
+    public OccurrenceList getAt(int slot) {
+        if (slot < 0 || slot >= values.length) {
+            return null;
+        }
+        return values[slot];
+    }
+
+    /**
+     * Sets the list held at a key, adding the key to the Alphabet if needed
+     *
+     * @param c the character key to set
+     * @param list the new list
+     */
+    public void put(char c, OccurrenceList list) {
+        putAt(alphabet.add(c), list);
+    }
+
+    /**
+     * Sets the list held at a slot
+     *
+     * @param slot the slot to set
+     * @param list the new list
+     */
+    public void putAt(int slot, OccurrenceList list) {
+        ensureCapacity(slot);
+        values[slot] = list;
+    }
+
+    /**
+     * Increments the count of the list held at a slot, making the list if
+     * necessary
+     *
+     * @param slot the slot to increment
+     * @param index the index within the list to increment
+     * @param amount the amount to increment by
+     * @return the new count held at the index
+     */
+    public int incrementAt(int slot, int index, int amount) {
+        ensureCapacity(slot);
+        OccurrenceList list = values[slot];
+        if (list == null) {
+            list = new OccurrenceList(index + 1);
+            values[slot] = list;
+        }
+        return list.increment(index, amount);
+    }
+
+    /**
+     * Removes every list from the map
+     */
+    public void clear() {
+        java.util.Arrays.fill(values, null);
+    }
+
+    // ADDITIONAL METHODS
+    // - toCharMap
+    // - compact
+    // - addAll
+    /**
+     * Conversion method to the TreeMap-based representation
+     *
+     * @return a new OccurrenceCharMap holding every list in this map
+     */
+    public OccurrenceCharMap toCharMap() {
+        OccurrenceCharMap map = new OccurrenceCharMap(alphabet.isCaseSensitive());
+        for (int i = 0; i < slots(); i++) {
+            if (values[i] != null) {
+                map.put(alphabet.charAt(i), values[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Reassigns the lists held by uppercase characters to their lowercase
+     * variants, merging the two where both exist
+     */
+    @Override
+    public void compact() {
+        for (int i = 0; i < slots(); i++) {
+            char c = alphabet.charAt(i);
+            if (values[i] != null && Character.isUpperCase(c)) {
+                int lower = alphabet.add(Character.toLowerCase(c));
+                ensureCapacity(lower);
+                if (values[lower] == null) {
+                    values[lower] = values[i];
+                } else if (values[lower] != values[i]) {
+                    values[lower] = mergeValues(values[lower], values[i]);
+                }
+                values[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public DenseOccurrenceCharMap addAll(DenseOccurrenceCharMap source) {
+        for (int i = 0; i < source.slots(); i++) {
+            OccurrenceList list = source.values[i];
+            if (list == null) {
+                continue;
+            }
+            int slot = (source.alphabet == alphabet ? i : alphabet.add(source.alphabet.charAt(i)));
+            ensureCapacity(slot);
+            if (values[slot] == null) {
+                values[slot] = list;
+            } else if (values[slot] != list) {
+                values[slot] = mergeValues(values[slot], list);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Grows the internal array so that it can hold the provided slot
+     *
+     * @param slot the slot which needs to fit
+     */
+    private void ensureCapacity(int slot) {
+        if (slot >= values.length) {
+            OccurrenceList[] temp = new OccurrenceList[Math.max(slot + 1, alphabet.size())];
+            System.arraycopy(values, 0, temp, 0, values.length);
+            values = temp;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toCharMap().toString();
+    }
+}
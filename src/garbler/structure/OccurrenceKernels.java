@@ -0,0 +1,280 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * The bulk loops behind the statistics and searches of an OccurrenceList. This
+ * class runs them one element at a time and works on any JVM; when the
+ * jdk.incubator.vector module is present at runtime, select() hands out a
+ * VectorOccurrenceKernels instead, which runs the same loops over whole
+ * vectors of elements with identical results.
+ *
+ * @author Rogue <Alice Q.>
+ */
+class OccurrenceKernels {
+
+    // NAME OF THE VECTOR IMPLEMENTATION, LOADED BY NAME SO THAT NOTHING ELSE
+    // LINKS AGAINST THE INCUBATOR MODULE
+    private static final String VECTOR_KERNELS = "garbler.structure.VectorOccurrenceKernels";
+
+    // RUNNING SUMS KEPT BY A DOT PRODUCT, WHICH THE VECTOR KERNELS KEEP AS LANES OF ONE VECTOR
+    static final int DOT_LANES = 8;
+
+    /**
+     * Picks the fastest kernels the running JVM supports
+     *
+     * @return the vector kernels if jdk.incubator.vector can be loaded,
+     * otherwise the scalar ones
+     */
+    static OccurrenceKernels select() {
+        try {
+            return (OccurrenceKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // MODULE MISSING OR THE SPECIES UNSUPPORTED, SO STAY SCALAR
+            return new OccurrenceKernels();
+        }
+    }
+
+    // KERNELS
+    // - isVectorized
+    // - sum
+    // - sumOfSquares
+    // - max
+    // - min
+    // - minPositive
+    // - count
+    // - dot
+    // - add
+    // - indexOf
+    // - lastIndexOf
+    // - indexOfNonzero
+    // - lastIndexOfNonzero
+    /**
+     * @return true if these kernels run over vectors of elements
+     */
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * @param values the array to read
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the sum of the values in range, wrapping around on overflow
+     */
+    int sum(int[] values, int from, int to) {
+        int sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param values the array to read
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the sum of the squares of the values in range
+     */
+    long sumOfSquares(int[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (long) values[i] * values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param values the array to read
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the highest value in range, or Integer.MIN_VALUE if it is empty
+     */
+    int max(int[] values, int from, int to) {
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @param values the array to read
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the lowest value in range, or Integer.MAX_VALUE if it is empty
+     */
+    int min(int[] values, int from, int to) {
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    /**
+     * @param values the array to read
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the lowest value above zero in range, or Integer.MAX_VALUE if
+     * there is none
+     */
+    int minPositive(int[] values, int from, int to) {
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            if (values[i] > 0) {
+                min = Math.min(min, values[i]);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @param values the array to read
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @param value the value to count
+     * @return the number of indeces in range holding the value
+     */
+    int count(int[] values, int from, int to, int value) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (values[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Dot product of a run of values with a vector of weights. The products
+     * are added into DOT_LANES running sums, one for each index modulo
+     * DOT_LANES, so that no addition waits on the one before it. The sums are
+     * then added together in order, and whatever is left past the last full
+     * set is added on one element at a time, so a run shorter than DOT_LANES
+     * is added in plain order from its first element.
+     *
+     * @param values the values to read from index 0
+     * @param weights the weight of each value, by index
+     * @param length the number of values to read
+     * @return the weighted sum of the values
+     */
+    float dot(int[] values, float[] weights, int length) {
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f, s4 = 0.0f, s5 = 0.0f, s6 = 0.0f, s7 = 0.0f;
+        int i = 0;
+        for (; i + DOT_LANES <= length; i += DOT_LANES) {
+            s0 += weights[i] * values[i];
+            s1 += weights[i + 1] * values[i + 1];
+            s2 += weights[i + 2] * values[i + 2];
+            s3 += weights[i + 3] * values[i + 3];
+            s4 += weights[i + 4] * values[i + 4];
+            s5 += weights[i + 5] * values[i + 5];
+            s6 += weights[i + 6] * values[i + 6];
+            s7 += weights[i + 7] * values[i + 7];
+        }
+        float sum = s0 + s1 + s2 + s3 + s4 + s5 + s6 + s7;
+        for (; i < length; i++) {
+            sum += weights[i] * values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Adds one array onto another, element by element. The two arrays may be
+     * the same one.
+     *
+     * @param target the array to add onto
+     * @param values the values to add
+     * @param length the number of elements to add
+     */
+    void add(int[] target, int[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] += values[i];
+        }
+    }
+
+    /**
+     * @param values the array to search
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @param value the value to search for
+     * @return the first index in range holding the value, or -1
+     */
+    int indexOf(int[] values, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param values the array to search
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @param value the value to search for
+     * @return the last index in range holding the value, or -1
+     */
+    int lastIndexOf(int[] values, int from, int to, int value) {
+        for (int i = to - 1; i >= from; i--) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param values the array to search
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the first index in range holding something other than zero, or
+     * -1
+     */
+    int indexOfNonzero(int[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (values[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param values the array to search
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the last index in range holding something other than zero, or
+     * -1
+     */
+    int lastIndexOfNonzero(int[] values, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (values[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
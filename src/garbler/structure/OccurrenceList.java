@@ -24,10 +24,18 @@
 package garbler.structure;
 
 import garbler.library.SearchPhrase;
+import java.util.Arrays;
 
 /**
  * List which tracks the number of occurrences of an event at different times
  *
+ * Alongside its total the list keeps the sum of squares, the highest count and
+ * the number of nonzero counts, so the statistics built on them answer in
+ * constant time. Every change keeps them exact as it goes: a single count in
+ * constant time, and a bulk change in time linear in the counts it touches.
+ * The one exception is the highest count going down, after which the rest of
+ * the list is scanned for the new highest as part of the same change.
+ *
  * @author Rogue <Alice Q>
  */
 public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAccess, java.lang.Comparable<OccurrenceList> {
@@ -38,6 +46,15 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
     // TOTAL AMOUNT OF ENTRIES SINCE IT'S FREQUENTLY CALCULATED
     private int total = 0;
 
+    // RUNNING AGGREGATES BEHIND THE STATISTICS, KEPT UP TO DATE BY EVERY
+    // CHANGE. THE HIGHEST COUNT NEVER GOES BELOW 0, JUST AS getMax NEVER DID
+    private long sumOfSquares = 0;
+    private int max = 0;
+    private int nonzero = 0;
+
+    // BULK LOOPS, VECTORIZED WHEN THE JVM HAS jdk.incubator.vector
+    private static final OccurrenceKernels KERNELS = OccurrenceKernels.select();
+
     // CONSTRUCTORS
     /**
      * Basic constructor
@@ -68,8 +85,11 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
             if (i < 0) {
                 throw new IllegalArgumentException("Negative values not allowed");
             }
-            total += i;
         }
+        total = KERNELS.sum(map, 0, map.length);
+        sumOfSquares = KERNELS.sumOfSquares(map, 0, map.length);
+        max = Math.max(0, KERNELS.max(map, 0, map.length));
+        nonzero = map.length - KERNELS.count(map, 0, map.length, 0);
     }
 
     // DATA STRUCTURE
@@ -81,6 +101,7 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
     // - getSafe
     // - getTotal
     // - getSum
+    // - getWeightedSum
     // - size
     // - values
     // - addAll (2)
@@ -111,7 +132,10 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
             resize(index + 1);
         }
         total += amount;
-        return (map[index] += amount);
+        int count = map[index];
+        map[index] += amount;
+        summarize(count, map[index]);
+        return map[index];
     }
 
     /**
@@ -125,20 +149,25 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
             throw new ArrayIndexOutOfBoundsException();
         }
         total -= map[index];
+        int count = map[index];
         map[index] = 0;
+        summarize(count, 0);
     }
 
     /**
      * Resets all the counts back to zero
      */
     public void clear() {
-        for (int i = 0; i < map.length; i++) {
-            map[i] = 0;
-        }
+        Arrays.fill(map, 0);
+        total = 0;
+        sumOfSquares = 0;
+        max = 0;
+        nonzero = 0;
     }
 
     /**
-     * Resizes the internal data structure to the new size limit
+     * Resizes the internal data structure to the new size limit. Shrinking it
+     * takes the counts cut off the end out of the statistics.
      *
      * @param newSize the new size to resize the structure to
      */
@@ -147,10 +176,18 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
             return;
         }
 
+        // COUNTS CUT OFF THE END NO LONGER COUNT TOWARDS ANYTHING
         int[] temp = new int[newSize];
         System.arraycopy(map, 0, temp, 0, Math.min(map.length, newSize));
+        if (newSize < map.length) {
+            total -= KERNELS.sum(map, newSize, map.length);
+            sumOfSquares -= KERNELS.sumOfSquares(map, newSize, map.length);
+            nonzero -= (map.length - newSize) - KERNELS.count(map, newSize, map.length, 0);
+            if (max > 0 && KERNELS.max(map, newSize, map.length) == max) {
+                max = Math.max(0, KERNELS.max(temp, 0, newSize));
+            }
+        }
         map = temp;
-
     }
 
     /**
@@ -190,16 +227,28 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
     }
 
     /**
-     * Method to retrieve the net sum of every entry in the list
+     * Method to retrieve the net sum of every entry in the list, which is the
+     * same as the total
      *
      * @return the sum of all the entries
      */
     public int getSum() {
-        int sum = 0;
-        for (int i : map) {
-            sum += i;
-        }
-        return sum;
+        return total;
+    }
+
+    /**
+     * Method to retrieve the dot product of the entries with a vector of
+     * weights, such as the geometric weights of the character aging algorithm.
+     * The products are added forwards into several running sums by the
+     * kernels, so a list of fewer than eight entries is added in plain order
+     * from the first entry.
+     *
+     * @param weights the weight of each entry, by index. Entries past the end
+     * of the weights are left out.
+     * @return the weighted sum of the entries
+     */
+    public float getWeightedSum(float[] weights) {
+        return KERNELS.dot(map, weights, Math.min(map.length, weights.length));
     }
 
     /**
@@ -227,12 +276,14 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
      * @return a reference to itself
      */
     public OccurrenceList addAll(OccurrenceList list) {
-        return addAll(list.values());
+        // NO NEED FOR A SAFE COPY, THE VALUES ARE ONLY READ
+        return addAll(list.map);
     }
 
     /**
      * Merges the values held internally with a new array of values by adding up
-     * all their values, resizing itself if needed
+     * all their values, resizing itself if needed. The statistics are brought
+     * up to date over the merged range only.
      *
      * @param values An array of int values to addAll with
      * @return a reference to itself
@@ -244,9 +295,24 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
             System.arraycopy(map, 0, temp, 0, map.length);
             map = temp;
         }
-        // AND ADD ALL THE VALUES
-        for (int i = 0; i < values.length; i++) {
-            map[i] += values[i];
+        int length = values.length;
+
+        // TAKE THE MERGED RANGE OUT OF THE AGGREGATES, ADD THE VALUES AND PUT
+        // IT BACK IN. THE SUM IS TAKEN FIRST SINCE THE VALUES MAY BE THIS
+        // LIST'S OWN
+        total += KERNELS.sum(values, 0, length);
+        sumOfSquares -= KERNELS.sumOfSquares(map, 0, length);
+        nonzero -= length - KERNELS.count(map, 0, length, 0);
+        boolean heldMax = (max > 0 && KERNELS.max(map, 0, length) == max);
+        KERNELS.add(map, values, length);
+        sumOfSquares += KERNELS.sumOfSquares(map, 0, length);
+        nonzero += length - KERNELS.count(map, 0, length, 0);
+        int merged = KERNELS.max(map, 0, length);
+        if (merged >= max) {
+            max = Math.max(0, merged);
+        } else if (heldMax) {
+            // NEGATIVE VALUES TOOK DOWN THE HIGHEST COUNT, SO LOOK PAST THE RANGE TOO
+            max = Math.max(0, Math.max(merged, KERNELS.max(map, length, map.length)));
         }
 
         return this;
@@ -352,9 +418,7 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
      * bounds
      */
     public int findIndexOf(SearchPhrase searchRule, SearchPhrase searchTerm, int index, int amount) {
-        int start;
-        int step;
-        int stop;
+        boolean forwards;
 
         // MAKE SURE THE BOUNDS ARE WITHIN RANGE
         if (index < 0 || index + amount > map.length) {
@@ -367,58 +431,56 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
         // SET THE CONDITIONS FOR SEARCH ORDER
         switch (searchRule) {
             case FIND_FIRST:
-                start = index;
-                step = 1;
-                stop = index + amount;
+                forwards = true;
                 break;
             case FIND_LAST:
-                start = index + amount - 1;
-                step = -1;
-                stop = index - 1;
+                forwards = false;
                 break;
             default:
                 throw new IllegalArgumentException("Invalid rule parameter passed to search");
         }
 
-        // START SEARCHING
-        int match = -1;
-        for (int i = start; i != stop; i += step) {
-            switch (searchTerm) {
-                case MAX_VALUE:
-                    if (match < 0 || map[i] > map[match]) {
-                        match = i;
-                    }
-                    break;
-                case MIN_VALUE:
-                    if (map[i] == 0) {
-                        return i;
-                    } else if (match < 0 || map[i] < map[match]) {
-                        match = i;
-                    }
-                    break;
-                case MIN_NONZERO_VALUE:
-                    if (map[i] == 1) {
-                        return i;
-                    } else if (map[i] > 0 && (match < 0 || map[i] < map[match])) {
-                        match = i;
-                    }
-                    break;
-                case NONZERO_VALUE:
-                    if (map[i] != 0) {
-                        return i;
+        // EVERY TERM COMES DOWN TO FINDING A VALUE, SO PICK THE VALUE ONCE AND
+        // LEAVE THE SCANNING TO THE KERNELS
+        int end = index + amount;
+        switch (searchTerm) {
+            case MAX_VALUE:
+                // THE FIRST MAXIMUM MET IN SEARCH ORDER
+                return findIndexOf(forwards, KERNELS.max(map, index, end), index, end);
+            case MIN_VALUE:
+                // THE FIRST MINIMUM MET, UNLESS A ZERO IS MET FIRST. ZERO IS
+                // THE MINIMUM ANYWAY UNLESS SOMETHING WAS DECREMENTED BELOW IT
+                int min = KERNELS.min(map, index, end);
+                if (min < 0) {
+                    int zero = findIndexOf(forwards, 0, index, end);
+                    if (zero >= 0) {
+                        return zero;
                     }
-                    break;
-                case ZERO_VALUE:
-                    if (map[i] == 0) {
-                        return i;
-                    }
-                    break;
-                default:
-                    throw new IllegalArgumentException("Invalid search parameter passed to search");
-            }
+                }
+                return findIndexOf(forwards, min, index, end);
+            case MIN_NONZERO_VALUE:
+                // A ONE IS ALWAYS THE LOWEST NONZERO VALUE
+                return findIndexOf(forwards, KERNELS.minPositive(map, index, end), index, end);
+            case NONZERO_VALUE:
+                return (forwards ? KERNELS.indexOfNonzero(map, index, end) : KERNELS.lastIndexOfNonzero(map, index, end));
+            case ZERO_VALUE:
+                return findIndexOf(forwards, 0, index, end);
+            default:
+                throw new IllegalArgumentException("Invalid search parameter passed to search");
         }
+    }
 
-        return match;
+    /**
+     * Finds a value within a range in either direction
+     *
+     * @param forwards true to find the first match, false to find the last
+     * @param value the value to find
+     * @param from the first index of the range, inclusive
+     * @param to the last index of the range, exclusive
+     * @return the index of the match, or -1 if none was found
+     */
+    private int findIndexOf(boolean forwards, int value, int from, int to) {
+        return (forwards ? KERNELS.indexOf(map, from, to, value) : KERNELS.lastIndexOf(map, from, to, value));
     }
 
     /**
@@ -440,6 +502,7 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
     // - getMin
     // - getNonzeroMin
     // - getNumberOf
+    // - getNonzeroCount
     // - getAverage 
     // - getMedian
     // - getVariance
@@ -449,43 +512,22 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
      * @return the highest value in the set
      */
     public int getMax() {
-        int max = 0;
-        for (int i : map) {
-            if (i > max) {
-                max = i;
-            }
-        }
         return max;
     }
 
     /**
-     * @return the lowest value in the set
+     * @return the lowest value in the set, or 0 if it is empty
      */
     public int getMin() {
-        int min = 0;
-        for (int i : map) {
-            if (i == 0) {
-                return 0;
-            } else if (i < min) {
-                min = i;
-            }
-        }
-        return min;
+        return (map.length == 0 ? 0 : KERNELS.min(map, 0, map.length));
     }
 
     /**
-     * @return the lowest non-zero value in the set
+     * @return the lowest non-zero value in the set, or 0 if there is none
      */
     public int getNonzeroMin() {
-        int min = 0;
-        for (int i : map) {
-            if (i == 1) {
-                return 1;
-            } else if (i > 0 && i < min) {
-                min = i;
-            }
-        }
-        return min;
+        int min = KERNELS.minPositive(map, 0, map.length);
+        return (min == Integer.MAX_VALUE ? 0 : min);
     }
 
     /**
@@ -493,13 +535,17 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
      * @return the amount of indeces with the value specified by number
      */
     public int getNumberOf(int number) {
-        int quantity = 0;
-        for (int i : map) {
-            if (i == number) {
-                quantity++;
-            }
+        if (number == 0) {
+            return map.length - nonzero;
         }
-        return quantity;
+        return KERNELS.count(map, 0, map.length, number);
+    }
+
+    /**
+     * @return the amount of indeces with a value other than zero
+     */
+    public int getNonzeroCount() {
+        return nonzero;
     }
 
     /**
@@ -524,14 +570,9 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
      * @return the variance of the set
      */
     public float getVariance() {
-        float sum_sq = 0;
-        float sum_avg = 0;
-
-        // FIND BOTH E(X) and E(X^2) IN ONE LOOP
-        for (int i : map) {
-            sum_avg += i;
-            sum_sq += i * i;
-        }
+        // THE SUMS BEHIND E(X) and E(X^2) ARE KEPT ALREADY
+        float sum_sq = sumOfSquares;
+        float sum_avg = total;
 
         // AVERAGE OF THE SQUARES
         float avg_of_sqr = sum_sq / map.length;
@@ -560,6 +601,32 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
         return (float) map[index] / total;
     }
 
+    // AGGREGATES
+    // - summarize
+    /**
+     * Updates the aggregates behind the statistics for a single count changing
+     *
+     * @param before the count before the change
+     * @param after the count after the change, already stored
+     */
+    private void summarize(int before, int after) {
+        sumOfSquares += (long) after * after - (long) before * before;
+        if (before == 0 && after != 0) {
+            nonzero++;
+        } else if (before != 0 && after == 0) {
+            nonzero--;
+        }
+        if (after > max) {
+            max = after;
+        } else if (before == max && after < before && max > 0) {
+            // THE HIGHEST COUNT WENT DOWN. IT'S STILL THE HIGHEST IF ANOTHER
+            // COUNT MATCHES IT, OTHERWISE WHAT'S HIGHEST NOW TAKES A SCAN
+            if (KERNELS.indexOf(map, 0, map.length, before) < 0) {
+                max = Math.max(0, KERNELS.max(map, 0, map.length));
+            }
+        }
+    }
+
     // OVERWRITTEN METHODS
     // - toString
     // - compareTo
@@ -585,4 +652,19 @@ public class OccurrenceList implements java.lang.Cloneable, java.util.RandomAcce
     public OccurrenceList clone() throws CloneNotSupportedException {
         return new OccurrenceList(map);
     }
+
+    // STATIC METHODS
+    // - isVectorized
+    /**
+     * Tells whether the bulk statistics and searches run over vectors of
+     * elements, which they do when the JVM was started with the
+     * jdk.incubator.vector module, e.g. with --add-modules
+     * jdk.incubator.vector. Otherwise they fall back to plain loops with the
+     * same results.
+     *
+     * @return true if the vectorized loops are in use
+     */
+    public static boolean isVectorized() {
+        return KERNELS.isVectorized();
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+/**
+ * Interface for objects which pick a slot at random from a fixed distribution
+ * of weights, such as one held by a DenseDecimalCharMap. A sampler is built
+ * once and may then be drawn from any number of times by any number of threads.
+ * Only slots with a weight above zero are ever picked, so rounding can never
+ * cause a draw to fall through without a result.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public interface Sampler {
+
+    /**
+     * Picks a slot from the distribution
+     *
+     * @param pick a uniformly distributed random number in the range 0.0-1.0,
+     * exclusive of 1.0
+     * @return the picked slot, or -1 if no slot has a weight above zero
+     */
+    public int sample(float pick);
+}
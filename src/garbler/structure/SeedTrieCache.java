@@ -0,0 +1,427 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Least-frequently-used cache keyed by short runs of characters and held as a
+ * prefix trie, so keys which share their first characters share their nodes.
+ * Each cached value counts the hits it has had. The counts are halved every so
+ * often, and once the cache is full a new value is only admitted in place of
+ * one which has had no hits since, which is evicted along with any nodes left
+ * leading nowhere. A stream of one-off keys therefore can't keep replacing
+ * each other, while keys which were hot a long time ago still make way.
+ *
+ * Keys are looked up by range, so no String needs to be made to query the
+ * cache, and a lookup only walks as many nodes as the key has characters. The
+ * cached values are kept in a binary heap on their counts, so hits and
+ * evictions take O(log n). The cache counts its hits and misses so that it
+ * can be sized.
+ *
+ * @author Rogue <Alice Q.>
+ * @param <V> the type of the cached values
+ */
+public class SeedTrieCache<V> {
+
+    // HOW MANY LOOKUPS PER ENTRY OF CAPACITY TO MAKE BETWEEN HALVING THE COUNTS
+    private static final int DECAY_PERIOD = 16;
+
+    // THE LONGEST KEY WHICH WILL BE CACHED
+    private final int maxLength;
+
+    // THE TRIE, AND A HEAP OF THE NODES HOLDING VALUES WITH THE LEAST HIT FIRST
+    private final Node<V> root;
+    private Node<V>[] heap;
+    private int size;
+    private int capacity;
+
+    // STATISTICS
+    private long hits;
+    private long misses;
+    private long lookups;
+
+    /**
+     * Basic constructor
+     *
+     * @param capacity the number of values to keep
+     * @param maxLength the number of characters in the longest key to cache
+     * @throws IllegalArgumentException if capacity is less than zero or
+     * maxLength less than one
+     */
+    public SeedTrieCache(int capacity, int maxLength) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        } else if (maxLength < 1) {
+            throw new IllegalArgumentException("Key length less than one");
+        }
+        this.capacity = capacity;
+        this.maxLength = maxLength;
+        root = new Node(null, '\0');
+        heap = new Node[16];
+    }
+
+    // GET-SETS
+    // - setCapacity
+    // - size
+    // - canAdmit
+    // - keys
+    // - getHitCount
+    // - getMissCount
+    // - getHitRate
+    // - resetStatistics
+    /**
+     * Method to set the number of values to keep. Shrinking it evicts the
+     * least frequently used values.
+     *
+     * @param capacity the new capacity, where zero disables caching
+     * @throws IllegalArgumentException if capacity is less than zero
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        this.capacity = capacity;
+        while (size > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * @return the number of values held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether a put at a key would be held, which saves working out a
+     * value which would be turned away
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return true if the key is short enough to cache and there is room for
+     * it or a value which may be evicted in its favour
+     */
+    public boolean canAdmit(CharSequence charSequence, int start, int end) {
+        return end - start <= maxLength && (size < capacity || (size > 0 && heap[0].hits == 0));
+    }
+
+    /**
+     * @return the keys of every value held, most frequently used first
+     */
+    public List<String> keys() {
+        Node<V>[] nodes = Arrays.copyOf(heap, size);
+        Arrays.sort(nodes, Comparator.comparingLong((Node<V> node) -> node.hits).reversed());
+        List<String> keys = new ArrayList(size);
+        for (Node<V> node : nodes) {
+            keys.add(node.getText());
+        }
+        return keys;
+    }
+
+    /**
+     * @return the number of lookups which found a value since the statistics
+     * were last reset
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which found no value since the statistics
+     * were last reset
+     */
+    public long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return the share of lookups which found a value since the statistics
+     * were last reset, or 0.0 if there have been none
+     */
+    public float getHitRate() {
+        long total = hits + misses;
+        return (total == 0 ? 0.0f : (float) hits / total);
+    }
+
+    /**
+     * Starts counting hits and misses afresh
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    // CACHE ACCESS
+    // - get (2)
+    // - put (2)
+    // - clear
+    /**
+     * Retrieves a value, counting the hit against it
+     *
+     * @param key the key to retrieve
+     * @return the value held at the key, or null if it isn't cached
+     */
+    public V get(CharSequence key) {
+        return get(key, 0, key.length());
+    }
+
+    /**
+     * Variant of get(CharSequence) which looks up a range of characters
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return the value held at the key, or null if it isn't cached. Keys
+     * longer than the longest which will be cached aren't counted as misses.
+     */
+    public V get(CharSequence charSequence, int start, int end) {
+        if (end - start > maxLength) {
+            return null;
+        }
+        Node<V> node = find(charSequence, start, end);
+        if (node == null || node.value == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        node.hits++;
+        siftDown(node.index);
+
+        // AGE THE COUNTS NOW AND THEN, WHICH KEEPS THE HEAP IN ORDER
+        if (++lookups >= (long) DECAY_PERIOD * Math.max(capacity, 1)) {
+            lookups = 0;
+            for (int i = 0; i < size; i++) {
+                heap[i].hits >>>= 1;
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * Adds a value, replacing any value already held at the key. If the cache
+     * is full, a new value evicts the least frequently used one if it has had
+     * no hits since the counts were last halved, and is otherwise dropped.
+     *
+     * @param key the key to add at
+     * @param value the value to add
+     */
+    public void put(CharSequence key, V value) {
+        put(key, 0, key.length(), value);
+    }
+
+    /**
+     * Variant of put(CharSequence, Object) which adds at a range of characters
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @param value the value to add. Keys longer than the longest which will
+     * be cached are ignored.
+     */
+    public void put(CharSequence charSequence, int start, int end, V value) {
+        Node<V> node = find(charSequence, start, end);
+        if (node != null && node.value != null) {
+            node.value = value;
+            return;
+        } else if (!canAdmit(charSequence, start, end)) {
+            return;
+        }
+
+        // MAKE ROOM FIRST, SINCE EVICTING MAY PRUNE NODES ON THE KEY'S PATH
+        if (size >= capacity) {
+            evict();
+        }
+        node = root;
+        for (int i = start; i < end; i++) {
+            char c = charSequence.charAt(i);
+            Node<V> child = node.child(c);
+            node = (child != null ? child : node.add(new Node(node, c)));
+        }
+        node.value = value;
+        node.hits = 1;
+
+        // PUSH IT ONTO THE HEAP
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = node;
+        node.index = size++;
+        siftUp(node.index);
+    }
+
+    /**
+     * Removes every value
+     *
+     * @return the number of values removed
+     */
+    public int clear() {
+        int removed = size;
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        root.clearChildren();
+        lookups = 0;
+        return removed;
+    }
+
+    // INTERNAL
+    // - find
+    // - evict
+    // - siftUp
+    // - siftDown
+    // - swap
+    /**
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return the node for the key, or null if there is none
+     */
+    private Node<V> find(CharSequence charSequence, int start, int end) {
+        Node<V> node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.child(charSequence.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Removes the least frequently used value, then any nodes which no longer
+     * hold a value or lead to one
+     */
+    private void evict() {
+        Node<V> node = heap[0];
+        swap(0, --size);
+        heap[size] = null;
+        siftDown(0);
+        node.value = null;
+        while (node != root && node.value == null && node.count == 0) {
+            node.parent.remove(node);
+            node = node.parent;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0 && heap[(i - 1) / 2].hits > heap[i].hits) {
+            swap(i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (2 * i + 1 < size) {
+            int least = 2 * i + 1;
+            if (least + 1 < size && heap[least + 1].hits < heap[least].hits) {
+                least++;
+            }
+            if (heap[i].hits <= heap[least].hits) {
+                return;
+            }
+            swap(i, least);
+            i = least;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Node<V> node = heap[i];
+        heap[i] = heap[j];
+        heap[j] = node;
+        heap[i].index = i;
+        heap[j].index = j;
+    }
+
+    /**
+     * A single node of the trie, which holds a value if its key was cached
+     */
+    private static class Node<V> {
+
+        final Node<V> parent;
+        final char key;
+        V value;
+        long hits;
+        int index;
+
+        // CHILDREN, UNSORTED, SINCE FEW CHARACTERS EVER FOLLOW ANY ONE SEED
+        private char[] keys = new char[0];
+        private Node<V>[] children = new Node[0];
+        private int count;
+
+        Node(Node<V> parent, char key) {
+            this.parent = parent;
+            this.key = key;
+        }
+
+        Node<V> child(char c) {
+            for (int i = 0; i < count; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node<V> add(Node<V> child) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, count * 2));
+                children = Arrays.copyOf(children, Math.max(2, count * 2));
+            }
+            keys[count] = child.key;
+            children[count++] = child;
+            return child;
+        }
+
+        void remove(Node<V> child) {
+            for (int i = 0; i < count; i++) {
+                if (children[i] == child) {
+                    count--;
+                    keys[i] = keys[count];
+                    children[i] = children[count];
+                    children[count] = null;
+                    return;
+                }
+            }
+        }
+
+        void clearChildren() {
+            keys = new char[0];
+            children = new Node[0];
+            count = 0;
+        }
+
+        /**
+         * @return the characters leading to this node
+         */
+        String getText() {
+            StringBuilder text = new StringBuilder();
+            for (Node<V> node = this; node.parent != null; node = node.parent) {
+                text.append(node.key);
+            }
+            return text.reverse().toString();
+        }
+    }
+}
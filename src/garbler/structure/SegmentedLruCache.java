@@ -0,0 +1,444 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Segmented least-recently-used cache keyed by short runs of characters. New
+ * entries are placed in a probation segment and only move to the protected
+ * segment once they are hit again, so a burst of one-off keys can never push
+ * out the entries which are used repeatedly. When the protected segment
+ * overflows, its least recently used entry is demoted back to probation
+ * rather than dropped, and entries are only ever evicted from the cold end of
+ * probation.
+ *
+ * Keys are looked up by range, so no String needs to be made to query the
+ * cache. Each context is turned into a long by ContextKey and indexed by an
+ * open-addressing table of primitive keys, and each segment is an intrusive
+ * doubly linked list, so lookups, promotions and evictions are all O(1).
+ *
+ * @author Rogue <Alice Q.>
+ * @param <V> the type of the cached values
+ */
+public class SegmentedLruCache<V> {
+
+    // OPEN-ADDRESSING INDEX OF EVERY ENTRY, WHICHEVER SEGMENT IT IS IN
+    private long[] keys;
+    private Node<V>[] nodes;
+    private int size;
+
+    // THE TWO SEGMENTS
+    private final Segment<V> probation;
+    private final Segment<V> protectedSegment;
+
+    /**
+     * Basic constructor
+     *
+     * @param protectedCapacity the number of entries which have been hit at
+     * least twice to keep
+     * @param probationCapacity the number of entries which have only been
+     * added, or demoted, to keep
+     * @throws IllegalArgumentException if either capacity is less than zero
+     */
+    public SegmentedLruCache(int protectedCapacity, int probationCapacity) {
+        if (protectedCapacity < 0 || probationCapacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        keys = new long[16];
+        nodes = new Node[16];
+        probation = new Segment();
+        protectedSegment = new Segment();
+        protectedSegment.capacity = protectedCapacity;
+        probation.capacity = probationCapacity;
+    }
+
+    // GET-SETS
+    // - setProtectedCapacity
+    // - setProbationCapacity
+    // - size
+    // - protectedKeys
+    // - probationKeys
+    /**
+     * Method to set the size of the protected segment. Shrinking it demotes
+     * its least recently used entries to probation.
+     *
+     * @param capacity the new capacity, where zero disables promotion
+     * @throws IllegalArgumentException if capacity is less than zero
+     */
+    public void setProtectedCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        protectedSegment.capacity = capacity;
+        rebalance();
+    }
+
+    /**
+     * Method to set the size of the probation segment. Shrinking it evicts its
+     * least recently used entries.
+     *
+     * @param capacity the new capacity, where zero disables caching of new
+     * entries
+     * @throws IllegalArgumentException if capacity is less than zero
+     */
+    public void setProbationCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        probation.capacity = capacity;
+        rebalance();
+    }
+
+    /**
+     * @return the total number of entries held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the keys of the protected segment, most recently used first
+     */
+    public List<String> protectedKeys() {
+        return protectedSegment.keys();
+    }
+
+    /**
+     * @return the keys of the probation segment, most recently used first
+     */
+    public List<String> probationKeys() {
+        return probation.keys();
+    }
+
+    // CACHE ACCESS
+    // - get (2)
+    // - put (2)
+    // - clear
+    /**
+     * Retrieves a value, marking it as the most recently used of its segment
+     * and promoting it to the protected segment if it was on probation
+     *
+     * @param key the key to retrieve
+     * @return the value held at the key, or null if it isn't cached
+     */
+    public V get(CharSequence key) {
+        return get(key, 0, key.length());
+    }
+
+    /**
+     * Variant of get(CharSequence) which looks up a range of characters
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return the value held at the key, or null if it isn't cached
+     */
+    public V get(CharSequence charSequence, int start, int end) {
+        Node<V> node = find(ContextKey.of(charSequence, start, end));
+        if (node == null || !node.matches(charSequence, start, end)) {
+            return null;
+        }
+        node.owner.unlink(node);
+        if (protectedSegment.capacity > 0) {
+            protectedSegment.push(node);
+        } else {
+            probation.push(node);
+        }
+        rebalance();
+        return node.value;
+    }
+
+    /**
+     * Adds a value to the probation segment, replacing any value already held
+     * at the key. The value which had to make way for it is handed back, so
+     * that a caller which is its only user may recycle it.
+     *
+     * @param key the key to add at
+     * @param value the value to add
+     * @return the value replaced or evicted to make room, or null if there was
+     * none
+     */
+    public V put(CharSequence key, V value) {
+        return put(key, 0, key.length(), value);
+    }
+
+    /**
+     * Variant of put(CharSequence, Object) which adds at a range of characters
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @param value the value to add
+     * @return the value replaced or evicted to make room, or null if there was
+     * none
+     */
+    public V put(CharSequence charSequence, int start, int end, V value) {
+        long key = ContextKey.of(charSequence, start, end);
+        String text = (ContextKey.isPackable(charSequence, start, end)
+                ? null : charSequence.subSequence(start, end).toString());
+
+        // TWO CONTEXTS WHICH HASH ALIKE SHARE AN ENTRY, THE NEWEST WINNING
+        Node<V> node = find(key);
+        if (node != null) {
+            V replaced = node.value;
+            node.text = text;
+            node.value = value;
+            return replaced;
+        }
+
+        // A FULL PROBATION SEGMENT GIVES UP ITS COLDEST ENTRY, WHOSE NODE IS REUSED
+        V evicted = null;
+        if (probation.capacity > 0 && probation.size >= probation.capacity) {
+            node = probation.unlink(probation.tail);
+            remove(node.key);
+            evicted = node.value;
+            node.key = key;
+            node.text = text;
+            node.value = value;
+        } else {
+            node = new Node(key, text, value);
+        }
+        insert(node);
+        probation.push(node);
+        rebalance();
+        return evicted;
+    }
+
+    /**
+     * Removes every entry
+     *
+     * @return the number of entries removed
+     */
+    public int clear() {
+        int removed = size;
+        Arrays.fill(nodes, null);
+        size = 0;
+        probation.clear();
+        protectedSegment.clear();
+        return removed;
+    }
+
+    /**
+     * Demotes the overflow of the protected segment, then evicts the overflow
+     * of probation
+     */
+    private void rebalance() {
+        while (protectedSegment.size > protectedSegment.capacity) {
+            probation.push(protectedSegment.unlink(protectedSegment.tail));
+        }
+        while (probation.size > probation.capacity) {
+            remove(probation.unlink(probation.tail).key);
+        }
+    }
+
+    // INDEX
+    // - find
+    // - insert
+    // - remove
+    // - slotOf
+    /**
+     * @param key the key to find
+     * @return the entry at the key, or null if there is none
+     */
+    private Node<V> find(long key) {
+        int mask = keys.length - 1;
+        for (int i = slotOf(key); nodes[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return nodes[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indexes a new entry, growing the table to keep it at most half full
+     *
+     * @param node the entry to index
+     */
+    private void insert(Node<V> node) {
+        if (2 * (size + 1) > keys.length) {
+            long[] oldKeys = keys;
+            Node<V>[] oldNodes = nodes;
+            keys = new long[oldKeys.length * 2];
+            nodes = new Node[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldNodes[i] != null) {
+                    insert(oldNodes[i]);
+                }
+            }
+        }
+        int mask = keys.length - 1;
+        int i = slotOf(node.key);
+        while (nodes[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = node.key;
+        nodes[i] = node;
+        size++;
+    }
+
+    /**
+     * Removes an entry from the index, shifting back any entries which probed
+     * past it so that no tombstones are needed
+     *
+     * @param key the key of the entry to remove
+     */
+    private void remove(long key) {
+        int mask = keys.length - 1;
+        int i = slotOf(key);
+        while (nodes[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (nodes[i] == null) {
+            return;
+        }
+        nodes[i] = null;
+        size--;
+
+        // CLOSE THE GAP
+        for (int j = (i + 1) & mask; nodes[j] != null; j = (j + 1) & mask) {
+            int home = slotOf(keys[j]);
+            // MOVE IT BACK UNLESS ITS HOME LIES CYCLICALLY WITHIN (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                nodes[i] = nodes[j];
+                nodes[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return the preferred position of the key in the index
+     */
+    private int slotOf(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & (keys.length - 1);
+    }
+
+    /**
+     * A single entry, linked into one of the segments
+     */
+    private static class Node<V> {
+
+        long key;
+        String text;
+        V value;
+        Segment<V> owner;
+        Node<V> previous;
+        Node<V> next;
+
+        Node(long key, String text, V value) {
+            this.key = key;
+            this.text = text;
+            this.value = value;
+        }
+
+        /**
+         * @return true if this entry is for the range of characters rather
+         * than another context which hashes alike
+         */
+        boolean matches(CharSequence charSequence, int start, int end) {
+            if (text == null) {
+                return ContextKey.isPackable(charSequence, start, end);
+            } else if (text.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i - start) != charSequence.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the characters this entry is for
+         */
+        String getText() {
+            return (text == null ? ContextKey.unpack(key) : text);
+        }
+    }
+
+    /**
+     * Doubly linked list of entries from most to least recently used
+     */
+    private static class Segment<V> {
+
+        Node<V> head;
+        Node<V> tail;
+        int size;
+        int capacity;
+
+        void push(Node<V> node) {
+            node.owner = this;
+            node.previous = null;
+            node.next = head;
+            if (head != null) {
+                head.previous = node;
+            } else {
+                tail = node;
+            }
+            head = node;
+            size++;
+        }
+
+        Node<V> unlink(Node<V> node) {
+            if (node.previous != null) {
+                node.previous.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.previous = node.previous;
+            } else {
+                tail = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            node.owner = null;
+            size--;
+            return node;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+
+        List<String> keys() {
+            List<String> keys = new ArrayList(size);
+            for (Node<V> node = head; node != null; node = node.next) {
+                keys.add(node.getText());
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe SegmentedLruCache made of several independent stripes, each
+ * guarded by its own lock. A key always maps to the same stripe, so threads
+ * working on different keys rarely wait on each other and there is no lock
+ * shared by every lookup. Values put by one thread are visible to every other
+ * thread as soon as put returns, and values which had to make way for them
+ * are never handed back.
+ *
+ * Capacities are divided evenly between the stripes, so an uneven spread of
+ * keys may evict slightly earlier than a single cache of the same size would.
+ * Each share is rounded up, so a small cache gets fewer stripes rather than
+ * growing with the number of them.
+ *
+ * @author Rogue <Alice Q.>
+ * @param <V> the type of the cached values
+ */
+public class StripedLruCache<V> extends SegmentedLruCache<V> {
+
+    // THE FEWEST ENTRIES THE LARGER SEGMENT OF EACH STRIPE MAY BE GIVEN
+    private static final int MIN_STRIPE_CAPACITY = 8;
+
+    // THE STRIPES, WHICH ARE ALSO THEIR OWN LOCKS
+    private final SegmentedLruCache<V>[] stripes;
+    private final int mask;
+
+    /**
+     * Constructor which picks the number of stripes from the number of
+     * available processors
+     *
+     * @param protectedCapacity the total number of entries which have been
+     * hit at least twice to keep
+     * @param probationCapacity the total number of entries which have only
+     * been added, or demoted, to keep
+     * @throws IllegalArgumentException if either capacity is less than zero
+     */
+    public StripedLruCache(int protectedCapacity, int probationCapacity) {
+        this(protectedCapacity, probationCapacity, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Basic constructor
+     *
+     * @param protectedCapacity the total number of entries which have been
+     * hit at least twice to keep
+     * @param probationCapacity the total number of entries which have only
+     * been added, or demoted, to keep
+     * @param stripes the number of stripes to aim for, which is rounded up to
+     * a power of two, but lowered so that the larger segment of each stripe
+     * is given at least 8 entries
+     * @throws IllegalArgumentException if either capacity is less than zero
+     */
+    public StripedLruCache(int protectedCapacity, int probationCapacity, int stripes) {
+        super(protectedCapacity, probationCapacity);
+        int count = Math.max(Integer.highestOneBit(Math.max(stripes, 1) - 1) << 1, 1);
+        int limit = Integer.highestOneBit(Math.max(Math.max(protectedCapacity, probationCapacity) / MIN_STRIPE_CAPACITY, 1));
+        this.stripes = new SegmentedLruCache[Math.min(count, limit)];
+        this.mask = this.stripes.length - 1;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new SegmentedLruCache(share(protectedCapacity), share(probationCapacity));
+        }
+    }
+
+    @Override
+    public void setProtectedCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        for (SegmentedLruCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.setProtectedCapacity(share(capacity));
+            }
+        }
+    }
+
+    @Override
+    public void setProbationCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        for (SegmentedLruCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.setProbationCapacity(share(capacity));
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (SegmentedLruCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public List<String> protectedKeys() {
+        List<String> keys = new ArrayList();
+        for (SegmentedLruCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                keys.addAll(stripe.protectedKeys());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public List<String> probationKeys() {
+        List<String> keys = new ArrayList();
+        for (SegmentedLruCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                keys.addAll(stripe.probationKeys());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(CharSequence key) {
+        return get(key, 0, key.length());
+    }
+
+    @Override
+    public V get(CharSequence charSequence, int start, int end) {
+        SegmentedLruCache<V> stripe = stripeFor(charSequence, start, end);
+        synchronized (stripe) {
+            return stripe.get(charSequence, start, end);
+        }
+    }
+
+    /**
+     * Adds a value to the probation segment of its stripe, replacing any value
+     * already held at the key
+     *
+     * @param key the key to add at
+     * @param value the value to add
+     * @return always null, since another thread may still be using a value
+     * which had to make way
+     */
+    @Override
+    public V put(CharSequence key, V value) {
+        return put(key, 0, key.length(), value);
+    }
+
+    /**
+     * Variant of put(CharSequence, Object) which adds at a range of characters
+     *
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @param value the value to add
+     * @return always null, since another thread may still be using a value
+     * which had to make way
+     */
+    @Override
+    public V put(CharSequence charSequence, int start, int end, V value) {
+        SegmentedLruCache<V> stripe = stripeFor(charSequence, start, end);
+        synchronized (stripe) {
+            stripe.put(charSequence, start, end, value);
+        }
+        return null;
+    }
+
+    @Override
+    public int clear() {
+        int size = 0;
+        for (SegmentedLruCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.clear();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return the stripe holding the key
+     */
+    private SegmentedLruCache<V> stripeFor(CharSequence charSequence, int start, int end) {
+        long key = ContextKey.of(charSequence, start, end) * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (key >>> 32) & mask];
+    }
+
+    /**
+     * @param capacity a total capacity
+     * @return the share of the capacity given to each stripe, rounded up so
+     * that a non-zero capacity is never lost
+     */
+    private int share(int capacity) {
+        return (capacity + stripes.length - 1) / stripes.length;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe SeedTrieCache made of several independent tries, each guarded by
+ * its own lock. Keys are spread between the stripes by a hash of the whole
+ * seed, just as StripedLruCache spreads them, so every stripe gets its share
+ * of the keys however few characters they start with, and threads working on
+ * different keys rarely wait on each other. Keys sharing a prefix only share
+ * their nodes within a stripe. Values put by one thread are visible to every
+ * other thread as soon as put returns.
+ *
+ * The capacity is divided evenly between the stripes, so an uneven spread of
+ * keys may evict slightly earlier than a single cache of the same size would.
+ *
+ * @author Rogue <Alice Q.>
+ * @param <V> the type of the cached values
+ */
+public class StripedSeedTrieCache<V> extends SeedTrieCache<V> {
+
+    // THE STRIPES, WHICH ARE ALSO THEIR OWN LOCKS
+    private final SeedTrieCache<V>[] stripes;
+    private final int mask;
+
+    /**
+     * Constructor which picks the number of stripes from the number of
+     * available processors
+     *
+     * @param capacity the total number of values to keep
+     * @param maxLength the number of characters in the longest key to cache
+     * @throws IllegalArgumentException if capacity is less than zero or
+     * maxLength less than one
+     */
+    public StripedSeedTrieCache(int capacity, int maxLength) {
+        this(capacity, maxLength, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Basic constructor
+     *
+     * @param capacity the total number of values to keep
+     * @param maxLength the number of characters in the longest key to cache
+     * @param stripes the minimum number of stripes, which is rounded up to a
+     * power of two
+     * @throws IllegalArgumentException if capacity is less than zero or
+     * maxLength less than one
+     */
+    public StripedSeedTrieCache(int capacity, int maxLength, int stripes) {
+        super(capacity, maxLength);
+        int count = Integer.highestOneBit(Math.max(stripes, 1) - 1) << 1;
+        this.stripes = new SeedTrieCache[Math.max(count, 1)];
+        this.mask = this.stripes.length - 1;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new SeedTrieCache(share(capacity), maxLength);
+        }
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Size less than zero");
+        }
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.setCapacity(share(capacity));
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean canAdmit(CharSequence charSequence, int start, int end) {
+        SeedTrieCache<V> stripe = stripeFor(charSequence, start, end);
+        synchronized (stripe) {
+            return stripe.canAdmit(charSequence, start, end);
+        }
+    }
+
+    @Override
+    public List<String> keys() {
+        List<String> keys = new ArrayList();
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                keys.addAll(stripe.keys());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public long getHitCount() {
+        long hits = 0;
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                hits += stripe.getHitCount();
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public long getMissCount() {
+        long misses = 0;
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                misses += stripe.getMissCount();
+            }
+        }
+        return misses;
+    }
+
+    @Override
+    public float getHitRate() {
+        long hits = 0;
+        long total = 0;
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                hits += stripe.getHitCount();
+                total += stripe.getHitCount() + stripe.getMissCount();
+            }
+        }
+        return (total == 0 ? 0.0f : (float) hits / total);
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.resetStatistics();
+            }
+        }
+    }
+
+    @Override
+    public V get(CharSequence key) {
+        return get(key, 0, key.length());
+    }
+
+    @Override
+    public V get(CharSequence charSequence, int start, int end) {
+        SeedTrieCache<V> stripe = stripeFor(charSequence, start, end);
+        synchronized (stripe) {
+            return stripe.get(charSequence, start, end);
+        }
+    }
+
+    @Override
+    public void put(CharSequence key, V value) {
+        put(key, 0, key.length(), value);
+    }
+
+    @Override
+    public void put(CharSequence charSequence, int start, int end, V value) {
+        SeedTrieCache<V> stripe = stripeFor(charSequence, start, end);
+        synchronized (stripe) {
+            stripe.put(charSequence, start, end, value);
+        }
+    }
+
+    @Override
+    public int clear() {
+        int size = 0;
+        for (SeedTrieCache<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.clear();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param charSequence the sequence holding the key
+     * @param start the index of the first character of the key
+     * @param end the index just past the last character of the key
+     * @return the stripe holding the key
+     */
+    private SeedTrieCache<V> stripeFor(CharSequence charSequence, int start, int end) {
+        long key = ContextKey.of(charSequence, start, end) * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (key >>> 32) & mask];
+    }
+
+    /**
+     * @param capacity a total capacity
+     * @return the share of the capacity given to each stripe, rounded up so
+     * that a non-zero capacity is never lost
+     */
+    private int share(int capacity) {
+        return (capacity + stripes.length - 1) / stripes.length;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.structure;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * OccurrenceKernels running over whole vectors of elements with the
+ * jdk.incubator.vector API, at the widest shape the processor prefers. Each
+ * kernel works through as many full vectors as fit in its range and finishes
+ * the tail one element at a time. Integer sums wrap around exactly as the
+ * scalar ones do, so every kernel returns the same result as its scalar
+ * counterpart.
+ *
+ * This is the only class which links against the incubator module and is
+ * only ever loaded by name, so the rest of the package runs without it.
+ *
+ * @author Rogue <Alice Q.>
+ */
+final class VectorOccurrenceKernels extends OccurrenceKernels {
+
+    // INTS AND THE LONGS THEY WIDEN INTO, OF THE SAME SHAPE
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    // DOT PRODUCTS KEEP EXACTLY DOT_LANES RUNNING SUMS WHATEVER THE PREFERRED SHAPE, SO THAT THEY ROUND
+    // THE SAME WAY AS THE SCALAR ONES
+    private static final VectorSpecies<Float> DOT_FLOATS = FloatVector.SPECIES_256;
+    private static final VectorSpecies<Integer> DOT_INTS = IntVector.SPECIES_256;
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    int sum(int[] values, int from, int to) {
+        IntVector sums = IntVector.zero(INTS);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            sums = sums.add(IntVector.fromArray(INTS, values, i));
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    long sumOfSquares(int[] values, int from, int to) {
+        LongVector sums = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            // WIDEN BOTH HALVES SO THE SQUARES CAN'T OVERFLOW
+            IntVector v = IntVector.fromArray(INTS, values, i);
+            LongVector low = (LongVector) v.convertShape(VectorOperators.I2L, LONGS, 0);
+            LongVector high = (LongVector) v.convertShape(VectorOperators.I2L, LONGS, 1);
+            sums = sums.add(low.mul(low)).add(high.mul(high));
+        }
+        long sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += (long) values[i] * values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    int max(int[] values, int from, int to) {
+        IntVector maxes = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            maxes = maxes.max(IntVector.fromArray(INTS, values, i));
+        }
+        int max = maxes.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    int min(int[] values, int from, int to) {
+        IntVector mins = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            mins = mins.min(IntVector.fromArray(INTS, values, i));
+        }
+        int min = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    @Override
+    int minPositive(int[] values, int from, int to) {
+        IntVector none = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        IntVector mins = none;
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            // LANES AT OR BELOW ZERO DON'T TAKE PART
+            IntVector v = IntVector.fromArray(INTS, values, i);
+            mins = mins.min(none.blend(v, v.compare(VectorOperators.GT, 0)));
+        }
+        int min = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++) {
+            if (values[i] > 0) {
+                min = Math.min(min, values[i]);
+            }
+        }
+        return min;
+    }
+
+    @Override
+    int count(int[] values, int from, int to, int value) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            count += IntVector.fromArray(INTS, values, i).eq(value).trueCount();
+        }
+        for (; i < to; i++) {
+            if (values[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    float dot(int[] values, float[] weights, int length) {
+        FloatVector sums = FloatVector.zero(DOT_FLOATS);
+        int i = 0;
+        for (int bound = DOT_FLOATS.loopBound(length); i < bound; i += DOT_LANES) {
+            FloatVector counts = (FloatVector) IntVector.fromArray(DOT_INTS, values, i).convert(VectorOperators.I2F, 0);
+            sums = sums.add(FloatVector.fromArray(DOT_FLOATS, weights, i).mul(counts));
+        }
+
+        // THE LANES IN ORDER, SINCE A FLOAT REDUCTION MAY ADD THEM IN ANY ORDER
+        float sum = sums.lane(0);
+        for (int lane = 1; lane < DOT_LANES; lane++) {
+            sum += sums.lane(lane);
+        }
+        for (; i < length; i++) {
+            sum += weights[i] * values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    void add(int[] target, int[] values, int length) {
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, target, i).add(IntVector.fromArray(INTS, values, i)).intoArray(target, i);
+        }
+        for (; i < length; i++) {
+            target[i] += values[i];
+        }
+    }
+
+    @Override
+    int indexOf(int[] values, int from, int to, int value) {
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            VectorMask<Integer> found = IntVector.fromArray(INTS, values, i).eq(value);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return super.indexOf(values, i, to, value);
+    }
+
+    @Override
+    int lastIndexOf(int[] values, int from, int to, int value) {
+        int i = to;
+        for (int bound = to - INTS.loopBound(to - from); i > bound;) {
+            i -= INTS.length();
+            VectorMask<Integer> found = IntVector.fromArray(INTS, values, i).eq(value);
+            if (found.anyTrue()) {
+                return i + found.lastTrue();
+            }
+        }
+        return super.lastIndexOf(values, from, i, value);
+    }
+
+    @Override
+    int indexOfNonzero(int[] values, int from, int to) {
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            VectorMask<Integer> found = IntVector.fromArray(INTS, values, i).compare(VectorOperators.NE, 0);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return super.indexOfNonzero(values, i, to);
+    }
+
+    @Override
+    int lastIndexOfNonzero(int[] values, int from, int to) {
+        int i = to;
+        for (int bound = to - INTS.loopBound(to - from); i > bound;) {
+            i -= INTS.length();
+            VectorMask<Integer> found = IntVector.fromArray(INTS, values, i).compare(VectorOperators.NE, 0);
+            if (found.anyTrue()) {
+                return i + found.lastTrue();
+            }
+        }
+        return super.lastIndexOfNonzero(values, from, i);
+    }
+}
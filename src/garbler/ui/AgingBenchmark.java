@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.library.CharStats;
+import garbler.library.StatsLibrary;
+import garbler.structure.OccurrenceList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark comparing the ways of reducing an OccurrenceList with the
+ * character aging algorithm: the recurrence StatsCruncher used to walk each
+ * list backwards with, a dot product with a precomputed vector of aging
+ * weights added backwards into a single sum, and OccurrenceList.getWeightedSum,
+ * which adds the same products forwards into several running sums. Every
+ * correlation and distance-from-end list of the trained statistics is reduced
+ * each way, and the largest difference from the recurrence is printed
+ * alongside the timings.
+ *
+ * Each round times every reduction in turn. The warm-up rounds are thrown away
+ * so that the JIT has compiled every loop before anything is measured, then
+ * the mean, standard deviation and range of the measured rounds are printed.
+ * Run with --add-modules jdk.incubator.vector to time the vector kernels.
+ *
+ * Run with the corpus to train on as the first argument, defaulting to
+ * samples/lorem_long.txt, and optionally the character aging factor to use,
+ * defaulting to 0.5, the number of warm-up rounds, defaulting to 10, and the
+ * number of measured rounds, defaulting to 20.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class AgingBenchmark {
+
+    // NUMBER OF PASSES OVER EVERY LIST IN A ROUND, AND THE DEFAULT NUMBER OF ROUNDS
+    private static final int PASSES = 500;
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+
+    // THE REDUCTIONS, IN THE ORDER EACH ROUND TIMES THEM
+    private static final String[] REDUCTIONS = {"RECURRENCE", "BACKWARD SUM", "DOT PRODUCT"};
+
+    public static void main(String[] args) throws java.io.IOException {
+        java.nio.file.Path corpus = java.nio.file.Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+        float agingFactor = (args.length > 1 ? Float.parseFloat(args[1]) : 0.5f);
+        int warmUp = (args.length > 2 ? Integer.parseInt(args[2]) : WARM_UP_ROUNDS);
+        int measured = (args.length > 3 ? Integer.parseInt(args[3]) : MEASURED_ROUNDS);
+        if (warmUp < 0 || measured < 1) {
+            throw new IllegalArgumentException("Need no fewer than zero warm-up rounds and at least one measured round");
+        }
+        StatsLibrary lib = new StatsLibrary(false, false);
+        lib.parseCorpus(corpus, ",.");
+
+        // GATHER THE LISTS A CRUNCHER REDUCES
+        List<OccurrenceList> gathered = new ArrayList();
+        int longest = 0;
+        for (Character c : lib.getAlphabet()) {
+            CharStats stats = lib.getCharacterStats(c);
+            gathered.addAll(stats.getAllCorrelations().values());
+            gathered.add(stats.getDistancesFromEnd());
+        }
+        OccurrenceList[] lists = gathered.toArray(new OccurrenceList[0]);
+        for (OccurrenceList list : lists) {
+            longest = Math.max(longest, list.size());
+        }
+
+        // THE AGING WEIGHTS, JUST AS StatsCruncher WEIGHS THEM
+        float[] weights = new float[longest];
+        float weight = agingFactor;
+        for (int distance = 0; distance < longest; distance++) {
+            weights[distance] = weight;
+            weight *= 1.0f - agingFactor;
+        }
+
+        double backwards = 0.0;
+        double products = 0.0;
+        for (OccurrenceList list : lists) {
+            float expected = recurrence(list, agingFactor);
+            backwards = Math.max(backwards, Math.abs(expected - backwardSum(list, weights)));
+            products = Math.max(products, Math.abs(expected - list.getWeightedSum(weights)));
+        }
+        System.out.println(lists.length + " LISTS OF UP TO " + longest + " DISTANCES, LARGEST DIFFERENCE "
+                + backwards + " BACKWARDS AND " + products + " AS A DOT PRODUCT");
+
+        // THE WARM-UP ROUNDS ARE TIMED THE SAME WAY BUT NEVER RECORDED
+        double[][] rates = new double[REDUCTIONS.length][measured];
+        for (int round = 0; round < warmUp + measured; round++) {
+            double[] rate = {timeRecurrence(lists, agingFactor), timeBackwardSum(lists, weights),
+                timeDotProduct(lists, weights)};
+            if (round >= warmUp) {
+                for (int r = 0; r < REDUCTIONS.length; r++) {
+                    rates[r][round - warmUp] = rate[r];
+                }
+            }
+        }
+
+        System.out.println(warmUp + " WARM-UP ROUNDS, " + measured + " MEASURED ROUNDS OF " + PASSES + " PASSES");
+        System.out.printf("%-14s %14s %12s %14s %14s%n", "REDUCTION", "MEAN LISTS/S", "STDDEV", "MIN", "MAX");
+        for (int r = 0; r < REDUCTIONS.length; r++) {
+            double mean = 0.0;
+            double min = Double.MAX_VALUE;
+            double max = 0.0;
+            for (double rate : rates[r]) {
+                mean += rate / measured;
+                min = Math.min(min, rate);
+                max = Math.max(max, rate);
+            }
+            double variance = 0.0;
+            for (double rate : rates[r]) {
+                variance += (rate - mean) * (rate - mean) / Math.max(1, measured - 1);
+            }
+            System.out.printf("%-14s %14.0f %12.0f %14.0f %14.0f%n", REDUCTIONS[r], mean, Math.sqrt(variance), min, max);
+        }
+    }
+
+    /**
+     * The loop StatsCruncher.reduceInfluenceMap used before the aging weights
+     * were precomputed
+     *
+     * @param list the list to reduce
+     * @param agingFactor the character aging factor
+     * @return the aged sum of the list
+     */
+    private static float recurrence(OccurrenceList list, float agingFactor) {
+        float characterAgingInverse = 1.0f - agingFactor;
+        float weightedSum = 0.0f;
+        for (int i = list.size() - 1; i >= 0; i--) {
+            weightedSum *= characterAgingInverse;
+            weightedSum += agingFactor * list.getCount(i);
+        }
+        return weightedSum;
+    }
+
+    /**
+     * The dot product OccurrenceList.getWeightedSum took before it was handed
+     * to the kernels, adding every product into one sum from the last entry
+     *
+     * @param list the list to reduce
+     * @param weights the aging weights
+     * @return the aged sum of the list
+     */
+    private static float backwardSum(OccurrenceList list, float[] weights) {
+        float sum = 0.0f;
+        for (int i = Math.min(list.size(), weights.length) - 1; i >= 0; i--) {
+            sum += weights[i] * list.getCount(i);
+        }
+        return sum;
+    }
+
+    /**
+     * @param lists the lists to reduce
+     * @param agingFactor the character aging factor
+     * @return the number of lists reduced per second by the recurrence
+     */
+    private static double timeRecurrence(OccurrenceList[] lists, float agingFactor) {
+        float sink = 0.0f;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (OccurrenceList list : lists) {
+                sink += recurrence(list, agingFactor);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0.0f) {
+            System.out.println(sink);  // KEEPS THE LOOP FROM BEING OPTIMIZED AWAY
+        }
+        return (double) PASSES * lists.length * 1e9 / elapsed;
+    }
+
+    /**
+     * @param lists the lists to reduce
+     * @param weights the aging weights
+     * @return the number of lists reduced per second by the backward sum
+     */
+    private static double timeBackwardSum(OccurrenceList[] lists, float[] weights) {
+        float sink = 0.0f;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (OccurrenceList list : lists) {
+                sink += backwardSum(list, weights);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0.0f) {
+            System.out.println(sink);
+        }
+        return (double) PASSES * lists.length * 1e9 / elapsed;
+    }
+
+    /**
+     * @param lists the lists to reduce
+     * @param weights the aging weights
+     * @return the number of lists reduced per second by the dot product
+     */
+    private static double timeDotProduct(OccurrenceList[] lists, float[] weights) {
+        float sink = 0.0f;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (OccurrenceList list : lists) {
+                sink += list.getWeightedSum(weights);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0.0f) {
+            System.out.println(sink);
+        }
+        return (double) PASSES * lists.length * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.builder.GenerationModel;
+import garbler.builder.StatsCruncher;
+import garbler.builder.WordBuilder;
+import garbler.library.StatsLibrary;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how much garbage building words into a reused buffer creates once
+ * warmed up. Words are built from every kind of library while the JVM counts
+ * the bytes allocated by the thread, through a compiled model, through a
+ * cruncher with its default caches and through a cruncher whose ending caches
+ * are large enough to hold every ending and whose seed cache is off.
+ *
+ * None of them may create anything, so the check exits with a status of 1 if
+ * any allocated at all. A cruncher with its default caches keeps missing
+ * them, but refills the entries it evicts rather than creating new ones.
+ *
+ * Run with the corpus to train on as the only argument, defaulting to
+ * samples/lorem_long.txt.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class AllocationCheck {
+
+    // WORDS TO BUILD BEFORE AND WHILE COUNTING
+    private static final int WARM_UP = 200000;
+    private static final int MEASURED = 100000;
+
+    public static void main(String[] args) throws java.io.IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("This JVM can't count allocated bytes");
+            System.exit(2);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        java.nio.file.Path corpus = java.nio.file.Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+
+        boolean clean = true;
+        for (boolean packed : new boolean[]{false, true}) {
+            StatsLibrary lib = new StatsLibrary(false, packed);
+            lib.parseCorpus(corpus, ",.");
+            StatsCruncher defaults = new StatsCruncher(lib);
+            GenerationModel compiled = defaults.compile();
+
+            // LARGE ENOUGH FOR EVERY ENDING, WITH NO SEED CACHE TO KEEP ADMITTING NEW SEEDS
+            StatsCruncher resident = new StatsCruncher(lib);
+            resident.setPrimaryCacheSize(4096);
+            resident.setSecondaryCacheSize(4096);
+            resident.setSeedCacheSize(0);
+
+            WordBuilder[] builders = {new WordBuilder(compiled, 1), new WordBuilder(resident, 1),
+                new WordBuilder(defaults, 1)};
+            String[] names = {"compiled", "resident cruncher", "default cruncher"};
+            for (int b = 0; b < builders.length; b++) {
+                char[] buffer = new char[12];
+                StringBuilder appended = new StringBuilder(12);
+                for (int i = 0; i < WARM_UP; i++) {
+                    builders[b].generateWord(buffer.length, 0.05f, buffer);
+                    appended.setLength(0);
+                    builders[b].generateWord(buffer.length, 0.05f, appended);
+                }
+
+                // A RARE ENDING STILL ALLOCATES THE FIRST TIME THE RESIDENT CRUNCHER SEES IT, SO ONLY A ROUND IN
+                // WHICH IT CACHED NOTHING NEW COUNTS. THE MEASUREMENT ITSELF IS TAKEN OUTSIDE THE LOOP
+                long id = Thread.currentThread().getId();
+                long allocated = -1;
+                long letters = 0;
+                for (int round = 0; round < 20 && allocated < 0; round++) {
+                    int cached = (b == 1 ? cacheSize(resident) : 0);
+                    long before = threads.getThreadAllocatedBytes(id);
+                    letters = 0;
+                    for (int i = 0; i < MEASURED; i++) {
+                        letters += builders[b].generateWord(buffer.length, 0.05f, buffer);
+                        appended.setLength(0);
+                        letters += builders[b].generateWord(buffer.length, 0.05f, appended).length();
+                    }
+                    long after = threads.getThreadAllocatedBytes(id);
+                    if (b != 1 || cacheSize(resident) == cached) {
+                        allocated = after - before;
+                    }
+                }
+
+                System.out.println((packed ? "PACKED " : "OBJECT ") + names[b] + ": " + allocated
+                        + " BYTES ALLOCATED OVER " + (2 * MEASURED) + " WORDS (" + letters + " LETTERS, "
+                        + (allocated / (2 * MEASURED)) + " PER WORD)");
+                clean &= (allocated == 0);
+            }
+        }
+        System.exit(clean ? 0 : 1);
+    }
+
+    /**
+     * @param sc the cruncher to look at
+     * @return the number of endings held in both of its caches
+     */
+    private static int cacheSize(StatsCruncher sc) {
+        return sc.getPrimaryCacheContents().size() + sc.getSecondaryCacheContents().size();
+    }
+}
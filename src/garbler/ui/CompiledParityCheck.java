@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.builder.StatsCruncher;
+import garbler.builder.WordBuilder;
+import garbler.library.StatsLibrary;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Checks that a compiled GenerationModel generates exactly the same words as
+ * the StatsCruncher it was compiled from. Both sample every distribution the
+ * same way, so words are built from every kind of library with the same seed,
+ * at several thresholds, and compared. Exits with a status of 1 if any word
+ * differs.
+ *
+ * Run with the corpus to train on as the only argument, defaulting to
+ * samples/lorem_long.txt.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class CompiledParityCheck {
+
+    private static final float[] THRESHOLDS = {0.05f, 0.2f, 1f};
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+
+        boolean same = true;
+        for (boolean packed : new boolean[]{false, true}) {
+            StatsLibrary lib = new StatsLibrary(false, packed);
+            lib.parseCorpus(corpus, ",.");
+            StatsCruncher sc = new StatsCruncher(lib);
+            for (float threshold : THRESHOLDS) {
+                boolean matched = SnapshotCheck.sameWords(new WordBuilder(sc, 1),
+                        new WordBuilder(sc.compile(), 1), threshold);
+                System.out.println((packed ? "PACKED " : "OBJECT ") + "threshold " + threshold
+                        + ": " + (matched ? "SAME" : "DIFFERENT"));
+                same &= matched;
+            }
+        }
+        System.exit(same ? 0 : 1);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.builder.StatsCruncher;
+import garbler.builder.WordBuilder;
+import garbler.library.MappedStatsModel;
+import garbler.library.StatsLibrary;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Checks that a library frozen into a MappedStatsModel generates exactly the
+ * same words as the library itself. Libraries of every kind, with and without
+ * case sensitivity, are trained and written out at the default depth, then
+ * words are built from the library and the mapped file with the same seed,
+ * through the cruncher and through a compiled model. Exits with a status of 1
+ * if any word differs.
+ *
+ * Run with the corpus to train on as the only argument, defaulting to
+ * samples/lorem_long.txt.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class MappedModelCheck {
+
+    // THRESHOLDS TO COMPARE FOR EACH LIBRARY
+    private static final float[] THRESHOLDS = {0.05f, 1f};
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+        Path file = Files.createTempFile("garbler", ".model");
+
+        boolean same = true;
+        try {
+            for (boolean caseSensitive : new boolean[]{false, true}) {
+                for (boolean packed : new boolean[]{false, true}) {
+                    StatsLibrary library = new StatsLibrary(caseSensitive, packed);
+                    library.parseCorpus(corpus, ",.");
+                    MappedStatsModel.write(library, file);
+                    MappedStatsModel mapped = MappedStatsModel.open(file);
+
+                    StatsCruncher before = new StatsCruncher(library);
+                    StatsCruncher after = new StatsCruncher(mapped);
+                    for (float threshold : THRESHOLDS) {
+                        boolean crunched = SnapshotCheck.sameWords(new WordBuilder(before, 1),
+                                new WordBuilder(after, 1), threshold);
+                        boolean compiled = SnapshotCheck.sameWords(new WordBuilder(before.compile(), 1),
+                                new WordBuilder(after.compile(), 1), threshold);
+                        System.out.println((caseSensitive ? "CASED " : "UNCASED ") + (packed ? "PACKED " : "OBJECT ")
+                                + "depth " + mapped.getDepth() + " threshold " + threshold
+                                + ": cruncher " + (crunched ? "SAME" : "DIFFERENT")
+                                + ", compiled " + (compiled ? "SAME" : "DIFFERENT"));
+                        same &= crunched && compiled;
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.exit(same ? 0 : 1);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.library.SearchPhrase;
+import garbler.structure.OccurrenceList;
+import java.util.Random;
+
+/**
+ * Benchmark of the bulk OccurrenceList operations: merging lists into one
+ * another, taking their statistics and searching them. The same operations
+ * run over the plain loops or the vectorized ones depending on how the JVM
+ * was started, so run it once as is and once with --add-modules
+ * jdk.incubator.vector to compare the two; the first line says which loops
+ * were in use.
+ *
+ * Run with the length of the lists as the first argument, defaulting to 4096.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class OccurrenceBenchmark {
+
+    // NUMBER OF LISTS, PASSES OVER THEM TO TIME AND HOW MANY TIMES TO REPEAT EACH
+    private static final int LISTS = 64;
+    private static final int PASSES = 500;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int length = (args.length > 0 ? Integer.parseInt(args[0]) : 4096);
+        System.out.println("VECTORIZED: " + OccurrenceList.isVectorized() + ", " + LISTS + " LISTS OF " + length);
+
+        // SPARSE COUNTS, LIKE THOSE OF A TRAINED MODEL
+        Random random = new Random(0);
+        OccurrenceList[] lists = new OccurrenceList[LISTS];
+        for (int i = 0; i < LISTS; i++) {
+            int[] counts = new int[length];
+            for (int j = 0; j < length; j++) {
+                counts[j] = (random.nextInt(4) == 0 ? random.nextInt(100) : 0);
+            }
+            lists[i] = new OccurrenceList(counts);
+        }
+
+        // BEST OF EACH ROUND, THE FIRST FEW OF WHICH ARE THE WARM-UP
+        double merges = 0.0;
+        double statistics = 0.0;
+        double searches = 0.0;
+        for (int round = 0; round < ROUNDS; round++) {
+            merges = Math.max(merges, timeMerges(lists, length));
+            statistics = Math.max(statistics, timeStatistics(lists));
+            searches = Math.max(searches, timeSearches(lists));
+        }
+        System.out.printf("%-12s %16s%n", "OPERATION", "LISTS/SEC");
+        System.out.printf("%-12s %16.0f%n", "MERGE", merges);
+        System.out.printf("%-12s %16.0f%n", "STATISTICS", statistics);
+        System.out.printf("%-12s %16.0f%n", "SEARCH", searches);
+    }
+
+    /**
+     * @param lists the lists to merge
+     * @param length the length of the lists
+     * @return the number of lists merged into an accumulating one per second
+     */
+    private static double timeMerges(OccurrenceList[] lists, int length) {
+        OccurrenceList merged = new OccurrenceList(length);
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (OccurrenceList list : lists) {
+                merged.addAll(list);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (merged.getTotal() == 42) {
+            System.out.println(merged.getTotal());  // KEEPS THE LOOP FROM BEING OPTIMIZED AWAY
+        }
+        return (double) PASSES * lists.length * 1e9 / elapsed;
+    }
+
+    /**
+     * @param lists the lists to take the statistics of
+     * @return the number of lists whose sum, maximum, minimum and variance are
+     * taken per second
+     */
+    private static double timeStatistics(OccurrenceList[] lists) {
+        float sink = 0.0f;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (OccurrenceList list : lists) {
+                sink += list.getSum() + list.getMax() + list.getNonzeroMin() + list.getVariance();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0.0f) {
+            System.out.println(sink);  // KEEPS THE LOOP FROM BEING OPTIMIZED AWAY
+        }
+        return (double) PASSES * lists.length * 1e9 / elapsed;
+    }
+
+    /**
+     * @param lists the lists to search
+     * @return the number of lists searched per second for their first maximum
+     * and their last lowest nonzero value
+     */
+    private static double timeSearches(OccurrenceList[] lists) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (OccurrenceList list : lists) {
+                sink += list.findIndexOf(SearchPhrase.FIND_FIRST, SearchPhrase.MAX_VALUE);
+                sink += list.findIndexOf(SearchPhrase.FIND_LAST, SearchPhrase.MIN_NONZERO_VALUE);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println(sink);  // KEEPS THE LOOP FROM BEING OPTIMIZED AWAY
+        }
+        return (double) PASSES * lists.length * 1e9 / elapsed;
+    }
+}
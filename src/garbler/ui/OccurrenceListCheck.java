@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.structure.OccurrenceList;
+import java.util.Random;
+
+/**
+ * Checks the statistics an OccurrenceList keeps as it changes against a
+ * recount of its values. Lists are put through random increments (some of
+ * them negative), resets, clears, resizes and merges, and every statistic is
+ * compared with a brute-force recount after each step. A few fixed lists pin
+ * down getMin and getNonzeroMin, which report the lowest value and the lowest
+ * value above zero. Exits with a status of 1 if anything differs.
+ *
+ * Run with --add-modules jdk.incubator.vector to check the vector kernels
+ * rather than the scalar ones.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class OccurrenceListCheck {
+
+    // RANDOM LISTS TO BUILD AND CHANGES TO MAKE TO EACH
+    private static final int LISTS = 3000;
+    private static final int CHANGES = 200;
+
+    public static void main(String[] args) {
+        System.out.println(OccurrenceList.isVectorized() ? "VECTOR KERNELS" : "SCALAR KERNELS");
+        int failures = 0;
+
+        // THE LOWEST VALUES OF A FEW KNOWN LISTS
+        failures += expect("getMin of [3,5]", new OccurrenceList(new int[]{3, 5}).getMin(), 3);
+        failures += expect("getNonzeroMin of [3,5]", new OccurrenceList(new int[]{3, 5}).getNonzeroMin(), 3);
+        failures += expect("getMin of [2,0,1]", new OccurrenceList(new int[]{2, 0, 1}).getMin(), 0);
+        failures += expect("getNonzeroMin of [2,0,1]", new OccurrenceList(new int[]{2, 0, 1}).getNonzeroMin(), 1);
+        failures += expect("getNonzeroMin of [0,0]", new OccurrenceList(new int[]{0, 0}).getNonzeroMin(), 0);
+        failures += expect("getMin of []", new OccurrenceList(0).getMin(), 0);
+        OccurrenceList negative = new OccurrenceList(new int[]{0, 4});
+        negative.increment(0, -2);
+        failures += expect("getMin of [-2,4]", negative.getMin(), -2);
+        failures += expect("getNonzeroMin of [-2,4]", negative.getNonzeroMin(), 4);
+        failures += expect("getMax of [-2,4]", negative.getMax(), 4);
+
+        // RANDOM CHANGES, RECOUNTED AFTER EACH ONE
+        Random random = new Random(3);
+        int mismatches = 0;
+        for (int l = 0; l < LISTS; l++) {
+            OccurrenceList list = (random.nextBoolean() ? new OccurrenceList(1 + random.nextInt(20))
+                    : new OccurrenceList(randomValues(random, 1 + random.nextInt(20), false)));
+            for (int c = 0; c < CHANGES; c++) {
+                int change = random.nextInt(16);
+                if (change < 8) {
+                    list.increment(random.nextInt(30), (random.nextInt(6) == 0 ? -random.nextInt(3) : 1 + random.nextInt(4)));
+                } else if (change < 11) {
+                    list.reset(random.nextInt(list.size()));
+                } else if (change == 11) {
+                    list.clear();
+                } else if (change == 12) {
+                    list.resize(1 + random.nextInt(30));
+                } else if (change == 13) {
+                    list.addAll(list);
+                } else {
+                    list.addAll(randomValues(random, random.nextInt(35), change == 15));
+                }
+                if (!matchesRecount(list)) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(mismatches + " MISMATCHES OVER " + (LISTS * CHANGES) + " CHANGES");
+        System.exit(failures == 0 && mismatches == 0 ? 0 : 1);
+    }
+
+    /**
+     * @param list the list to check
+     * @return true if every statistic of the list matches a recount of its
+     * values
+     */
+    private static boolean matchesRecount(OccurrenceList list) {
+        int[] values = list.values();
+        int sum = 0;
+        long squares = 0;
+        int max = 0;
+        int min = (values.length == 0 ? 0 : Integer.MAX_VALUE);
+        int nonzeroMin = Integer.MAX_VALUE;
+        int nonzero = 0;
+        for (int value : values) {
+            sum += value;
+            squares += (long) value * value;
+            max = Math.max(max, value);
+            min = Math.min(min, value);
+            if (value > 0) {
+                nonzeroMin = Math.min(nonzeroMin, value);
+            }
+            if (value != 0) {
+                nonzero++;
+            }
+        }
+        float average = (float) sum / values.length;
+        float variance = (float) squares / values.length - average * average;
+        return list.getTotal() == sum && list.getSum() == sum && list.getMax() == max && list.getMin() == min
+                && list.getNonzeroMin() == (nonzeroMin == Integer.MAX_VALUE ? 0 : nonzeroMin)
+                && list.getNonzeroCount() == nonzero && list.getNumberOf(0) == values.length - nonzero
+                && Float.compare(list.getVariance(), variance) == 0;
+    }
+
+    /**
+     * @param random the generator to draw from
+     * @param length the number of values
+     * @param negative true to let some of the values be negative
+     * @return values which are mostly zero
+     */
+    private static int[] randomValues(Random random, int length, boolean negative) {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(3) == 0) {
+                values[i] = (negative && random.nextInt(4) == 0 ? -random.nextInt(5) : random.nextInt(9));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param what a description of the value checked
+     * @param actual the value the list reported
+     * @param expected the value it should have reported
+     * @return 1 if the values differ, after printing them, otherwise 0
+     */
+    private static int expect(String what, int actual, int expected) {
+        if (actual == expected) {
+            return 0;
+        }
+        System.out.println(what + " WAS " + actual + ", EXPECTED " + expected);
+        return 1;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.builder.StatsCruncher;
+import garbler.builder.WordBuilder;
+import garbler.library.ParallelTrainer;
+import garbler.library.StatsLibrary;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Checks that a library trained by a ParallelTrainer generates exactly the
+ * same words as one trained line by line. The corpus is split into small
+ * shards so that they are merged in whatever order the workers finish, then
+ * words are built from both libraries with the same seed, through the cruncher
+ * and through a compiled model. Exits with a status of 1 if any word differs.
+ *
+ * Run with the corpus to train on as the only argument, defaulting to
+ * samples/lorem_long.txt.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class ParallelTrainingCheck {
+
+    // WORDS TO COMPARE FOR EACH LIBRARY AND THRESHOLD
+    private static final int WORDS = 20000;
+    private static final float[] THRESHOLDS = {0.05f, 1f};
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+        List<String> lines = Files.readAllLines(corpus, StandardCharsets.UTF_8);
+
+        boolean same = true;
+        for (boolean packed : new boolean[]{false, true}) {
+            StatsLibrary sequential = new StatsLibrary(false, packed);
+            for (String line : lines) {
+                sequential.parseLineSimple(line, ",.");
+            }
+
+            ParallelTrainer trainer = new ParallelTrainer(false, packed, ",.");
+            trainer.setShardLines(Math.max(1, lines.size() / 16));
+            trainer.setShardBytes(Math.max(1, Files.size(corpus) / 16));
+            StatsLibrary[] trained = {trainer.train(lines), trainer.train(corpus)};
+            String[] names = {"lines", "file"};
+
+            StatsCruncher expected = new StatsCruncher(sequential);
+            for (int t = 0; t < trained.length; t++) {
+                StatsCruncher actual = new StatsCruncher(trained[t]);
+                for (float threshold : THRESHOLDS) {
+                    boolean crunched = SnapshotCheck.sameWords(new WordBuilder(expected, 1),
+                            new WordBuilder(actual, 1), threshold);
+                    boolean compiled = SnapshotCheck.sameWords(new WordBuilder(expected.compile(), 1),
+                            new WordBuilder(actual.compile(), 1), threshold);
+                    System.out.println((packed ? "PACKED " : "OBJECT ") + names[t] + " threshold " + threshold
+                            + ": cruncher " + (crunched ? "SAME" : "DIFFERENT")
+                            + ", compiled " + (compiled ? "SAME" : "DIFFERENT"));
+                    same &= crunched && compiled;
+                }
+            }
+        }
+        System.exit(same ? 0 : 1);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.builder.GenerationModel;
+import garbler.builder.StatsCruncher;
+import garbler.builder.WordBuilder;
+import garbler.library.StatsLibrary;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Benchmark comparing the random number generators a WordBuilder can draw
+ * from. For each generator it times raw nextFloat calls, then words built into
+ * a reused buffer from a compiled model, where the generator is the largest
+ * remaining cost, and from a StatsCruncher.
+ *
+ * Run with the corpus to train on as the first argument, defaulting to
+ * samples/lorem_long.txt, and optionally the name of a single generator to
+ * time. Once several generators have been used the JIT can no longer inline
+ * the calls made through RandomGenerator, which flatters whichever runs first,
+ * so the fairest comparison runs each generator in a JVM of its own.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class RandomBenchmark {
+
+    // NUMBER OF DRAWS AND WORDS TO TIME, AND HOW MANY TIMES TO REPEAT EACH
+    private static final int DRAWS = 50000000;
+    private static final int WORDS = 1000000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws java.io.IOException {
+        java.nio.file.Path corpus = java.nio.file.Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+        StatsLibrary lib = new StatsLibrary(false, true);
+        lib.parseCorpus(corpus, ",.");
+        StatsCruncher sc = new StatsCruncher(lib);
+        GenerationModel compiled = sc.compile();
+
+        String[] names = (args.length > 1
+                ? new String[]{args[1]}
+                : new String[]{"Random", "SplittableRandom", "Xoshiro256PlusPlus", "L64X128MixRandom"});
+
+        System.out.printf("%-20s %16s %16s %16s%n", "GENERATOR", "DRAWS/SEC", "COMPILED WORDS/SEC", "CRUNCHER WORDS/SEC");
+        for (int g = 0; g < names.length; g++) {
+            RandomGeneratorFactory<RandomGenerator> factory = RandomGeneratorFactory.of(names[g]);
+
+            // BEST OF EACH ROUND, THE FIRST FEW OF WHICH ARE THE WARM-UP
+            double draws = 0.0;
+            double compiledWords = 0.0;
+            double cruncherWords = 0.0;
+            for (int round = 0; round < ROUNDS; round++) {
+                draws = Math.max(draws, timeDraws(factory.create(42L)));
+                compiledWords = Math.max(compiledWords, timeWords(new WordBuilder(compiled, factory.create(42L))));
+                cruncherWords = Math.max(cruncherWords, timeWords(new WordBuilder(sc, factory.create(42L))));
+            }
+            System.out.printf("%-20s %16.0f %16.0f %16.0f%n", names[g], draws, compiledWords, cruncherWords);
+        }
+    }
+
+    /**
+     * @param random the generator to time
+     * @return the number of floats drawn per second
+     */
+    private static double timeDraws(RandomGenerator random) {
+        float sink = 0.0f;
+        long start = System.nanoTime();
+        for (int i = 0; i < DRAWS; i++) {
+            sink += random.nextFloat();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0.0f) {
+            System.out.println(sink);  // KEEPS THE LOOP FROM BEING OPTIMIZED AWAY
+        }
+        return DRAWS * 1e9 / elapsed;
+    }
+
+    /**
+     * @param builder the builder to time
+     * @return the number of words built per second
+     */
+    private static double timeWords(WordBuilder builder) {
+        char[] buffer = new char[12];
+        long letters = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < WORDS; i++) {
+            letters += builder.generateWord(buffer.length, 0.05f, buffer);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (letters < 0) {
+            System.out.println(letters);
+        }
+        return WORDS * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Rogue <Alice Q.>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package garbler.ui;
+
+import garbler.builder.StatsCruncher;
+import garbler.builder.WordBuilder;
+import garbler.library.StatsLibrary;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Checks that a library loaded from a snapshot generates exactly the same
+ * words as the library that was saved. Every kind of library is trained,
+ * saved and loaded back, then words are built from both with the same seed,
+ * through the cruncher and through a compiled model. Exits with a status of 1
+ * if any word differs.
+ *
+ * Run with the corpus to train on as the only argument, defaulting to
+ * samples/lorem_long.txt.
+ *
+ * @author Rogue <Alice Q.>
+ */
+public class SnapshotCheck {
+
+    // WORDS TO COMPARE FOR EACH LIBRARY AND THRESHOLD
+    private static final int WORDS = 20000;
+    private static final float[] THRESHOLDS = {0.05f, 1f};
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get(args.length > 0 ? args[0] : "samples/lorem_long.txt");
+        Path snapshot = Files.createTempFile("garbler", ".snapshot");
+
+        boolean same = true;
+        try {
+            for (boolean packed : new boolean[]{false, true}) {
+                StatsLibrary original = new StatsLibrary(false, packed);
+                original.parseCorpus(corpus, ",.");
+                original.save(snapshot);
+                StatsLibrary loaded = StatsLibrary.load(snapshot);
+
+                StatsCruncher before = new StatsCruncher(original);
+                StatsCruncher after = new StatsCruncher(loaded);
+                for (float threshold : THRESHOLDS) {
+                    boolean crunched = sameWords(new WordBuilder(before, 1), new WordBuilder(after, 1), threshold);
+                    boolean compiled = sameWords(new WordBuilder(before.compile(), 1),
+                            new WordBuilder(after.compile(), 1), threshold);
+                    System.out.println((packed ? "PACKED " : "OBJECT ") + "threshold " + threshold
+                            + ": cruncher " + (crunched ? "SAME" : "DIFFERENT")
+                            + ", compiled " + (compiled ? "SAME" : "DIFFERENT"));
+                    same &= crunched && compiled;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+        System.exit(same ? 0 : 1);
+    }
+
+    /**
+     * @param expected builder over the saved library
+     * @param actual builder over the loaded library, seeded the same way
+     * @param threshold the threshold to build words with
+     * @return true if both builders produced the same words
+     */
+    static boolean sameWords(WordBuilder expected, WordBuilder actual, float threshold) {
+        for (int i = 0; i < WORDS; i++) {
+            if (!expected.generateWord(12, threshold).equals(actual.generateWord(12, threshold))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}